@@ -31,13 +31,15 @@ import im.ene.toro.media.PlaybackInfo;
 import im.ene.toro.widget.Container;
 import im.ene.toro.youtube.YouTubePlayerDialog.InitData;
 import im.ene.toro.youtube.common.ScreenHelper;
-import java.io.IOException;
 import java.util.List;
 
 import static android.support.v7.widget.StaggeredGridLayoutManager.VERTICAL;
 
 public class HomeActivity extends AppCompatActivity implements YouTubePlayerDialog.Callback {
 
+  // Number of items from the end of the list at which the next page is requested.
+  static final int PREFETCH_DISTANCE = 6;
+
   Container container;
   YouTubePlaylistAdapter adapter;
   YouTubePlayerManager playerManager;
@@ -74,19 +76,20 @@ public class HomeActivity extends AppCompatActivity implements YouTubePlayerDial
 
     selector = container.getPlayerSelector();
 
-    try {
-      viewModel.getPlaylist().observe(this, response -> adapter.setData(response));
-    } catch (IOException e) {
-      e.printStackTrace();
-    }
-
-    if (savedInstanceState == null) {
-      try {
-        viewModel.refresh();
-      } catch (IOException e) {
-        e.printStackTrace();
+    viewModel.getPlaylist().observe(this, videos -> adapter.setData(videos));
+    // Ask for the next page before the User reaches the end of the list.
+    container.addOnScrollListener(new RecyclerView.OnScrollListener() {
+      @Override public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        if (dy <= 0) return;
+        int[] lastPositions = ((StaggeredGridLayoutManager) layoutManager) //
+            .findLastVisibleItemPositions(null);
+        int lastPosition = RecyclerView.NO_POSITION;
+        for (int position : lastPositions) lastPosition = Math.max(lastPosition, position);
+        if (lastPosition >= adapter.getItemCount() - PREFETCH_DISTANCE) viewModel.loadMore();
       }
-    }
+    });
+
+    if (savedInstanceState == null) viewModel.refresh();
   }
 
   @Override protected void onDestroy() {
@@ -118,6 +121,7 @@ public class HomeActivity extends AppCompatActivity implements YouTubePlayerDial
 
   @Override public void onBigPlayerCreated() {
     container.setPlayerSelector(PlayerSelector.NONE);
+    playerManager.releasePlayer();  // only one YouTubePlayer at a time.
     container.setVisibility(View.INVISIBLE);
   }
 
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2018 Nam Nguyen, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.toro.youtube;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.services.youtube.model.PlaylistItemListResponse;
+import com.google.api.services.youtube.model.VideoListResponse;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * @author eneim (2018/03/12).
+ *
+ *         Disk cache of the playlist pages: for each page token, the playlistItems response (with
+ *         its ETag, to revalidate it) and the videos response built from it.
+ */
+
+final class PlaylistCache {
+
+  private static final String TAG = "YouT:Cache";
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  static final class Page {
+
+    @NonNull final PlaylistItemListResponse playlist;
+    @NonNull final VideoListResponse videos;
+
+    Page(@NonNull PlaylistItemListResponse playlist, @NonNull VideoListResponse videos) {
+      this.playlist = playlist;
+      this.videos = videos;
+    }
+  }
+
+  @NonNull private final File dir;
+  @NonNull private final JsonFactory jsonFactory;
+
+  PlaylistCache(@NonNull File dir, @NonNull JsonFactory jsonFactory) {
+    this.dir = dir;
+    this.jsonFactory = jsonFactory;
+  }
+
+  @Nullable synchronized Page get(@NonNull String playlistId, @Nullable String pageToken) {
+    String key = key(playlistId, pageToken);
+    String playlist = read(new File(dir, key + ".playlist.json"));
+    String videos = read(new File(dir, key + ".videos.json"));
+    if (playlist == null || videos == null) return null;
+    try {
+      return new Page(jsonFactory.fromString(playlist, PlaylistItemListResponse.class),
+          jsonFactory.fromString(videos, VideoListResponse.class));
+    } catch (IOException | IllegalArgumentException er) {
+      Log.w(TAG, "Dropping malformed page: " + key, er);
+      return null;
+    }
+  }
+
+  synchronized void put(@NonNull String playlistId, @Nullable String pageToken,
+      @NonNull Page page) {
+    String key = key(playlistId, pageToken);
+    try {
+      // Videos first: a page is only read back if both are there.
+      write(new File(dir, key + ".videos.json"), jsonFactory.toString(page.videos));
+      write(new File(dir, key + ".playlist.json"), jsonFactory.toString(page.playlist));
+    } catch (IOException er) {
+      Log.w(TAG, "Failed to cache page: " + key, er);
+    }
+  }
+
+  @NonNull private static String key(@NonNull String playlistId, @Nullable String pageToken) {
+    return playlistId + "_" + (pageToken != null ? pageToken : "first");
+  }
+
+  @Nullable private static String read(@NonNull File file) {
+    if (!file.exists()) return null;
+    InputStream in = null;
+    try {
+      in = new FileInputStream(file);
+      byte[] bytes = new byte[(int) file.length()];
+      int offset = 0;
+      int count;
+      while (offset < bytes.length && (count = in.read(bytes, offset, bytes.length - offset)) > 0) {
+        offset += count;
+      }
+      return new String(bytes, 0, offset, UTF_8);
+    } catch (IOException er) {
+      return null;
+    } finally {
+      close(in);
+    }
+  }
+
+  private void write(@NonNull File file, @NonNull String content) throws IOException {
+    if (!dir.exists() && !dir.mkdirs()) throw new IOException("Can not create " + dir);
+    // Write aside then rename, so a crash never leaves a truncated page.
+    File temp = new File(dir, file.getName() + ".tmp");
+    OutputStream out = null;
+    try {
+      out = new FileOutputStream(temp);
+      out.write(content.getBytes(UTF_8));
+    } finally {
+      close(out);
+    }
+    if (!temp.renameTo(file)) throw new IOException("Can not write " + file);
+  }
+
+  private static void close(@Nullable Closeable closeable) {
+    if (closeable == null) return;
+    try {
+      closeable.close();
+    } catch (IOException ignored) {
+    }
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2018 Nam Nguyen, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.toro.youtube;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.http.HttpStatusCodes;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.services.youtube.YouTube;
+import com.google.api.services.youtube.model.PlaylistItem;
+import com.google.api.services.youtube.model.PlaylistItemListResponse;
+import com.google.api.services.youtube.model.VideoListResponse;
+import im.ene.toro.youtube.PlaylistCache.Page;
+import java.io.IOException;
+
+/**
+ * @author eneim (2018/03/14).
+ *
+ *         Fetches the pages of one playlist through the given {@link HttpTransport}, and keeps
+ *         them in a {@link PlaylistCache}. A cached page is revalidated with its ETag: on a 304,
+ *         it is returned as is, without asking for its videos again.
+ */
+
+final class PlaylistFetcher {
+
+  private static final Long MAX_RESULTS = 20L;
+
+  //see: https://developers.google.com/youtube/v3/docs/playlistItems/list
+  private static final String PLAYLIST_PART = "snippet";
+  private static final String PLAYLIST_FIELDS =
+      "etag,pageInfo,nextPageToken,items(id,snippet(resourceId/videoId))";
+  //see: https://developers.google.com/youtube/v3/docs/videos/list
+  private static final String VIDEOS_PART = "snippet,contentDetails,statistics";
+  // video resource properties that the response will include.
+  private static final String VIDEOS_FIELDS =
+      "items(id,snippet(title,description,thumbnails/high,channelTitle),contentDetails/duration,statistics)";
+
+  @NonNull private final YouTube ytApi;
+  @NonNull private final PlaylistCache cache;
+  @NonNull private final String playlistId;
+  @NonNull private final String apiKey;
+
+  PlaylistFetcher(@NonNull HttpTransport transport, @NonNull JsonFactory jsonFactory,
+      @NonNull PlaylistCache cache, @NonNull String playlistId, @NonNull String apiKey) {
+    this.ytApi = new YouTube.Builder(transport, jsonFactory, null)  //
+        .setApplicationName("Toro Youtube Demo").build();
+    this.cache = cache;
+    this.playlistId = playlistId;
+    this.apiKey = apiKey;
+  }
+
+  @Nullable Page getCached(@Nullable String pageToken) {
+    return cache.get(playlistId, pageToken);
+  }
+
+  // Revalidate the cached page if any, and fetch its videos only if it has changed.
+  @NonNull Page fetchPage(@Nullable String pageToken, @Nullable Page cached) throws IOException {
+    YouTube.PlaylistItems.List request = ytApi.playlistItems()
+        .list(PLAYLIST_PART)
+        .setPlaylistId(playlistId)
+        .setPageToken(pageToken)
+        .setFields(PLAYLIST_FIELDS)
+        .setMaxResults(MAX_RESULTS)
+        .setKey(apiKey);
+    if (cached != null && cached.playlist.getEtag() != null) {
+      request.getRequestHeaders().setIfNoneMatch(cached.playlist.getEtag());
+    }
+
+    PlaylistItemListResponse playlist;
+    try {
+      playlist = request.execute();
+    } catch (HttpResponseException er) {
+      if (cached != null && er.getStatusCode() == HttpStatusCodes.STATUS_CODE_NOT_MODIFIED) {
+        return cached;
+      }
+      throw er;
+    }
+
+    StringBuilder ids = new StringBuilder();
+    if (playlist.getItems() != null) {
+      for (PlaylistItem item : playlist.getItems()) {
+        if (ids.length() > 0) ids.append(',');
+        ids.append(item.getSnippet().getResourceId().getVideoId());
+      }
+    }
+    VideoListResponse videos = ids.length() == 0 ? new VideoListResponse()
+        : ytApi.videos().list(VIDEOS_PART).setFields(VIDEOS_FIELDS) //
+            .setKey(apiKey).setId(ids.toString()).execute();
+    Page page = new Page(playlist, videos);
+    cache.put(playlistId, pageToken, page);
+    return page;
+  }
+}
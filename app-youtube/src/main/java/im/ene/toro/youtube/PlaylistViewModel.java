@@ -16,94 +16,128 @@
 
 package im.ene.toro.youtube;
 
+import android.app.Application;
+import android.arch.lifecycle.AndroidViewModel;
 import android.arch.lifecycle.LiveData;
 import android.arch.lifecycle.MutableLiveData;
-import android.arch.lifecycle.ViewModel;
-import android.text.TextUtils;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.util.Log;
 import com.google.api.client.extensions.android.http.AndroidHttp;
-import com.google.api.client.googleapis.services.AbstractGoogleClientRequest;
-import com.google.api.client.http.HttpTransport;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.gson.GsonFactory;
-import com.google.api.services.youtube.YouTube;
-import com.google.api.services.youtube.model.PlaylistItemListResponse;
-import com.google.api.services.youtube.model.VideoListResponse;
+import com.google.api.services.youtube.model.Video;
+import im.ene.toro.youtube.PlaylistCache.Page;
 import io.reactivex.Observable;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.CompositeDisposable;
 import io.reactivex.disposables.Disposable;
 import io.reactivex.schedulers.Schedulers;
-import java.io.IOException;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import static im.ene.toro.youtube.BuildConfig.API_KEY;
 
 /**
  * @author eneim (2017/11/23).
+ *
+ *         Loads the playlist page by page. Pages are cached on disk: the first one is shown from
+ *         the cache right away, then every page is revalidated with its ETag, and only fetched
+ *         again (with its videos) if it has changed. {@link #loadMore()} appends the next page.
  */
 
-public class PlaylistViewModel extends ViewModel {
+public class PlaylistViewModel extends AndroidViewModel {
 
   private static final String TAG = "YouT:ViewModel";
 
   // droidconNYC 2017 playlist
   private static final String YOUTUBE_PLAYLIST_ID = "PLdb5m83JnoaATBUkWTVxT_kGyhYBozZ4F";
-  private static final Long YOUTUBE_PLAYLIST_MAX_RESULTS = 20L;
-
-  //see: https://developers.google.com/youtube/v3/docs/playlistItems/list
-  private static final String YOUTUBE_PLAYLIST_PART = "snippet";
-  private static final String YOUTUBE_PLAYLIST_FIELDS =
-      "pageInfo,nextPageToken,items(id,snippet(resourceId/videoId))";
-  //see: https://developers.google.com/youtube/v3/docs/videos/list
-  private static final String YOUTUBE_VIDEOS_PART = "snippet,contentDetails,statistics";
-  // video resource properties that the response will include.
-  private static final String YOUTUBE_VIDEOS_FIELDS =
-      "items(id,snippet(title,description,thumbnails/high,channelTitle),contentDetails/duration,statistics)";
-  // selector specifying which fields to include in a partial response.
-
-  private final YouTube ytApi;
-  private final MutableLiveData<VideoListResponse> liveData = new MutableLiveData<>();
+  // Delay before loadMore() tries again after a failure, doubled on each failure in a row.
+  private static final long RETRY_DELAY_MS = 2000;
+  private static final long MAX_RETRY_DELAY_MS = 60000;
+
+  private final PlaylistFetcher fetcher;
+  private final MutableLiveData<List<Video>> liveData = new MutableLiveData<>();
   private final CompositeDisposable disposables;
 
+  // Paging state, main thread only.
+  private final List<Video> videos = new ArrayList<>();
+  @Nullable private String nextPageToken;
+  private boolean endReached;
+  private boolean loading;
+  private int failures;  // in a row
+  private long retryAtMs;  // in SystemClock.elapsedRealtime()
+
   @Override protected void onCleared() {
     super.onCleared();
     disposables.clear();
   }
 
-  public PlaylistViewModel() {
+  public PlaylistViewModel(@NonNull Application application) {
+    super(application);
     JsonFactory jsonFactory = GsonFactory.getDefaultInstance();
-    HttpTransport httpTransport = AndroidHttp.newCompatibleTransport();
-    ytApi = new YouTube.Builder(httpTransport, jsonFactory, null).setApplicationName(
-        "Toro Youtube Demo").build();
+    PlaylistCache cache =
+        new PlaylistCache(new File(application.getCacheDir(), "yt_playlist"), jsonFactory);
+    fetcher = new PlaylistFetcher(AndroidHttp.newCompatibleTransport(), jsonFactory, cache,
+        YOUTUBE_PLAYLIST_ID, API_KEY);
     disposables = new CompositeDisposable();
   }
 
-  LiveData<VideoListResponse> getPlaylist() throws IOException {
+  LiveData<List<Video>> getPlaylist() {
     return liveData;
   }
 
-  void refresh() throws IOException {
-    Disposable disposable = Observable.just(ytApi.playlistItems()
-        .list(YOUTUBE_PLAYLIST_PART)
-        .setPlaylistId(YOUTUBE_PLAYLIST_ID)
-        .setPageToken(null)
-        .setFields(YOUTUBE_PLAYLIST_FIELDS)
-        .setMaxResults(YOUTUBE_PLAYLIST_MAX_RESULTS)
-        .setKey(API_KEY))
-        .map(AbstractGoogleClientRequest::execute)
-        .map(PlaylistItemListResponse::getItems)
-        .flatMap(playlistItems -> Observable.fromIterable(playlistItems)
-            .map(item -> item.getSnippet().getResourceId().getVideoId()))
-        .toList()
-        .map(ids -> ytApi.videos().list(YOUTUBE_VIDEOS_PART).setFields(YOUTUBE_VIDEOS_FIELDS) //
-            .setKey(API_KEY).setId(TextUtils.join(",", ids)).execute())
+  // Reload from the first page. The cached first page, if any, is shown while revalidating.
+  void refresh() {
+    disposables.clear();
+    loading = true;
+    Disposable disposable = Observable.<Page>create(emitter -> {
+      Page cached = fetcher.getCached(null);
+      if (cached != null) emitter.onNext(cached);
+      emitter.onNext(fetcher.fetchPage(null, cached));
+      emitter.onComplete();
+    })
         .subscribeOn(Schedulers.io())
         .observeOn(AndroidSchedulers.mainThread())
-        .doOnError(throwable -> Log.e(TAG, "accept() called with: throwable = [" + throwable + "]"))
-        .doOnSuccess(response -> Log.d(TAG, "accept() called with: response = [" + response + "]"))
-        .onErrorReturnItem(new VideoListResponse()) // Bad work around
-        .doOnSuccess(liveData::setValue)
-        .subscribe();
+        .subscribe(page -> {
+          videos.clear();
+          onPageLoaded(page);
+        }, this::onError, () -> loading = false);
     disposables.add(disposable);
   }
+
+  // Append the next page, if there is one, nothing is loading, and it is not too soon after a
+  // failure: this is called on every scroll.
+  void loadMore() {
+    if (loading || endReached || SystemClock.elapsedRealtime() < retryAtMs) return;
+    final String pageToken = nextPageToken;
+    loading = true;
+    Disposable disposable = Observable.fromCallable(() -> fetcher.fetchPage(pageToken,  //
+        fetcher.getCached(pageToken)))
+        .subscribeOn(Schedulers.io())
+        .observeOn(AndroidSchedulers.mainThread())
+        .subscribe(this::onPageLoaded, this::onError, () -> loading = false);
+    disposables.add(disposable);
+  }
+
+  private void onPageLoaded(@NonNull Page page) {
+    failures = 0;
+    retryAtMs = 0;
+    List<Video> items = page.videos.getItems();
+    if (items != null) videos.addAll(items);
+    nextPageToken = page.playlist.getNextPageToken();
+    endReached = nextPageToken == null;
+    // A copy: the adapter diffs it against the one it has.
+    liveData.setValue(Collections.unmodifiableList(new ArrayList<>(videos)));
+  }
+
+  private void onError(Throwable throwable) {
+    Log.e(TAG, "Failed to load the playlist: " + throwable);
+    loading = false;
+    long delay = RETRY_DELAY_MS << Math.min(failures++, 5);
+    retryAtMs = SystemClock.elapsedRealtime() + Math.min(delay, MAX_RETRY_DELAY_MS);
+  }
 }
@@ -20,26 +20,17 @@ import com.google.android.youtube.player.YouTubePlayerSupportFragment;
 
 /**
  * @author eneim (2017/12/07).
+ *
+ *         The list uses only one of these, moved from item to item by {@link YouTubePlayerManager}.
  */
 
 public class ToroYouTubePlayerFragment extends YouTubePlayerSupportFragment {
 
-  // This is used by the Adapter's FragmentManager to know which Helper request the Fragment.
-  private YouTubePlayerHelper helperKey;
-
-  /* package */ YouTubePlayerHelper getHelperKey() {
-    return helperKey;
-  }
-
-  /* package */ void setHelperKey(YouTubePlayerHelper helperKey) {
-    this.helperKey = helperKey;
-  }
-
   public static ToroYouTubePlayerFragment newInstance() {
     return new ToroYouTubePlayerFragment();
   }
 
   @Override public String toString() {
-    return "Toro:Yt:Fragment{" + "helper=" + helperKey + '}';
+    return "Toro:Yt:Fragment{" + "view=" + getView() + '}';
   }
 }
@@ -26,10 +26,8 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
 import android.view.View;
-import com.google.android.youtube.player.YouTubeInitializationResult;
 import com.google.android.youtube.player.YouTubePlayer;
 import com.google.android.youtube.player.YouTubePlayer.PlayerStateChangeListener;
-import com.google.android.youtube.player.YouTubePlayer.Provider;
 import im.ene.toro.ToroPlayer;
 import im.ene.toro.helper.ToroPlayerHelper;
 import im.ene.toro.media.PlaybackInfo;
@@ -44,12 +42,14 @@ final class YouTubePlayerHelper extends ToroPlayerHelper implements Handler.Call
 
   private static final String TAG = "YouT:Helper";
 
-  static final int MSG_INIT = 1000;
   static final int MSG_PLAY = 1001;
   static final int MSG_PAUSE = 1002;
-  static final int MSG_DELAY = 50;
+  // Commands wait this long, so that opposing ones (eg: a pause then a play during a small scroll
+  // adjustment) cancel each other instead of both reaching the player.
+  static final int COALESCE_WINDOW_MS = 100;
 
-  // Actions must be done in order/queue, so we use a handle to make that happens.
+  // Actions must be done in order/queue, so we use a handle to make that happens. At most one
+  // command is pending: the latest one.
   final Handler handler = new Handler(this);
   final Context context;
   final String videoId;
@@ -58,8 +58,11 @@ final class YouTubePlayerHelper extends ToroPlayerHelper implements Handler.Call
   final PlaybackInfo playbackInfo = new PlaybackInfo();
   @IntRange(from = 1) final int playerViewId; // also the Id for playerFragment's container
 
-  YouTubePlayer youTubePlayer;
-  ToroYouTubePlayerFragment ytFragment;
+  YouTubePlayer youTubePlayer;  // the manager's shared player, while this helper plays it.
+  ToroYouTubePlayerFragment ytFragment; // the manager's shared Fragment, while shown here.
+
+  private final StateChangeImpl stateChangeListener = new StateChangeImpl();
+  private final FullScreenListenerImpl fullscreenListener = new FullScreenListenerImpl();
 
   YouTubePlayerHelper(@NonNull Callback callback, @NonNull Container container,
       @NonNull ToroPlayer player, String videoId) {
@@ -81,17 +84,26 @@ final class YouTubePlayerHelper extends ToroPlayerHelper implements Handler.Call
       this.playbackInfo.setResumeWindow(playbackInfo.getResumeWindow());
       this.playbackInfo.setResumePosition(playbackInfo.getResumePosition());
     }
-
-    handler.sendEmptyMessageDelayed(MSG_INIT, MSG_DELAY);
   }
 
   @Override public void play() {
-    handler.sendEmptyMessageDelayed(MSG_PLAY, MSG_DELAY);
+    if (handler.hasMessages(MSG_PAUSE)) {
+      handler.removeMessages(MSG_PAUSE);
+      if (youTubePlayer != null) return;  // still playing, the pause never happened.
+    }
+    if (!handler.hasMessages(MSG_PLAY)) {
+      handler.sendEmptyMessageDelayed(MSG_PLAY, COALESCE_WINDOW_MS);
+    }
   }
 
   @Override public void pause() {
-    handler.removeCallbacksAndMessages(null);
-    handler.sendEmptyMessage(MSG_PAUSE);
+    if (handler.hasMessages(MSG_PLAY)) {
+      handler.removeMessages(MSG_PLAY);
+      if (youTubePlayer == null) return;  // never started.
+    }
+    if (!handler.hasMessages(MSG_PAUSE)) {
+      handler.sendEmptyMessageDelayed(MSG_PAUSE, COALESCE_WINDOW_MS);
+    }
   }
 
   @Override public void setVolume(float volume) {
@@ -128,53 +140,51 @@ final class YouTubePlayerHelper extends ToroPlayerHelper implements Handler.Call
   @Override public void release() {
     Log.d(TAG, "release() called, " + player);
     handler.removeCallbacksAndMessages(null);
-    // If the player is paused by Toro, youtubePlayer will be released before this call,
-    // But in case the Fragment is released by System, "pause()" is not called yet, we use
-    // Fragment Lifecycle callback to ask the Adapter to do the cleanup and it will call this method.
-    if (youTubePlayer != null) {
-      youTubePlayer.release();
-      youTubePlayer = null;
-      if (callback != null) callback.onPlayerDestroyed(this);
-    }
+    // The shared player is taken back by the manager before this call, it is not ours to release.
+    updateResumePosition();
+    youTubePlayer = null;
+    ytFragment = null;
     super.release();
   }
 
+  // Called by the manager: the shared player is shown by this helper's item. If it is resumed, the
+  // video is already loaded.
+  void onPlayerReady(@NonNull YouTubePlayer player, boolean resume) {
+    this.youTubePlayer = player;
+    if (resume) {
+      player.play();
+      return;
+    }
+    player.setPlayerStateChangeListener(stateChangeListener);
+    player.setOnFullscreenListener(fullscreenListener);
+    if (shouldPlay()) { // make sure YouTubePlayerView is fully visible.
+      player.loadVideo(videoId, (int) playbackInfo.getResumePosition());
+    } else {
+      player.cueVideo(videoId, (int) playbackInfo.getResumePosition());
+    }
+  }
+
+  // Called by the manager: the shared player goes to another item, or is released.
+  void onPlayerTaken() {
+    updateResumePosition();
+    youTubePlayer = null;
+  }
+
   @Override public boolean handleMessage(Message message) {
     Log.i(TAG, "handleMessage: " + message.what + ", " + player.getPlayerOrder());
     switch (message.what) {
-      case MSG_INIT:
-        // Since this is Fragment transaction, it will be handled by the Adapter.
-        break;
       case MSG_PLAY:
-        if (ytFragment == null || !ytFragment.isVisible()) break;
-        final YouTubePlayerHelper helper = YouTubePlayerHelper.this; // make a local access
-        ytFragment.initialize(BuildConfig.API_KEY, new YouTubePlayer.OnInitializedListener() {
-          @Override
-          public void onInitializationSuccess(Provider provider, YouTubePlayer player, boolean b) {
-            helper.youTubePlayer = player;
-            if (helper.callback != null) helper.callback.onPlayerCreated(helper, player);
-            player.setPlayerStateChangeListener(new StateChangeImpl());
-            player.setShowFullscreenButton(true);  // fullscreen requires more work ...
-            player.setOnFullscreenListener(new FullScreenListenerImpl());
-            if (shouldPlay()) { // make sure YouTubePlayerView is fully visible.
-              player.loadVideo(videoId, (int) helper.playbackInfo.getResumePosition());
-            }
-          }
-
-          @Override public void onInitializationFailure(Provider provider,
-              YouTubeInitializationResult result) {
-            throw new RuntimeException("YouTube init error: " + result.name());
-          }
-        });
+        // The manager moves its player here, see onPlayerReady().
+        if (callback != null) callback.requestPlayer(this);
         break;
       case MSG_PAUSE:
         updateResumePosition();
-        // Because YoutubePlayerSDK allows up to one player instance to be used at once.
-        // We need to release current player so that other widget can be playable.
+        // The player stays with this item, so a resume doesn't load the video again. It is
+        // released by the manager if nothing plays it again soon.
         if (youTubePlayer != null) {
-          youTubePlayer.release();
+          youTubePlayer.pause();
           youTubePlayer = null;
-          if (callback != null) callback.onPlayerDestroyed(this);
+          if (callback != null) callback.onPlayerPaused(this);
         }
         break;
       default:
@@ -250,9 +260,11 @@ final class YouTubePlayerHelper extends ToroPlayerHelper implements Handler.Call
 
   interface Callback {
 
-    void onPlayerCreated(YouTubePlayerHelper helper, YouTubePlayer player);
+    // Give the shared YouTubePlayer to this helper, by calling its onPlayerReady().
+    void requestPlayer(YouTubePlayerHelper helper);
 
-    void onPlayerDestroyed(YouTubePlayerHelper helper);
+    // This helper doesn't play the shared YouTubePlayer anymore, but keeps it for a resume.
+    void onPlayerPaused(YouTubePlayerHelper helper);
 
     void onFullscreen(YouTubePlayerHelper helper, YouTubePlayer player, boolean fullscreen);
   }
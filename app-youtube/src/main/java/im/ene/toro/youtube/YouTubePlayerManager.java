@@ -18,13 +18,17 @@ package im.ene.toro.youtube;
 
 import android.app.Activity;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentManager;
 import android.support.v4.app.FragmentManager.FragmentLifecycleCallbacks;
 import android.view.View;
+import android.view.ViewGroup;
+import com.google.android.youtube.player.YouTubeInitializationResult;
 import com.google.android.youtube.player.YouTubePlayer;
+import com.google.android.youtube.player.YouTubePlayer.Provider;
 import im.ene.toro.ToroPlayer;
 import im.ene.toro.media.PlaybackInfo;
 import im.ene.toro.widget.Container;
@@ -33,15 +37,26 @@ import im.ene.toro.youtube.YouTubePlayerDialog.InitData;
 import java.util.HashMap;
 import java.util.Map;
 
+import static android.view.ViewGroup.LayoutParams.MATCH_PARENT;
 import static im.ene.toro.youtube.YouTubePlayerDialog.newInstance;
 
 /**
  * @author eneim (2017/12/10).
+ *
+ *         Keeps the only {@link YouTubePlayer} of the list. Its Fragment is added once, without a
+ *         container, and its View is moved to the item that plays. The player is initialized once
+ *         too: switching items only cues or loads the next video on it.
+ *
+ *         Once nothing plays it, the player is released after {@link #RELEASE_GRACE_MS}. A play
+ *         request coming before that cancels the release, so a short pause doesn't cost a new
+ *         initialization.
  */
 
 class YouTubePlayerManager implements YouTubePlayerHelper.Callback {
 
   private static final String TAG = "YouT:Manager";
+  private static final String FRAGMENT_TAG = "yt:manager:player";
+  static final long RELEASE_GRACE_MS = 5000;
 
   private final FragmentManager manager;
   private final Map<ToroPlayer, YouTubePlayerHelper> helpers = new HashMap<>();
@@ -49,40 +64,38 @@ class YouTubePlayerManager implements YouTubePlayerHelper.Callback {
   private final Activity activity;
   private final int orientation;
 
+  // The shared player: its Fragment, the player once initialized, and the helper showing it.
+  private ToroYouTubePlayerFragment ytFragment;
+  private YouTubePlayer ytPlayer;
+  private YouTubePlayerHelper ytOwner;
+  private boolean initializing;
+  private final Handler handler = new Handler();
+  private final Runnable releaseRunnable = this::releasePlayer;
+
   YouTubePlayerManager(Activity activity, FragmentManager manager) {
     this.activity = activity;
     this.orientation = activity.getRequestedOrientation();
     this.manager = manager;
     FragmentLifecycleCallbacks lifecycleCallbacks = new FragmentLifecycleCallbacks() {
-      @Override public void onFragmentViewCreated(FragmentManager fm, Fragment f, View v,
-          Bundle savedInstanceState) {
-        if (f instanceof ToroYouTubePlayerFragment) {
-          ToroYouTubePlayerFragment fragment = (ToroYouTubePlayerFragment) f;
-          YouTubePlayerHelper helper = fragment.getHelperKey();
-          if (helper != null) helper.ytFragment = fragment;
-        }
-      }
-
+      // The player is kept, but the current item must ask for it again once started.
       @Override public void onFragmentStopped(FragmentManager fm, Fragment f) {
-        if (f instanceof ToroYouTubePlayerFragment) {
-          ToroYouTubePlayerFragment fragment = (ToroYouTubePlayerFragment) f;
-          YouTubePlayerHelper helper = fragment.getHelperKey();
-          if (helper != null) {
-            helper.release();
-          }
+        if (f == ytFragment && ytOwner != null) {
+          ytOwner.onPlayerTaken();
+          ytOwner = null;
+          scheduleRelease();
         }
       }
 
-      // Actively release resource base on Fragment life-cycle.
+      // The player is released along with the Fragment's View. Next play() starts over.
       @Override public void onFragmentViewDestroyed(FragmentManager fm, Fragment f) {
-        if (f instanceof ToroYouTubePlayerFragment) {
-          ToroYouTubePlayerFragment fragment = (ToroYouTubePlayerFragment) f;
-          YouTubePlayerHelper helper = fragment.getHelperKey();
-          if (helper != null) {
-            helper.release();
-            if (helper.ytFragment != null) helper.ytFragment = null;
-          }
-          fragment.setHelperKey(null);
+        if (f == ytFragment) {
+          if (ytOwner != null) ytOwner.onPlayerTaken();
+          detachView();
+          ytOwner = null;
+          ytPlayer = null;
+          initializing = false;
+          ytFragment = null;
+          handler.removeCallbacks(releaseRunnable);
         }
       }
     };
@@ -101,31 +114,72 @@ class YouTubePlayerManager implements YouTubePlayerHelper.Callback {
 
   YouTubePlayerHelper obtainHelper(Container container, @NonNull ToroPlayer player, String video) {
     YouTubePlayerHelper helper = this.helpers.get(player);
-    if (helper != null && helper.ytFragment != null) {
-      manager.beginTransaction().remove(helper.ytFragment).commitNow();
-    }
-
     if (helper == null) {
       helper = new YouTubePlayerHelper(this, container, player, video);
       helpers.put(player, helper);
     }
-
-    ToroYouTubePlayerFragment fragment = ToroYouTubePlayerFragment.newInstance();
-    fragment.setHelperKey(helper);
-    manager.beginTransaction().replace(player.getPlayerView().getId(), fragment).commitNow();
     return helper;
   }
 
   void releaseHelper(ToroPlayer player) {
     YouTubePlayerHelper helper = this.helpers.remove(player);
     if (helper != null) {
-      if (helper.ytFragment != null) {
-        manager.beginTransaction().remove(helper.ytFragment).commitNow();
-      } else {
-        // Should not happen. We always try to release the helper along with Fragment's life-cycle.
-        helper.release();
+      if (helper == ytOwner) {
+        helper.onPlayerTaken();
+        if (ytPlayer != null) ytPlayer.pause();
+        detachView();  // the ViewHolder may be recycled for another item.
+        ytOwner = null;
+        scheduleRelease();
+      }
+      helper.release();
+    }
+  }
+
+  /**
+   * The YouTube SDK allows only one player at a time: release the shared one so that another
+   * player (eg: {@link YouTubePlayerDialog}) can be initialized. Next play() initializes it again.
+   */
+  void releasePlayer() {
+    handler.removeCallbacks(releaseRunnable);
+    if (ytOwner != null) {
+      ytOwner.onPlayerTaken();
+      ytOwner = null;
+    }
+    if (ytPlayer != null) {
+      ytPlayer.release();
+      ytPlayer = null;
+    }
+  }
+
+  // Release the player if nothing asks for it within the grace period.
+  private void scheduleRelease() {
+    handler.removeCallbacks(releaseRunnable);
+    if (ytPlayer != null) handler.postDelayed(releaseRunnable, RELEASE_GRACE_MS);
+  }
+
+  private void attachView(@NonNull YouTubePlayerHelper helper) {
+    if (ytFragment == null) {
+      ytFragment = (ToroYouTubePlayerFragment) manager.findFragmentByTag(FRAGMENT_TAG);
+      if (ytFragment == null) {
+        ytFragment = ToroYouTubePlayerFragment.newInstance();
+        // No container: the View is created, but it is up to this manager to place it.
+        manager.beginTransaction().add(ytFragment, FRAGMENT_TAG).commitNow();
       }
     }
+    helper.ytFragment = ytFragment;
+    View view = ytFragment.getView();
+    ViewGroup container = (ViewGroup) helper.getToroPlayer().getPlayerView();
+    if (view == null || view.getParent() == container) return;
+    if (view.getParent() != null) ((ViewGroup) view.getParent()).removeView(view);
+    container.addView(view, MATCH_PARENT, MATCH_PARENT);
+  }
+
+  private void detachView() {
+    if (ytOwner != null) ytOwner.ytFragment = null;
+    View view = ytFragment != null ? ytFragment.getView() : null;
+    if (view != null && view.getParent() != null) {
+      ((ViewGroup) view.getParent()).removeView(view);
+    }
   }
 
   /// Deal with config change when User start Fullscreen YouTube player
@@ -179,23 +233,62 @@ class YouTubePlayerManager implements YouTubePlayerHelper.Callback {
   }
 
   /// YouTubePlayerHelper.Callback
-  private YouTubePlayerHelper activeHelper = null;
 
-  @Override public void onPlayerCreated(YouTubePlayerHelper helper, YouTubePlayer player) {
-    if (this.activeHelper != null) {
-      throw new IllegalStateException("Another player is still active.");
+  @Override public void requestPlayer(final YouTubePlayerHelper helper) {
+    if (helpers.get(helper.getToroPlayer()) != helper) return;  // released meanwhile.
+    handler.removeCallbacks(releaseRunnable);
+    final boolean resume = ytOwner == helper;
+    if (!resume) {
+      if (ytOwner != null) ytOwner.onPlayerTaken();
+      ytOwner = helper;
+      attachView(helper);
     }
 
-    this.activeHelper = helper;
+    if (ytPlayer != null) {
+      if (resume) {
+        helper.onPlayerReady(ytPlayer, true);
+      } else {
+        // Let the moved View be laid out first, the SDK only plays in a fully visible View.
+        View view = ytFragment.getView();
+        if (view != null) {
+          view.post(() -> {
+            if (ytOwner == helper && ytPlayer != null) helper.onPlayerReady(ytPlayer, false);
+          });
+        }
+      }
+      return;
+    }
+
+    if (initializing || ytFragment == null) return; // the owner at that time gets the player.
+    initializing = true;
+    ytFragment.initialize(BuildConfig.API_KEY, new YouTubePlayer.OnInitializedListener() {
+      @Override
+      public void onInitializationSuccess(Provider provider, YouTubePlayer player, boolean b) {
+        initializing = false;
+        ytPlayer = player;
+        player.setShowFullscreenButton(true);  // fullscreen requires more work ...
+        if (ytOwner != null) {
+          ytOwner.onPlayerReady(player, false);
+        } else {
+          scheduleRelease();  // the item went away while initializing.
+        }
+      }
+
+      @Override public void onInitializationFailure(Provider provider,
+          YouTubeInitializationResult result) {
+        initializing = false;
+        throw new RuntimeException("YouTube init error: " + result.name());
+      }
+    });
   }
 
-  @Override public void onPlayerDestroyed(YouTubePlayerHelper helper) {
-    if (this.activeHelper == helper) this.activeHelper = null;
+  @Override public void onPlayerPaused(YouTubePlayerHelper helper) {
+    if (ytOwner == helper) scheduleRelease();
   }
 
   @Override
   public void onFullscreen(YouTubePlayerHelper helper, YouTubePlayer player, boolean fullscreen) {
-    if (activeHelper != helper) return;
+    if (ytOwner != helper) return;
     if (helper == null || helper.ytFragment == null || helper.youTubePlayer == null) return;
     if (fullscreen) fullscreenRequest = FullscreenRequestType.USER_REQUEST;
     if (fullscreenRequest != null) {
@@ -18,14 +18,15 @@ package im.ene.toro.youtube;
 
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import com.google.api.services.youtube.model.Video;
-import com.google.api.services.youtube.model.VideoListResponse;
 import im.ene.toro.CacheManager;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -36,16 +37,38 @@ class YouTubePlaylistAdapter extends RecyclerView.Adapter<YouTubeVideoViewHolder
     implements CacheManager {
 
   private final YouTubePlayerManager manager;
-  private VideoListResponse data = new VideoListResponse();
+  private List<Video> items = Collections.emptyList();
 
   YouTubePlaylistAdapter(YouTubePlayerManager playerManager) {
     super();
     this.manager = playerManager;
   }
 
-  public void setData(VideoListResponse data) {
-    this.data = data;
-    notifyDataSetChanged();
+  // Only dispatch what changed: a new page is an insertion at the end, a revalidated page that
+  // didn't change is a no-op.
+  public void setData(@Nullable List<Video> data) {
+    final List<Video> oldItems = this.items;
+    final List<Video> newItems = data != null ? data : Collections.<Video>emptyList();
+    DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+      @Override public int getOldListSize() {
+        return oldItems.size();
+      }
+
+      @Override public int getNewListSize() {
+        return newItems.size();
+      }
+
+      @Override public boolean areItemsTheSame(int oldPosition, int newPosition) {
+        return TextUtils.equals(oldItems.get(oldPosition).getId(),
+            newItems.get(newPosition).getId());
+      }
+
+      @Override public boolean areContentsTheSame(int oldPosition, int newPosition) {
+        return oldItems.get(oldPosition).equals(newItems.get(newPosition));
+      }
+    });
+    this.items = newItems;
+    diff.dispatchUpdatesTo(this);
   }
 
   @Override public YouTubeVideoViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
@@ -63,8 +86,6 @@ class YouTubePlaylistAdapter extends RecyclerView.Adapter<YouTubeVideoViewHolder
   }
 
   private List<Video> getItems() {
-    List<Video> items = data.getItems();
-    if (items == null) items = new ArrayList<>();
     return items;
   }
 
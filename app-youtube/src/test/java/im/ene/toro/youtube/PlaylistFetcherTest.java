@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2018 Nam Nguyen, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.toro.youtube;
+
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.json.Json;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import im.ene.toro.youtube.PlaylistCache.Page;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author eneim (2018/03/14).
+ *
+ *         {@link PlaylistFetcher} against a stub {@link MockHttpTransport}: what is asked to the
+ *         API for each page, and what is kept in the {@link PlaylistCache}.
+ */
+public class PlaylistFetcherTest {
+
+  private static final String PLAYLIST_ID = "PL_TEST";
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private StubTransport transport;
+  private PlaylistFetcher fetcher;
+
+  @Before public void setUp() throws IOException {
+    JsonFactory jsonFactory = GsonFactory.getDefaultInstance();
+    transport = new StubTransport();
+    PlaylistCache cache = new PlaylistCache(folder.newFolder("yt_playlist"), jsonFactory);
+    fetcher = new PlaylistFetcher(transport, jsonFactory, cache, PLAYLIST_ID, "KEY");
+  }
+
+  @Test public void fetchPage_first_fetchesVideosAndCaches() throws IOException {
+    transport.respond(200, playlist("etag-1", "page-2", "v1", "v2"));
+    transport.respond(200, videos("v1", "v2"));
+
+    Page page = fetcher.fetchPage(null, null);
+    assertEquals("page-2", page.playlist.getNextPageToken());
+    assertEquals(2, page.videos.getItems().size());
+    assertEquals("v2", page.videos.getItems().get(1).getId());
+
+    assertEquals(2, transport.requests.size());
+    assertTrue(transport.requests.get(0).getUrl().contains("/playlistItems"));
+    assertTrue(transport.requests.get(0).getUrl().contains("playlistId=" + PLAYLIST_ID));
+    assertNull(transport.requests.get(0).getFirstHeaderValue("If-None-Match"));
+    assertTrue(transport.requests.get(1).getUrl().contains("/videos"));
+    assertTrue(transport.requests.get(1).getUrl().contains("id=v1,v2"));
+
+    Page cached = fetcher.getCached(null);
+    assertNotNull(cached);
+    assertEquals("etag-1", cached.playlist.getEtag());
+    assertEquals(2, cached.videos.getItems().size());
+  }
+
+  @Test public void fetchPage_notModified_reusesCachedVideos() throws IOException {
+    transport.respond(200, playlist("etag-1", null, "v1"));
+    transport.respond(200, videos("v1"));
+    fetcher.fetchPage(null, null);
+    Page cached = fetcher.getCached(null);
+    transport.requests.clear();
+
+    transport.respond(304, "");
+    Page page = fetcher.fetchPage(null, cached);
+    assertSame(cached, page);
+    // Revalidated with the ETag, and the videos are not asked for again.
+    assertEquals(1, transport.requests.size());
+    assertEquals("etag-1", transport.requests.get(0).getFirstHeaderValue("If-None-Match"));
+  }
+
+  @Test public void fetchPage_modified_replacesCachedPage() throws IOException {
+    transport.respond(200, playlist("etag-1", null, "v1"));
+    transport.respond(200, videos("v1"));
+    fetcher.fetchPage(null, null);
+    Page cached = fetcher.getCached(null);
+    transport.requests.clear();
+
+    transport.respond(200, playlist("etag-2", null, "v1", "v3"));
+    transport.respond(200, videos("v1", "v3"));
+    Page page = fetcher.fetchPage(null, cached);
+    assertEquals("etag-2", page.playlist.getEtag());
+    assertEquals(2, transport.requests.size());
+    assertEquals("etag-1", transport.requests.get(0).getFirstHeaderValue("If-None-Match"));
+    assertEquals("etag-2", fetcher.getCached(null).playlist.getEtag());
+  }
+
+  @Test public void fetchPage_withToken_asksForThatPage() throws IOException {
+    transport.respond(200, playlist("etag-1", "page-2", "v1"));
+    transport.respond(200, videos("v1"));
+    Page first = fetcher.fetchPage(null, null);
+
+    transport.respond(200, playlist("etag-2", null, "v2"));
+    transport.respond(200, videos("v2"));
+    Page second = fetcher.fetchPage(first.playlist.getNextPageToken(), null);
+    assertNull(second.playlist.getNextPageToken());
+    assertTrue(transport.requests.get(2).getUrl().contains("pageToken=page-2"));
+
+    // Each page is cached under its own token.
+    assertEquals("etag-1", fetcher.getCached(null).playlist.getEtag());
+    assertEquals("etag-2", fetcher.getCached("page-2").playlist.getEtag());
+  }
+
+  @Test public void fetchPage_emptyPage_skipsVideos() throws IOException {
+    transport.respond(200, playlist("etag-1", null));
+    Page page = fetcher.fetchPage(null, null);
+    assertEquals(1, transport.requests.size());
+    assertNull(page.videos.getItems());
+  }
+
+  @Test public void fetchPage_error_throwsAndKeepsCache() throws IOException {
+    transport.respond(200, playlist("etag-1", null, "v1"));
+    transport.respond(200, videos("v1"));
+    fetcher.fetchPage(null, null);
+    Page cached = fetcher.getCached(null);
+
+    transport.respond(403, "{}");
+    try {
+      fetcher.fetchPage(null, cached);
+      fail("Expected an HttpResponseException");
+    } catch (HttpResponseException er) {
+      assertEquals(403, er.getStatusCode());
+    }
+    assertEquals("etag-1", fetcher.getCached(null).playlist.getEtag());
+  }
+
+  private static String playlist(String etag, String nextPageToken, String... videoIds) {
+    StringBuilder json = new StringBuilder("{\"etag\":\"").append(etag).append('"');
+    if (nextPageToken != null) {
+      json.append(",\"nextPageToken\":\"").append(nextPageToken).append('"');
+    }
+    if (videoIds.length > 0) {
+      json.append(",\"items\":[");
+      for (int i = 0; i < videoIds.length; i++) {
+        if (i > 0) json.append(',');
+        json.append("{\"id\":\"item-").append(videoIds[i]).append("\",")
+            .append("\"snippet\":{\"resourceId\":{\"videoId\":\"").append(videoIds[i])
+            .append("\"}}}");
+      }
+      json.append(']');
+    }
+    return json.append('}').toString();
+  }
+
+  private static String videos(String... videoIds) {
+    StringBuilder json = new StringBuilder("{\"items\":[");
+    for (int i = 0; i < videoIds.length; i++) {
+      if (i > 0) json.append(',');
+      json.append("{\"id\":\"").append(videoIds[i]).append("\"}");
+    }
+    return json.append("]}").toString();
+  }
+
+  // Answers the requests in order with the queued responses, and records them.
+  static class StubTransport extends MockHttpTransport {
+
+    final Deque<MockLowLevelHttpResponse> responses = new ArrayDeque<>();
+    final List<MockLowLevelHttpRequest> requests = new ArrayList<>();
+
+    void respond(int statusCode, String content) {
+      responses.add(new MockLowLevelHttpResponse().setStatusCode(statusCode)
+          .setContentType(Json.MEDIA_TYPE)
+          .setContent(content));
+    }
+
+    @Override public LowLevelHttpRequest buildRequest(String method, final String url) {
+      MockLowLevelHttpRequest request = new MockLowLevelHttpRequest(url) {
+        @Override public LowLevelHttpResponse execute() throws IOException {
+          if (responses.isEmpty()) throw new AssertionError("Unexpected request: " + url);
+          return responses.poll();
+        }
+      };
+      requests.add(request);
+      return request;
+    }
+  }
+}
@@ -33,6 +33,7 @@ import com.bumptech.glide.Glide;
 import com.google.android.exoplayer2.ui.SimpleExoPlayerView;
 import im.ene.toro.ToroPlayer;
 import im.ene.toro.ToroUtil;
+import im.ene.toro.exoplayer.MediaQueue;
 import im.ene.toro.exoplayer.Playable;
 import im.ene.toro.exoplayer.SimpleExoPlayerViewHelper;
 import im.ene.toro.media.PlaybackInfo;
@@ -57,6 +58,7 @@ public class MoreVideoItemViewHolder extends RecyclerView.ViewHolder implements
 
   @Nullable SimpleExoPlayerViewHelper helper;
   @Nullable private Uri mediaUri;
+  @Nullable private MediaQueue mediaQueue;
 
   @BindView(R.id.fb_user_icon) ImageView userIcon;
   @BindView(R.id.fb_user_name) TextView userName;
@@ -88,6 +90,7 @@ public class MoreVideoItemViewHolder extends RecyclerView.ViewHolder implements
 
   @SuppressWarnings("SameParameterValue") //
   void bind(MoreVideosAdapter adapter, FbVideo item, List<Object> payloads) {
+    mediaQueue = adapter;
     if (item != null) {
       userName.setText(item.author.userName);
       Glide.with(itemView.getContext()).load(item.author.userIcon).into(userIcon);
@@ -110,6 +113,7 @@ public class MoreVideoItemViewHolder extends RecyclerView.ViewHolder implements
     if (mediaUri == null) throw new IllegalStateException("mediaUri is null.");
     if (helper == null) {
       helper = new SimpleExoPlayerViewHelper(container, this, mediaUri);
+      helper.setMediaQueue(mediaQueue);
       helper.setEventListener(listener);
       helper.addPlayerEventListener(eventListener);
     }
@@ -16,6 +16,7 @@
 
 package im.ene.toro.sample.facebook.playlist;
 
+import android.net.Uri;
 import android.support.annotation.IntRange;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
@@ -25,6 +26,7 @@ import android.view.View;
 import android.view.ViewGroup;
 import im.ene.toro.CacheManager;
 import im.ene.toro.ToroPlayer;
+import im.ene.toro.exoplayer.MediaQueue;
 import im.ene.toro.sample.facebook.data.FbVideo;
 import java.util.ArrayList;
 import java.util.List;
@@ -34,7 +36,7 @@ import java.util.List;
  */
 
 @SuppressWarnings("Range") public class MoreVideosAdapter
-    extends RecyclerView.Adapter<MoreVideoItemViewHolder> implements CacheManager {
+    extends RecyclerView.Adapter<MoreVideoItemViewHolder> implements CacheManager, MediaQueue {
 
   @NonNull private final FbVideo baseItem;
   private final long initTimeStamp;
@@ -112,6 +114,12 @@ import java.util.List;
     return key instanceof FbVideo ? items.indexOf(key) : null;
   }
 
+  // Implement the MediaQueue, so a player goes on with the next videos without a gap.
+
+  @Nullable @Override public Uri getMediaUri(int order) {
+    return order >= 0 ? getItem(order).getMediaUrl().getUri() : null;
+  }
+
   // on complete stuff
   int findNextPlayerPosition(int base) {
     return base + 1;
@@ -56,8 +56,9 @@ public interface CacheManager {
 
   /**
    * A built-in {@link CacheManager} that use the order as the unique key. Note that this is not
-   * data-changes-proof. Which means that after data change events, the map may need to be
-   * updated.
+   * data-changes-proof by itself. {@link Container} remaps the cached orders on item range
+   * insertion, removal and move, but a full data set change ({@link
+   * RecyclerView.Adapter#notifyDataSetChanged()}) cannot be followed.
    */
   CacheManager DEFAULT = new CacheManager() {
     @Override public Object getKeyForOrder(int order) {
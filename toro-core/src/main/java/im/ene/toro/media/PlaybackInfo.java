@@ -21,6 +21,18 @@ import android.os.Parcelable;
 
 /**
  * @author eneim | 6/6/17.
+ *
+ *         Besides the resume position, a PlaybackInfo can carry the state that makes a resumed
+ *         playback look like it never stopped: the bitrate of the last selected video rendition,
+ *         the playback speed and the volume. Unset values are not applied on restore.
+ *
+ *         {@link #isFastResume()} is an opt-in of the App, for the items where a quick resume
+ *         matters more than a bandwidth check: it is kept as is through saves and restores, and
+ *         never set by the library itself. What a fast resume does is up to the player, see
+ *         {@code Config.Builder#setFastResume(boolean)} of toro-exoplayer.
+ *
+ *         Only the values that are set are written to a Parcel, so a plain resume position stays
+ *         as small as before.
  */
 
 public class PlaybackInfo implements Parcelable {
@@ -29,8 +41,24 @@ public class PlaybackInfo implements Parcelable {
 
   public static final int INDEX_UNSET = -1;
 
+  public static final int BITRATE_UNSET = -1;
+
+  public static final float SPEED_UNSET = -1f;
+
+  public static final float VOLUME_UNSET = -1f;
+
+  // Parcel flags, one for each optional value that is written.
+  private static final int FLAG_BITRATE = 1;
+  private static final int FLAG_SPEED = 1 << 1;
+  private static final int FLAG_VOLUME = 1 << 2;
+  private static final int FLAG_FAST_RESUME = 1 << 3;
+
   private int resumeWindow;
   private long resumePosition;
+  private int videoBitrate = BITRATE_UNSET;
+  private float speed = SPEED_UNSET;
+  private float volume = VOLUME_UNSET;
+  private boolean fastResume;
 
   public PlaybackInfo(int resumeWindow, long resumePosition) {
     this.resumeWindow = resumeWindow;
@@ -43,16 +71,33 @@ public class PlaybackInfo implements Parcelable {
 
   public PlaybackInfo(PlaybackInfo other) {
     this(other.getResumeWindow(), other.getResumePosition());
+    this.videoBitrate = other.videoBitrate;
+    this.speed = other.speed;
+    this.volume = other.volume;
+    this.fastResume = other.fastResume;
   }
 
   protected PlaybackInfo(Parcel in) {
+    int flags = in.readInt();
     resumeWindow = in.readInt();
     resumePosition = in.readLong();
+    if ((flags & FLAG_BITRATE) != 0) videoBitrate = in.readInt();
+    if ((flags & FLAG_SPEED) != 0) speed = in.readFloat();
+    if ((flags & FLAG_VOLUME) != 0) volume = in.readFloat();
+    fastResume = (flags & FLAG_FAST_RESUME) != 0;
   }
 
   @Override public void writeToParcel(Parcel dest, int flags) {
+    int valueFlags = (videoBitrate != BITRATE_UNSET ? FLAG_BITRATE : 0)  //
+        | (speed != SPEED_UNSET ? FLAG_SPEED : 0)  //
+        | (volume != VOLUME_UNSET ? FLAG_VOLUME : 0)  //
+        | (fastResume ? FLAG_FAST_RESUME : 0);
+    dest.writeInt(valueFlags);
     dest.writeInt(resumeWindow);
     dest.writeLong(resumePosition);
+    if ((valueFlags & FLAG_BITRATE) != 0) dest.writeInt(videoBitrate);
+    if ((valueFlags & FLAG_SPEED) != 0) dest.writeFloat(speed);
+    if ((valueFlags & FLAG_VOLUME) != 0) dest.writeFloat(volume);
   }
 
   @Override public int describeContents() {
@@ -89,13 +134,50 @@ public class PlaybackInfo implements Parcelable {
     this.resumePosition = resumePosition;
   }
 
+  public int getVideoBitrate() {
+    return videoBitrate;
+  }
+
+  public void setVideoBitrate(int videoBitrate) {
+    this.videoBitrate = videoBitrate;
+  }
+
+  public float getSpeed() {
+    return speed;
+  }
+
+  public void setSpeed(float speed) {
+    this.speed = speed;
+  }
+
+  public float getVolume() {
+    return volume;
+  }
+
+  public void setVolume(float volume) {
+    this.volume = volume;
+  }
+
+  public boolean isFastResume() {
+    return fastResume;
+  }
+
+  public void setFastResume(boolean fastResume) {
+    this.fastResume = fastResume;
+  }
+
   public void reset() {
     resumeWindow = INDEX_UNSET;
     resumePosition = TIME_UNSET;
+    videoBitrate = BITRATE_UNSET;
+    speed = SPEED_UNSET;
+    volume = VOLUME_UNSET;
+    fastResume = false;
   }
 
   @Override public String toString() {
-    return "State{" + "window=" + resumeWindow + ", position=" + resumePosition + '}';
+    return "State{" + "window=" + resumeWindow + ", position=" + resumePosition + ", bitrate="
+        + videoBitrate + ", speed=" + speed + ", volume=" + volume + ", fast=" + fastResume + '}';
   }
 
   @Override public boolean equals(Object o) {
@@ -105,12 +187,20 @@ public class PlaybackInfo implements Parcelable {
     PlaybackInfo that = (PlaybackInfo) o;
 
     if (resumeWindow != that.resumeWindow) return false;
-    return resumePosition == that.resumePosition;
+    if (resumePosition != that.resumePosition) return false;
+    if (videoBitrate != that.videoBitrate) return false;
+    if (Float.compare(that.speed, speed) != 0) return false;
+    if (Float.compare(that.volume, volume) != 0) return false;
+    return fastResume == that.fastResume;
   }
 
   @Override public int hashCode() {
     int result = resumeWindow;
     result = 31 * result + (int) (resumePosition ^ (resumePosition >>> 32));
+    result = 31 * result + videoBitrate;
+    result = 31 * result + (speed != +0.0f ? Float.floatToIntBits(speed) : 0);
+    result = 31 * result + (volume != +0.0f ? Float.floatToIntBits(volume) : 0);
+    result = 31 * result + (fastResume ? 1 : 0);
     return result;
   }
 }
@@ -32,7 +32,7 @@ import android.support.v7.widget.RecyclerView;
 import android.util.AttributeSet;
 import android.util.SparseArray;
 import android.view.View;
-import android.view.ViewTreeObserver.OnGlobalLayoutListener;
+import android.view.ViewTreeObserver;
 import im.ene.toro.CacheManager;
 import im.ene.toro.PlayerSelector;
 import im.ene.toro.ToroPlayer;
@@ -40,6 +40,7 @@ import im.ene.toro.media.PlaybackInfo;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 
@@ -75,11 +76,15 @@ public class Container extends RecyclerView {
   private static final String TAG = "ToroLib:Container";
 
   static final int SOME_BLINKS = 50;  // 3 frames ...
+  // A few KB once encoded. Save far less than the 1MB Binder transaction buffer.
+  static final int MAX_SAVED_STATES = 256;
 
   /* package */ final PlayerManager playerManager;
   /* package */ RecyclerListenerImpl recyclerListener;  // null = not attached/detached
   /* package */ PlayerSelector playerSelector = PlayerSelector.DEFAULT;   // null = do nothing
   /* package */ Handler animatorFinishHandler;  // null = not attached/detached
+  /* package */ final ChildLayoutHelper childLayoutHelper = new ChildLayoutHelper(this);
+  /* package */ final PlaybackRegistry playbackRegistry = new PlaybackRegistry(this);
 
   public Container(Context context) {
     this(context, null);
@@ -134,6 +139,8 @@ public class Container extends RecyclerView {
       animatorFinishHandler = null;
     }
 
+    childLayoutHelper.clear();
+
     List<ToroPlayer> players = playerManager.getPlayers();
     if (!players.isEmpty()) {
       for (int size = players.size(), i = size - 1; i >= 0; i--) {
@@ -144,6 +151,7 @@ public class Container extends RecyclerView {
       playerManager.clear();
     }
 
+    playbackRegistry.clear();
     dataObserver.registerAdapter(null);
   }
 
@@ -177,16 +185,8 @@ public class Container extends RecyclerView {
       // Only if container is in idle state and player is not playing.
       if (getScrollState() == SCROLL_STATE_IDLE && !player.isPlaying()) playerManager.play(player);
     } else {
-      child.getViewTreeObserver().addOnGlobalLayoutListener(new OnGlobalLayoutListener() {
-        @Override public void onGlobalLayout() {
-          child.getViewTreeObserver().removeOnGlobalLayoutListener(this);
-          if (Common.allowsToPlay(player)) {
-            if (playerManager.attachPlayer(player)) {
-              dispatchUpdateOnAnimationFinished(false);
-            }
-          }
-        }
-      });
+      // Visibility is checked for all newly attached Players at once, before the next frame.
+      childLayoutHelper.enqueue(player);
     }
   }
 
@@ -195,6 +195,7 @@ public class Container extends RecyclerView {
     ViewHolder holder = getChildViewHolder(child);
     if (holder == null || !(holder instanceof ToroPlayer)) return;
     final ToroPlayer player = (ToroPlayer) holder;
+    childLayoutHelper.dequeue(player);
 
     boolean playerManaged = playerManager.manages(player);
     if (player.isPlaying()) {
@@ -370,6 +371,8 @@ public class Container extends RecyclerView {
   //// PlaybackInfo Cache implementation
   private CacheManager cacheManager = null; // null by default
   private Map<Object, PlaybackInfo> infoCache = new ArrayMap<>();
+  // Used instead of infoCache when cacheManager is CacheManager.DEFAULT, whose keys are orders.
+  private final OrderedInfoCache orderedCache = new OrderedInfoCache();
 
   /**
    * Save {@link PlaybackInfo} for the current {@link ToroPlayer} of a specific order.
@@ -379,6 +382,10 @@ public class Container extends RecyclerView {
    */
   public void savePlaybackInfo(int order, @NonNull PlaybackInfo playbackInfo) {
     if (cacheManager == null || order < 0) return;
+    if (cacheManager == CacheManager.DEFAULT) {
+      orderedCache.put(order, playbackInfo);
+      return;
+    }
     Object key = cacheManager.getKeyForOrder(order);
     if (key != null) infoCache.put(key, playbackInfo);
   }
@@ -391,6 +398,14 @@ public class Container extends RecyclerView {
    */
   @NonNull public PlaybackInfo getPlaybackInfo(int order) {
     if (cacheManager == null || order < 0) return new PlaybackInfo();
+    if (cacheManager == CacheManager.DEFAULT) {
+      PlaybackInfo info = orderedCache.get(order);
+      if (info == null) {
+        info = new PlaybackInfo();
+        orderedCache.put(order, info);
+      }
+      return info;
+    }
 
     Object key = cacheManager.getKeyForOrder(order);
     if (key == null) return new PlaybackInfo();
@@ -412,6 +427,7 @@ public class Container extends RecyclerView {
   @NonNull public List<Integer> getSavedPlayerOrders() {
     List<Integer> orders = new ArrayList<>();
     if (cacheManager == null) return orders;
+    if (cacheManager == CacheManager.DEFAULT) return orderedCache.getOrders();
     for (Object key : infoCache.keySet()) {
       Integer order = cacheManager.getOrderForKey(key);
       if (order != null) orders.add(order);
@@ -433,6 +449,8 @@ public class Container extends RecyclerView {
   public final void setCacheManager(@Nullable CacheManager cacheManager) {
     if (this.cacheManager == cacheManager) return;
     this.infoCache.clear();
+    this.orderedCache.clear();
+    this.playbackRegistry.clear();  // keys are not valid anymore, owners keep their sessions.
     this.cacheManager = cacheManager;
   }
 
@@ -445,6 +463,17 @@ public class Container extends RecyclerView {
     return cacheManager;
   }
 
+  /**
+   * Get the {@link PlaybackRegistry} of this {@link Container}, which helps {@link ToroPlayer}s
+   * of the same item to share one playback session across ViewHolder recycling. Keys are provided
+   * by the {@link CacheManager}, so it does nothing if there is no {@link CacheManager}.
+   *
+   * @return the {@link PlaybackRegistry} of this {@link Container}.
+   */
+  @NonNull public final PlaybackRegistry getPlaybackRegistry() {
+    return playbackRegistry;
+  }
+
   /**
    * Temporary save current playback infos when the App is stopped but not re-created. (For example:
    * User press App Stack). If not {@code null} then user is back from a living-but-stopped state.
@@ -574,6 +603,13 @@ public class Container extends RecyclerView {
       states.put(order, this.getPlaybackInfo(order));
     }
 
+    // Keep the saved state small: only the states closest to the playing (or first) player.
+    if (states.size() > MAX_SAVED_STATES) {
+      int anchor = !playingOrders.isEmpty() ? playingOrders.get(0) :  //
+          (!source.isEmpty() ? source.get(0).getPlayerOrder() : 0);
+      trimStates(states, anchor);
+    }
+
     boolean recreating =
         getContext() instanceof Activity && ((Activity) getContext()).isChangingConfigurations();
 
@@ -600,6 +636,22 @@ public class Container extends RecyclerView {
     return playerViewState;
   }
 
+  // Remove the states farthest from anchor, until there are MAX_SAVED_STATES left.
+  static void trimStates(SparseArray<PlaybackInfo> states, final int anchor) {
+    List<Integer> orders = new ArrayList<>(states.size());
+    for (int i = 0; i < states.size(); i++) {
+      orders.add(states.keyAt(i));
+    }
+    Collections.sort(orders, new Comparator<Integer>() {
+      @Override public int compare(Integer o1, Integer o2) {
+        return Math.abs(o1 - anchor) - Math.abs(o2 - anchor);
+      }
+    });
+    for (int i = MAX_SAVED_STATES; i < orders.size(); i++) {
+      states.remove(orders.get(i));
+    }
+  }
+
   @Override protected void onRestoreInstanceState(Parcelable state) {
     if (!(state instanceof PlayerViewState)) {
       super.onRestoreInstanceState(state);
@@ -608,12 +660,12 @@ public class Container extends RecyclerView {
 
     PlayerViewState viewState = (PlayerViewState) state;
     super.onRestoreInstanceState(viewState.getSuperState());
-    SparseArray<?> saveStates = viewState.statesCache;
+    SparseArray<PlaybackInfo> saveStates = viewState.statesCache;
     int cacheSize;
     if (saveStates != null && (cacheSize = saveStates.size()) > 0) {
       for (int i = 0; i < cacheSize; i++) {
         int order = saveStates.keyAt(i);
-        PlaybackInfo playbackInfo = (PlaybackInfo) saveStates.get(order);
+        PlaybackInfo playbackInfo = saveStates.valueAt(i);
         this.savePlaybackInfo(order, playbackInfo);
       }
     }
@@ -623,11 +675,14 @@ public class Container extends RecyclerView {
    * Store the array of {@link PlaybackInfo} of recently cached playback. This state will be used
    * only when {@link #cacheManager} is not {@code null}. Extension of {@link Container} must
    * also have its own version of {@link SavedState} extends this {@link PlayerViewState}.
+   *
+   * The states are written by {@link PlaybackInfoCodec}, and at most {@link #MAX_SAVED_STATES}
+   * of them are saved, so that the saved state stays far below the Binder transaction limit.
    */
   @SuppressWarnings("WeakerAccess") //
   public static class PlayerViewState extends AbsSavedState {
 
-    SparseArray<?> statesCache;
+    SparseArray<PlaybackInfo> statesCache;
 
     /**
      * Called by onSaveInstanceState
@@ -641,17 +696,17 @@ public class Container extends RecyclerView {
      */
     PlayerViewState(Parcel in, ClassLoader loader) {
       super(in, loader);
-      statesCache = in.readSparseArray(loader);
+      statesCache = PlaybackInfoCodec.read(in, loader);
     }
 
     PlayerViewState(Parcel in) {
       super(in);
+      statesCache = PlaybackInfoCodec.read(in, null);
     }
 
     @Override public void writeToParcel(Parcel dest, int flags) {
       super.writeToParcel(dest, flags);
-      //noinspection unchecked
-      dest.writeSparseArray((SparseArray<Object>) statesCache);
+      PlaybackInfoCodec.write(dest, statesCache, flags);
     }
 
     public static final Creator<PlayerViewState> CREATOR =
@@ -692,20 +747,60 @@ public class Container extends RecyclerView {
       dispatchUpdateOnAnimationFinished(true);
     }
 
+    // Only re-evaluate if a managed Player is among the changed items, or if there is none yet:
+    // a changed item may have just become a Player.
     @Override public void onItemRangeChanged(int positionStart, int itemCount) {
-      dispatchUpdateOnAnimationFinished(false);
+      if (managesPlayerInRange(positionStart, positionStart + itemCount)
+          || playerManager.getPlayers().isEmpty()) {
+        dispatchUpdateOnAnimationFinished(false);
+      }
     }
 
     @Override public void onItemRangeInserted(int positionStart, int itemCount) {
-      dispatchUpdateOnAnimationFinished(false);
+      if (cacheManager == CacheManager.DEFAULT) {
+        orderedCache.onItemRangeInserted(positionStart, itemCount);
+      }
+      // Items inserted after the last managed Player don't change any of the managed Players.
+      if (affectsPlayersFrom(positionStart)) dispatchUpdateOnAnimationFinished(false);
     }
 
     @Override public void onItemRangeRemoved(int positionStart, int itemCount) {
-      dispatchUpdateOnAnimationFinished(false);
+      if (cacheManager == CacheManager.DEFAULT) {
+        orderedCache.onItemRangeRemoved(positionStart, itemCount);
+      }
+      if (affectsPlayersFrom(positionStart)) dispatchUpdateOnAnimationFinished(false);
     }
 
     @Override public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
-      dispatchUpdateOnAnimationFinished(false);
+      if (cacheManager == CacheManager.DEFAULT) {
+        orderedCache.onItemRangeMoved(fromPosition, toPosition, itemCount);
+      }
+      // Only items between the 2 positions are affected.
+      int start = Math.min(fromPosition, toPosition);
+      int end = Math.max(fromPosition, toPosition) + itemCount;
+      if (managesPlayerInRange(start, end) || playerManager.getPlayers().isEmpty()) {
+        dispatchUpdateOnAnimationFinished(false);
+      }
+    }
+
+    // Return false only if all managed Players have known orders which are before position.
+    private boolean affectsPlayersFrom(int position) {
+      List<ToroPlayer> players = playerManager.getPlayers();
+      if (players.isEmpty()) return true;
+      for (ToroPlayer player : players) {
+        int order = player.getPlayerOrder();
+        if (order < 0 || order >= position) return true;
+      }
+      return false;
+    }
+
+    // Return true if there is a managed Player whose order is in [start, end).
+    private boolean managesPlayerInRange(int start, int end) {
+      for (ToroPlayer player : playerManager.getPlayers()) {
+        int order = player.getPlayerOrder();
+        if (order >= start && order < end) return true;
+      }
+      return false;
     }
   }
 
@@ -727,6 +822,63 @@ public class Container extends RecyclerView {
     }
   }
 
+  /**
+   * A {@link ViewTreeObserver.OnPreDrawListener} that collects the {@link ToroPlayer}s attached
+   * during a frame, then checks them in one pass right before that frame is drawn. Layout is done
+   * by then, so their visibility is accurate. At most one playback update is dispatched per frame.
+   */
+  private static class ChildLayoutHelper implements ViewTreeObserver.OnPreDrawListener {
+
+    @NonNull final Container container;
+    final List<ToroPlayer> pendingPlayers = new ArrayList<>();
+    ViewTreeObserver observer;  // non-null = registered
+
+    ChildLayoutHelper(@NonNull Container container) {
+      this.container = container;
+    }
+
+    void enqueue(@NonNull ToroPlayer player) {
+      if (!pendingPlayers.contains(player)) pendingPlayers.add(player);
+      if (observer == null) {
+        observer = container.getViewTreeObserver();
+        observer.addOnPreDrawListener(this);
+      }
+    }
+
+    void dequeue(@NonNull ToroPlayer player) {
+      pendingPlayers.remove(player);
+    }
+
+    void clear() {
+      pendingPlayers.clear();
+      unregister();
+    }
+
+    private void unregister() {
+      if (observer == null) return;
+      if (observer.isAlive()) {
+        observer.removeOnPreDrawListener(this);
+      } else {
+        container.getViewTreeObserver().removeOnPreDrawListener(this);
+      }
+      observer = null;
+    }
+
+    @Override public boolean onPreDraw() {
+      unregister();
+      boolean attached = false;
+      for (int i = 0, size = pendingPlayers.size(); i < size; i++) {
+        ToroPlayer player = pendingPlayers.get(i);
+        if (Common.allowsToPlay(player) && container.playerManager.attachPlayer(player)) {
+          attached = true;
+        }
+      }
+      pendingPlayers.clear();
+      if (attached) container.dispatchUpdateOnAnimationFinished(false);
+      return true;  // never cancel the drawing.
+    }
+  }
+
   private static class RecyclerListenerImpl implements RecyclerView.RecyclerListener {
 
     final Container container;
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2018 Nam Nguyen, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.toro.widget;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import im.ene.toro.CacheManager;
+import im.ene.toro.media.PlaybackInfo;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * @author eneim (2018/03/01).
+ *
+ *         A {@link PlaybackInfo} cache whose keys are the Players' orders, used by {@link Container}
+ *         when its {@link CacheManager} is {@link CacheManager#DEFAULT}. Those keys are Adapter
+ *         positions, so they must follow the Adapter's data change events to stay correct.
+ *
+ *         Entries are stored by 'relative' order, the actual order is the relative one plus
+ *         {@link #offset}. A change that shifts every cached entry (prepending items to a feed for
+ *         example) only updates the offset, other changes only touch the entries on the shorter
+ *         side of the changed range.
+ */
+
+final class OrderedInfoCache {
+
+  private final NavigableMap<Integer, PlaybackInfo> entries = new TreeMap<>();
+  private int offset = 0; // actual order = relative order + offset
+
+  void put(int order, @NonNull PlaybackInfo info) {
+    entries.put(order - offset, info);
+  }
+
+  @Nullable PlaybackInfo get(int order) {
+    return entries.get(order - offset);
+  }
+
+  boolean isEmpty() {
+    return entries.isEmpty();
+  }
+
+  @NonNull List<Integer> getOrders() {
+    List<Integer> orders = new ArrayList<>(entries.size());
+    for (Integer key : entries.keySet()) {
+      orders.add(key + offset);
+    }
+    return orders;
+  }
+
+  void clear() {
+    entries.clear();
+    offset = 0;
+  }
+
+  // Items of [positionStart, positionStart + itemCount) are inserted.
+  void onItemRangeInserted(int positionStart, int itemCount) {
+    if (entries.isEmpty() || itemCount <= 0) return;
+    int first = entries.firstKey() + offset;
+    int last = entries.lastKey() + offset;
+    if (positionStart > last) return;  // appended, nothing to remap.
+    if (positionStart - first < last - positionStart) {
+      // Fewer entries before the change: move the whole window, then push back the head.
+      offset += itemCount;
+      shift(first - offset + itemCount, positionStart - offset + itemCount, -itemCount);
+    } else {
+      shift(positionStart - offset, last - offset + 1, itemCount);
+    }
+  }
+
+  // Items of [positionStart, positionStart + itemCount) are removed.
+  void onItemRangeRemoved(int positionStart, int itemCount) {
+    if (entries.isEmpty() || itemCount <= 0) return;
+    int end = positionStart + itemCount;
+    entries.subMap(positionStart - offset, end - offset).clear();
+    if (entries.isEmpty()) return;
+    int first = entries.firstKey() + offset;
+    int last = entries.lastKey() + offset;
+    if (end > last) return; // nothing after the removed range.
+    if (positionStart - first < last - end) {
+      offset -= itemCount;
+      shift(first - offset - itemCount, positionStart - offset - itemCount, itemCount);
+    } else {
+      shift(end - offset, last - offset + 1, -itemCount);
+    }
+  }
+
+  // Items of [fromPosition, fromPosition + itemCount) are moved to start at toPosition.
+  void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+    if (entries.isEmpty() || itemCount <= 0 || fromPosition == toPosition) return;
+    NavigableMap<Integer, PlaybackInfo> moving =
+        entries.subMap(fromPosition - offset, true, fromPosition + itemCount - 1 - offset, true);
+    List<PlaybackInfo> movingInfos = new ArrayList<>(moving.size());
+    List<Integer> movingOrders = new ArrayList<>(moving.size());
+    for (Map.Entry<Integer, PlaybackInfo> entry : moving.entrySet()) {
+      movingOrders.add(entry.getKey() + offset);
+      movingInfos.add(entry.getValue());
+    }
+    moving.clear();
+
+    if (fromPosition < toPosition) {
+      // Items in between move up.
+      shift(fromPosition + itemCount - offset, toPosition + itemCount - offset, -itemCount);
+    } else {
+      // Items in between move down.
+      shift(toPosition - offset, fromPosition - offset, itemCount);
+    }
+
+    for (int i = 0, size = movingOrders.size(); i < size; i++) {
+      put(movingOrders.get(i) + toPosition - fromPosition, movingInfos.get(i));
+    }
+  }
+
+  // Shift entries whose relative key is in [fromKey, toKey) by delta.
+  private void shift(int fromKey, int toKey, int delta) {
+    if (fromKey >= toKey || delta == 0) return;
+    NavigableMap<Integer, PlaybackInfo> range = entries.subMap(fromKey, true, toKey, false);
+    if (range.isEmpty()) return;
+    // Copy the keys and values: TreeMap reuses its entry nodes when removing, so the entries of
+    // a cleared range must not be read afterward.
+    List<Integer> keys = new ArrayList<>(range.keySet());
+    List<PlaybackInfo> values = new ArrayList<>(range.values());
+    range.clear();
+    for (int i = 0, size = keys.size(); i < size; i++) {
+      entries.put(keys.get(i) + delta, values.get(i));
+    }
+  }
+
+  @Override public String toString() {
+    return "OrderedInfoCache{" + "offset=" + offset + ", entries=" + entries + '}';
+  }
+}
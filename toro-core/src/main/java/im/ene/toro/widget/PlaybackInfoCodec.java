@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2018 Nam Nguyen, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.toro.widget;
+
+import android.os.Parcel;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.SparseArray;
+import im.ene.toro.media.PlaybackInfo;
+import java.util.Arrays;
+
+import static im.ene.toro.media.PlaybackInfo.BITRATE_UNSET;
+import static im.ene.toro.media.PlaybackInfo.INDEX_UNSET;
+import static im.ene.toro.media.PlaybackInfo.SPEED_UNSET;
+import static im.ene.toro.media.PlaybackInfo.TIME_UNSET;
+import static im.ene.toro.media.PlaybackInfo.VOLUME_UNSET;
+
+/**
+ * @author eneim (2018/03/08).
+ *
+ *         Compact encoding of the {@link PlaybackInfo}s saved by {@link Container.PlayerViewState}.
+ *         {@link Parcel#writeSparseArray(SparseArray)} writes every entry through
+ *         {@link Parcel#writeValue(Object)}, with its class name. Here, plain {@link PlaybackInfo}s
+ *         are packed in one byte array instead: orders are delta-encoded, numbers are varints and
+ *         unset values are left out. A typical entry takes 4 to 6 bytes.
+ *
+ *         Subclasses of {@link PlaybackInfo} may have their own state, they are still written as
+ *         Parcelables after the packed entries.
+ *
+ *         Layout: version, packed bytes (count, then for each entry: order delta, flags, values),
+ *         count of the other entries, then (order, Parcelable) for each of them.
+ */
+
+final class PlaybackInfoCodec {
+
+  private static final int VERSION = 1;
+
+  // Entry flags.
+  private static final int HAS_WINDOW = 1;
+  private static final int HAS_POSITION = 1 << 1;
+  private static final int HAS_BITRATE = 1 << 2;
+  private static final int HAS_SPEED = 1 << 3;
+  private static final int HAS_VOLUME = 1 << 4;
+  private static final int FAST_RESUME = 1 << 5;
+
+  private PlaybackInfoCodec() {
+    throw new RuntimeException("Meh!");
+  }
+
+  static void write(@NonNull Parcel dest, @Nullable SparseArray<PlaybackInfo> states, int flags) {
+    dest.writeInt(VERSION);
+    int size = states != null ? states.size() : 0;
+    Writer writer = new Writer(size * 6 + 5);
+    int plainCount = 0;
+    for (int i = 0; i < size; i++) {
+      if (isPlain(states.valueAt(i))) plainCount++;
+    }
+
+    writer.writeVarint(plainCount);
+    int lastOrder = 0;
+    for (int i = 0; i < size; i++) {
+      PlaybackInfo info = states.valueAt(i);
+      if (!isPlain(info)) continue;
+      int order = states.keyAt(i);
+      writer.writeVarint(order - lastOrder); // SparseArray keys are sorted, deltas are positive.
+      lastOrder = order;
+      writeEntry(writer, info);
+    }
+    dest.writeByteArray(writer.buffer, 0, writer.length);
+
+    dest.writeInt(size - plainCount);
+    for (int i = 0; i < size; i++) {
+      PlaybackInfo info = states.valueAt(i);
+      if (isPlain(info)) continue;
+      dest.writeInt(states.keyAt(i));
+      dest.writeParcelable(info, flags);
+    }
+  }
+
+  @NonNull static SparseArray<PlaybackInfo> read(@NonNull Parcel in, @Nullable ClassLoader loader) {
+    int version = in.readInt();
+    if (version != VERSION) {
+      throw new IllegalStateException("Unknown PlaybackInfo encoding version: " + version);
+    }
+    Reader reader = new Reader(in.createByteArray());
+    int plainCount = reader.readVarint();
+    SparseArray<PlaybackInfo> states = new SparseArray<>(plainCount);
+    int order = 0;
+    for (int i = 0; i < plainCount; i++) {
+      order += reader.readVarint();
+      states.put(order, readEntry(reader));
+    }
+
+    int otherCount = in.readInt();
+    if (loader == null) loader = PlaybackInfo.class.getClassLoader();
+    for (int i = 0; i < otherCount; i++) {
+      int key = in.readInt();
+      PlaybackInfo info = in.readParcelable(loader);
+      if (info != null) states.put(key, info);
+    }
+    return states;
+  }
+
+  private static boolean isPlain(@Nullable PlaybackInfo info) {
+    return info != null && info.getClass() == PlaybackInfo.class;
+  }
+
+  private static void writeEntry(@NonNull Writer writer, @NonNull PlaybackInfo info) {
+    int flags = (info.getResumeWindow() != INDEX_UNSET ? HAS_WINDOW : 0)  //
+        | (info.getResumePosition() != TIME_UNSET ? HAS_POSITION : 0)  //
+        | (info.getVideoBitrate() != BITRATE_UNSET ? HAS_BITRATE : 0)  //
+        | (info.getSpeed() != SPEED_UNSET ? HAS_SPEED : 0)  //
+        | (info.getVolume() != VOLUME_UNSET ? HAS_VOLUME : 0)  //
+        | (info.isFastResume() ? FAST_RESUME : 0);
+    writer.writeVarint(flags);
+    if ((flags & HAS_WINDOW) != 0) writer.writeVarint(zigzag(info.getResumeWindow()));
+    if ((flags & HAS_POSITION) != 0) writer.writeVarLong(zigzag(info.getResumePosition()));
+    if ((flags & HAS_BITRATE) != 0) writer.writeVarint(zigzag(info.getVideoBitrate()));
+    if ((flags & HAS_SPEED) != 0) writer.writeFixed32(Float.floatToIntBits(info.getSpeed()));
+    if ((flags & HAS_VOLUME) != 0) writer.writeFixed32(Float.floatToIntBits(info.getVolume()));
+  }
+
+  @NonNull private static PlaybackInfo readEntry(@NonNull Reader reader) {
+    int flags = reader.readVarint();
+    PlaybackInfo info = new PlaybackInfo();
+    if ((flags & HAS_WINDOW) != 0) info.setResumeWindow(unzigzag(reader.readVarint()));
+    if ((flags & HAS_POSITION) != 0) info.setResumePosition(unzigzag(reader.readVarLong()));
+    if ((flags & HAS_BITRATE) != 0) info.setVideoBitrate(unzigzag(reader.readVarint()));
+    if ((flags & HAS_SPEED) != 0) info.setSpeed(Float.intBitsToFloat(reader.readFixed32()));
+    if ((flags & HAS_VOLUME) != 0) info.setVolume(Float.intBitsToFloat(reader.readFixed32()));
+    info.setFastResume((flags & FAST_RESUME) != 0);
+    return info;
+  }
+
+  // Small negative values (C.TIME_UNSET like positions ...) stay small.
+  private static int zigzag(int value) {
+    return (value << 1) ^ (value >> 31);
+  }
+
+  private static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static int unzigzag(int value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private static long unzigzag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  static class Writer {
+
+    byte[] buffer;
+    int length;
+
+    Writer(int capacity) {
+      buffer = new byte[Math.max(16, capacity)];
+    }
+
+    void writeVarint(int value) {
+      writeVarLong(value & 0xFFFFFFFFL);
+    }
+
+    void writeVarLong(long value) {
+      ensure(10);
+      while ((value & ~0x7FL) != 0) {
+        buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buffer[length++] = (byte) value;
+    }
+
+    void writeFixed32(int value) {
+      ensure(4);
+      buffer[length++] = (byte) value;
+      buffer[length++] = (byte) (value >> 8);
+      buffer[length++] = (byte) (value >> 16);
+      buffer[length++] = (byte) (value >> 24);
+    }
+
+    private void ensure(int extra) {
+      if (length + extra > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+      }
+    }
+  }
+
+  static class Reader {
+
+    final byte[] buffer;
+    int position;
+
+    Reader(@Nullable byte[] buffer) {
+      this.buffer = buffer != null ? buffer : new byte[0];
+    }
+
+    int readVarint() {
+      return (int) readVarLong();
+    }
+
+    long readVarLong() {
+      long result = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        byte b = buffer[position++];
+        result |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) return result;
+      }
+      throw new IllegalStateException("Malformed varint.");
+    }
+
+    int readFixed32() {
+      return (buffer[position++] & 0xFF)  //
+          | (buffer[position++] & 0xFF) << 8  //
+          | (buffer[position++] & 0xFF) << 16  //
+          | (buffer[position++] & 0xFF) << 24;
+    }
+  }
+}
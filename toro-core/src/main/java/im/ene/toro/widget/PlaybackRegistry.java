@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2018 Nam Nguyen, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.toro.widget;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.util.ArrayMap;
+import android.support.v7.widget.RecyclerView;
+import im.ene.toro.CacheManager;
+import im.ene.toro.ToroPlayer;
+import java.util.Map;
+
+/**
+ * @author eneim (2018/03/03).
+ *
+ *         A content-keyed registry of the living playback sessions in a {@link Container}. A
+ *         session is whatever a {@link ToroPlayer} uses to play its media (a Playable for
+ *         ExoPlayer for example). It is registered under the {@link CacheManager} key of the item,
+ *         so that a new {@link ToroPlayer} of the same item (after the ViewHolder is recycled, or
+ *         re-created by {@link RecyclerView.Adapter#notifyItemChanged(int)}) can take the living
+ *         session over instead of preparing a new one.
+ *
+ *         The registry only tracks the ownership, the session's resources are always managed by
+ *         its current owner. Without a {@link CacheManager}, there is no key and nothing is kept.
+ *         Must be used from the main thread only.
+ */
+
+@SuppressWarnings("WeakerAccess") //
+public final class PlaybackRegistry {
+
+  @NonNull private final Container container;
+  private final Map<Object, Binding> bindings = new ArrayMap<>();
+
+  PlaybackRegistry(@NonNull Container container) {
+    this.container = container;
+  }
+
+  /**
+   * Get the key of the item a {@link ToroPlayer} is playing.
+   *
+   * @param player the {@link ToroPlayer} to get the key for.
+   * @return the {@link CacheManager} key of the {@link ToroPlayer}'s order, or {@code null} if
+   * there is no {@link CacheManager} or no valid order.
+   */
+  @Nullable public Object getKey(@NonNull ToroPlayer player) {
+    CacheManager cacheManager = container.getCacheManager();
+    int order = player.getPlayerOrder();
+    return cacheManager != null && order >= 0 ? cacheManager.getKeyForOrder(order) : null;
+  }
+
+  /**
+   * Find a living session for a key.
+   *
+   * @param key the key of the item.
+   * @param tag the identity of the media (its Uri for example). A session of other media is
+   * ignored.
+   * @param type expected type of the session.
+   * @return the living session or {@code null} if there is no usable one.
+   */
+  @Nullable public <T> T find(@NonNull Object key, @NonNull Object tag, @NonNull Class<T> type) {
+    Binding binding = bindings.get(key);
+    if (binding == null || !binding.tag.equals(tag) || !type.isInstance(binding.session)) {
+      return null;
+    }
+    return type.cast(binding.session);
+  }
+
+  /**
+   * Bind a session to a {@link ToroPlayer}. If the session is bound to another {@link
+   * ToroPlayer}, it is taken over.
+   */
+  public void bind(@NonNull ToroPlayer owner, @NonNull Object key, @NonNull Object tag,
+      @NonNull Object session) {
+    bindings.put(key, new Binding(owner, tag, session));
+  }
+
+  /**
+   * @return {@code false} if the session is taken over by another {@link ToroPlayer}, {@code true}
+   * otherwise.
+   */
+  public boolean owns(@NonNull ToroPlayer player, @NonNull Object session) {
+    for (Binding binding : bindings.values()) {
+      if (binding.session == session) return binding.owner == player;
+    }
+    return true;
+  }
+
+  /**
+   * Unbind a session from its owner.
+   *
+   * @return {@code true} if the {@link ToroPlayer} was still the owner of the session and so must
+   * take care of its resources, {@code false} if it was taken over by another {@link ToroPlayer}.
+   */
+  public boolean unbind(@NonNull ToroPlayer player, @NonNull Object session) {
+    for (Map.Entry<Object, Binding> entry : bindings.entrySet()) {
+      Binding binding = entry.getValue();
+      if (binding.session != session) continue;
+      if (binding.owner != player) return false;
+      bindings.remove(entry.getKey());
+      return true;
+    }
+    return true;
+  }
+
+  void clear() {
+    bindings.clear();
+  }
+
+  static class Binding {
+
+    @NonNull final ToroPlayer owner;
+    @NonNull final Object tag;
+    @NonNull final Object session;
+
+    Binding(@NonNull ToroPlayer owner, @NonNull Object tag, @NonNull Object session) {
+      this.owner = owner;
+      this.tag = tag;
+      this.session = session;
+    }
+  }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2018 Nam Nguyen, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.toro.widget;
+
+import im.ene.toro.media.PlaybackInfo;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author eneim (2018/03/14).
+ *
+ *         Checks that {@link OrderedInfoCache} keeps every entry at the order its item has after
+ *         an Adapter change, whichever side of the change it decides to remap.
+ */
+public class OrderedInfoCacheTest {
+
+  private OrderedInfoCache cache;
+  private PlaybackInfo info10, info20, info30;
+
+  @Before public void setUp() {
+    cache = new OrderedInfoCache();
+    info10 = new PlaybackInfo(0, 10);
+    info20 = new PlaybackInfo(0, 20);
+    info30 = new PlaybackInfo(0, 30);
+    cache.put(10, info10);
+    cache.put(20, info20);
+    cache.put(30, info30);
+  }
+
+  @Test public void insert_afterLastKey_keepsOrders() {
+    cache.onItemRangeInserted(31, 5);
+    assertEquals(Arrays.asList(10, 20, 30), cache.getOrders());
+  }
+
+  @Test public void insert_beforeFirstKey_shiftsAll() {
+    cache.onItemRangeInserted(0, 3);
+    assertEquals(Arrays.asList(13, 23, 33), cache.getOrders());
+    assertSame(info10, cache.get(13));
+    assertSame(info30, cache.get(33));
+    assertNull(cache.get(10));
+  }
+
+  @Test public void insert_atKey_shiftsThatKey() {
+    cache.onItemRangeInserted(20, 2);
+    assertEquals(Arrays.asList(10, 22, 32), cache.getOrders());
+    assertSame(info20, cache.get(22));
+  }
+
+  @Test public void insert_insideRange_nearHead() {
+    cache.onItemRangeInserted(11, 4); // fewer entries before: the offset moves.
+    assertEquals(Arrays.asList(10, 24, 34), cache.getOrders());
+    assertSame(info10, cache.get(10));
+    assertSame(info20, cache.get(24));
+  }
+
+  @Test public void insert_insideRange_nearTail() {
+    cache.onItemRangeInserted(29, 4); // fewer entries after: only the tail moves.
+    assertEquals(Arrays.asList(10, 20, 34), cache.getOrders());
+    assertSame(info30, cache.get(34));
+  }
+
+  @Test public void remove_cachedKey_dropsItAndShiftsTail() {
+    cache.onItemRangeRemoved(20, 1);
+    assertEquals(Arrays.asList(10, 29), cache.getOrders());
+    assertSame(info10, cache.get(10));
+    assertSame(info30, cache.get(29));
+  }
+
+  @Test public void remove_rangeOfCachedKeys() {
+    cache.onItemRangeRemoved(5, 20);
+    assertEquals(Arrays.asList(10), cache.getOrders());
+    assertSame(info30, cache.get(10));
+  }
+
+  @Test public void remove_allKeys_leavesEmpty() {
+    cache.onItemRangeRemoved(0, 50);
+    assertTrue(cache.isEmpty());
+  }
+
+  @Test public void remove_beforeFirstKey_shiftsAll() {
+    cache.onItemRangeRemoved(0, 5);
+    assertEquals(Arrays.asList(5, 15, 25), cache.getOrders());
+    assertSame(info20, cache.get(15));
+  }
+
+  @Test public void remove_afterLastKey_keepsOrders() {
+    cache.onItemRangeRemoved(31, 10);
+    assertEquals(Arrays.asList(10, 20, 30), cache.getOrders());
+  }
+
+  @Test public void move_forward() {
+    cache.onItemRangeMoved(10, 25, 1);
+    // 10 -> 25, items in (10, 25] move up by one.
+    assertEquals(Arrays.asList(19, 25, 30), cache.getOrders());
+    assertSame(info10, cache.get(25));
+    assertSame(info20, cache.get(19));
+    assertSame(info30, cache.get(30));
+  }
+
+  @Test public void move_backward() {
+    cache.onItemRangeMoved(30, 15, 1);
+    // 30 -> 15, items in [15, 30) move down by one.
+    assertEquals(Arrays.asList(10, 15, 21), cache.getOrders());
+    assertSame(info30, cache.get(15));
+    assertSame(info20, cache.get(21));
+  }
+
+  @Test public void move_uncachedItem_overCachedKeys() {
+    cache.onItemRangeMoved(5, 35, 1);
+    assertEquals(Arrays.asList(9, 19, 29), cache.getOrders());
+  }
+
+  @Test public void move_samePosition_keepsOrders() {
+    cache.onItemRangeMoved(20, 20, 1);
+    assertEquals(Arrays.asList(10, 20, 30), cache.getOrders());
+  }
+
+  @Test public void clear_resetsOffset() {
+    cache.onItemRangeInserted(0, 7);
+    cache.clear();
+    assertTrue(cache.isEmpty());
+    cache.put(3, info10);
+    assertEquals(Arrays.asList(3), cache.getOrders());
+  }
+
+  // Compare against a plain map whose keys are all remapped one by one.
+  @Test public void randomChanges_matchNaiveRemapping() {
+    Random random = new Random(42);
+    TreeMap<Integer, PlaybackInfo> expected = new TreeMap<>();
+    cache.clear();
+    for (int i = 0; i < 20; i++) {
+      int order = random.nextInt(100);
+      PlaybackInfo info = new PlaybackInfo(0, order);
+      cache.put(order, info);
+      expected.put(order, info);
+    }
+
+    for (int round = 0; round < 2000; round++) {
+      int start = random.nextInt(120);
+      int count = 1 + random.nextInt(4);
+      switch (random.nextInt(3)) {
+        case 0:
+          cache.onItemRangeInserted(start, count);
+          expected = inserted(expected, start, count);
+          break;
+        case 1:
+          cache.onItemRangeRemoved(start, count);
+          expected = removed(expected, start, count);
+          break;
+        default:
+          int to = random.nextInt(120);
+          cache.onItemRangeMoved(start, to, 1);
+          expected = moved(expected, start, to);
+          break;
+      }
+      if (expected.size() < 5) {
+        int order = random.nextInt(100);
+        PlaybackInfo info = new PlaybackInfo(0, order);
+        cache.put(order, info);
+        expected.put(order, info);
+      }
+
+      assertEquals("Round " + round, expected.keySet().toString(), cache.getOrders().toString());
+      for (Map.Entry<Integer, PlaybackInfo> entry : expected.entrySet()) {
+        assertSame(entry.getValue(), cache.get(entry.getKey()));
+      }
+    }
+  }
+
+  private static TreeMap<Integer, PlaybackInfo> inserted(Map<Integer, PlaybackInfo> source,
+      int start, int count) {
+    TreeMap<Integer, PlaybackInfo> result = new TreeMap<>();
+    for (Map.Entry<Integer, PlaybackInfo> entry : source.entrySet()) {
+      int key = entry.getKey();
+      result.put(key >= start ? key + count : key, entry.getValue());
+    }
+    return result;
+  }
+
+  private static TreeMap<Integer, PlaybackInfo> removed(Map<Integer, PlaybackInfo> source,
+      int start, int count) {
+    TreeMap<Integer, PlaybackInfo> result = new TreeMap<>();
+    for (Map.Entry<Integer, PlaybackInfo> entry : source.entrySet()) {
+      int key = entry.getKey();
+      if (key < start) {
+        result.put(key, entry.getValue());
+      } else if (key >= start + count) {
+        result.put(key - count, entry.getValue());
+      }
+    }
+    return result;
+  }
+
+  private static TreeMap<Integer, PlaybackInfo> moved(Map<Integer, PlaybackInfo> source, int from,
+      int to) {
+    TreeMap<Integer, PlaybackInfo> result = new TreeMap<>();
+    for (Map.Entry<Integer, PlaybackInfo> entry : source.entrySet()) {
+      int key = entry.getKey();
+      if (key == from) {
+        key = to;
+      } else if (from < to && key > from && key <= to) {
+        key--;
+      } else if (from > to && key >= to && key < from) {
+        key++;
+      }
+      result.put(key, entry.getValue());
+    }
+    return result;
+  }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2018 Nam Nguyen, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.toro.widget;
+
+import android.os.Parcel;
+import android.util.SparseArray;
+import im.ene.toro.media.PlaybackInfo;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static im.ene.toro.media.PlaybackInfo.INDEX_UNSET;
+import static im.ene.toro.media.PlaybackInfo.TIME_UNSET;
+import static im.ene.toro.widget.Container.MAX_SAVED_STATES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author eneim (2018/03/14).
+ *
+ *         Round-trips of {@link PlaybackInfoCodec} through a real {@link Parcel}, and the trimming
+ *         of the saved states by {@link Container#trimStates(SparseArray, int)}.
+ */
+@RunWith(RobolectricTestRunner.class) @Config(manifest = Config.NONE, sdk = 26)  //
+public class PlaybackInfoCodecTest {
+
+  private static final int TIMING_WARM_UP = 50;
+  private static final int TIMING_ITERATIONS = 200;
+
+  private Parcel parcel;
+
+  @Before public void setUp() {
+    parcel = Parcel.obtain();
+  }
+
+  @After public void tearDown() {
+    parcel.recycle();
+  }
+
+  @Test public void roundTrip_keepsAllFields() {
+    SparseArray<PlaybackInfo> states = new SparseArray<>();
+    PlaybackInfo full = new PlaybackInfo(2, 123456789L);
+    full.setVideoBitrate(2_500_000);
+    full.setSpeed(1.5f);
+    full.setVolume(0f);
+    full.setFastResume(true);
+    states.put(3, full);
+    states.put(4, new PlaybackInfo(0, 0));
+    states.put(1000, new PlaybackInfo(0, Long.MAX_VALUE));
+    states.put(Integer.MAX_VALUE, new PlaybackInfo(Integer.MAX_VALUE, 1));
+
+    assertSameStates(states, writeAndRead(states));
+  }
+
+  @Test public void roundTrip_keepsUnsetValues() {
+    SparseArray<PlaybackInfo> states = new SparseArray<>();
+    states.put(0, new PlaybackInfo());  // everything unset.
+    PlaybackInfo noPosition = new PlaybackInfo(INDEX_UNSET, TIME_UNSET);
+    noPosition.setVolume(1f);
+    states.put(1, noPosition);
+    PlaybackInfo live = new PlaybackInfo(0, TIME_UNSET); // not seekable
+    live.setVideoBitrate(800_000);
+    states.put(2, live);
+
+    SparseArray<PlaybackInfo> result = writeAndRead(states);
+    assertSameStates(states, result);
+    assertEquals(PlaybackInfo.BITRATE_UNSET, result.get(0).getVideoBitrate());
+    assertEquals(PlaybackInfo.SPEED_UNSET, result.get(0).getSpeed(), 0f);
+    assertEquals(PlaybackInfo.VOLUME_UNSET, result.get(0).getVolume(), 0f);
+  }
+
+  @Test public void roundTrip_keepsNegativeValues() {
+    SparseArray<PlaybackInfo> states = new SparseArray<>();
+    states.put(Integer.MIN_VALUE, new PlaybackInfo(-2, -1));
+    states.put(-5, new PlaybackInfo(Integer.MIN_VALUE, Long.MIN_VALUE));
+    states.put(-1, new PlaybackInfo(INDEX_UNSET, -3000));
+    states.put(7, new PlaybackInfo(1, 10));
+
+    assertSameStates(states, writeAndRead(states));
+  }
+
+  @Test public void roundTrip_empty() {
+    assertEquals(0, writeAndRead(new SparseArray<PlaybackInfo>()).size());
+  }
+
+  @Test public void roundTrip_null() {
+    assertEquals(0, writeAndRead(null).size());
+  }
+
+  @Test public void roundTrip_skipsNullValues() {
+    SparseArray<PlaybackInfo> states = new SparseArray<>();
+    states.put(1, new PlaybackInfo(0, 1));
+    states.put(2, null);
+    states.put(3, new PlaybackInfo(0, 3));
+
+    SparseArray<PlaybackInfo> result = writeAndRead(states);
+    assertEquals(2, result.size());
+    assertEquals(new PlaybackInfo(0, 3), result.get(3));
+  }
+
+  @Test(expected = IllegalStateException.class) public void read_unknownVersion_throws() {
+    PlaybackInfoCodec.write(parcel, new SparseArray<PlaybackInfo>(), 0);
+    parcel.setDataPosition(0);
+    parcel.writeInt(Integer.MAX_VALUE); // overwrite the version.
+    parcel.setDataPosition(0);
+    PlaybackInfoCodec.read(parcel, null);
+  }
+
+  @Test public void write_isSmallerThanSparseArrayParcel() {
+    SparseArray<PlaybackInfo> states = new SparseArray<>();
+    for (int i = 0; i < MAX_SAVED_STATES; i++) {
+      PlaybackInfo info = new PlaybackInfo(0, i * 1000L);
+      if (i % 3 == 0) info.setVolume(0f);
+      states.put(i * 2, info);
+    }
+
+    PlaybackInfoCodec.write(parcel, states, 0);
+    int packed = parcel.dataSize();
+    Parcel plain = Parcel.obtain();
+    try {
+      //noinspection unchecked
+      plain.writeSparseArray((SparseArray) states);
+      int unpacked = plain.dataSize();
+      assertTrue("Packed: " + packed + ", plain: " + unpacked, packed * 3 < unpacked);
+    } finally {
+      plain.recycle();
+    }
+  }
+
+  // Encode and decode times against writeSparseArray, reported only: timings of the Robolectric
+  // Parcel on a shared build machine are too noisy to assert on, and only tell the ratio. Both
+  // sides are checked to read back the same states, so the numbers compare like with like.
+  @Test public void timing_comparedToSparseArrayParcel() {
+    SparseArray<PlaybackInfo> states = new SparseArray<>();
+    for (int i = 0; i < MAX_SAVED_STATES; i++) {
+      PlaybackInfo info = new PlaybackInfo(i % 4, i * 1000L);
+      if (i % 3 == 0) info.setVolume(0f);
+      if (i % 5 == 0) info.setVideoBitrate(1_000_000 + i);
+      states.put(i * 2, info);
+    }
+
+    long[] packed = new long[2];
+    long[] plain = new long[2];
+    for (int i = 0; i < TIMING_WARM_UP; i++) {
+      timePacked(states, null);
+      timePlain(states, null);
+    }
+    for (int i = 0; i < TIMING_ITERATIONS; i++) {
+      timePacked(states, packed);
+      timePlain(states, plain);
+    }
+
+    System.out.println(String.format(Locale.US,
+        "PlaybackInfoCodec, %d states, %d runs (us per run): encode %.1f vs %.1f"
+            + " writeSparseArray, decode %.1f vs %.1f readSparseArray", states.size(),
+        TIMING_ITERATIONS, micros(packed[0]), micros(plain[0]), micros(packed[1]),
+        micros(plain[1])));
+  }
+
+  @Test public void trimStates_keepsClosestToAnchor() {
+    SparseArray<PlaybackInfo> states = new SparseArray<>();
+    int count = MAX_SAVED_STATES * 2;
+    for (int i = 0; i < count; i++) {
+      states.put(i, new PlaybackInfo(0, i));
+    }
+    int anchor = 400;
+
+    Container.trimStates(states, anchor);
+    assertEquals(MAX_SAVED_STATES, states.size());
+    Set<Integer> kept = new HashSet<>();
+    int maxKeptDistance = 0;
+    for (int i = 0; i < states.size(); i++) {
+      int order = states.keyAt(i);
+      kept.add(order);
+      assertEquals(order, states.valueAt(i).getResumePosition());
+      maxKeptDistance = Math.max(maxKeptDistance, Math.abs(order - anchor));
+    }
+    assertTrue(kept.contains(anchor));
+    for (int order = 0; order < count; order++) {
+      if (!kept.contains(order)) {
+        assertTrue("Dropped " + order, Math.abs(order - anchor) >= maxKeptDistance);
+      }
+    }
+  }
+
+  @Test public void trimStates_anchorAtEdge() {
+    SparseArray<PlaybackInfo> states = new SparseArray<>();
+    for (int i = 0; i < MAX_SAVED_STATES + 10; i++) {
+      states.put(i, new PlaybackInfo(0, i));
+    }
+
+    Container.trimStates(states, 0);
+    assertEquals(MAX_SAVED_STATES, states.size());
+    assertEquals(0, states.keyAt(0));
+    assertEquals(MAX_SAVED_STATES - 1, states.keyAt(states.size() - 1));
+  }
+
+  // Adds the encode then decode times of one run to the given ones, if any.
+  private static void timePacked(SparseArray<PlaybackInfo> states, long[] times) {
+    Parcel parcel = Parcel.obtain();
+    try {
+      long start = System.nanoTime();
+      PlaybackInfoCodec.write(parcel, states, 0);
+      long written = System.nanoTime();
+      parcel.setDataPosition(0);
+      SparseArray<PlaybackInfo> result = PlaybackInfoCodec.read(parcel, null);
+      long read = System.nanoTime();
+      assertEquals(states.size(), result.size());
+      if (times != null) {
+        times[0] += written - start;
+        times[1] += read - written;
+      }
+    } finally {
+      parcel.recycle();
+    }
+  }
+
+  private static void timePlain(SparseArray<PlaybackInfo> states, long[] times) {
+    Parcel parcel = Parcel.obtain();
+    try {
+      long start = System.nanoTime();
+      //noinspection unchecked
+      parcel.writeSparseArray((SparseArray) states);
+      long written = System.nanoTime();
+      parcel.setDataPosition(0);
+      SparseArray result = parcel.readSparseArray(PlaybackInfo.class.getClassLoader());
+      long read = System.nanoTime();
+      assertEquals(states.size(), result.size());
+      if (times != null) {
+        times[0] += written - start;
+        times[1] += read - written;
+      }
+    } finally {
+      parcel.recycle();
+    }
+  }
+
+  private static double micros(long totalNanos) {
+    return totalNanos / 1000.0 / TIMING_ITERATIONS;
+  }
+
+  private SparseArray<PlaybackInfo> writeAndRead(SparseArray<PlaybackInfo> states) {
+    PlaybackInfoCodec.write(parcel, states, 0);
+    parcel.setDataPosition(0);
+    SparseArray<PlaybackInfo> result = PlaybackInfoCodec.read(parcel, null);
+    assertEquals(parcel.dataSize(), parcel.dataPosition()); // everything is read back.
+    return result;
+  }
+
+  private static void assertSameStates(SparseArray<PlaybackInfo> expected,
+      SparseArray<PlaybackInfo> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.keyAt(i), actual.keyAt(i));
+      assertEquals(expected.valueAt(i), actual.valueAt(i));
+    }
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2018 Nam Nguyen, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.toro.exoplayer;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.util.LruCache;
+
+import static java.lang.Runtime.getRuntime;
+
+/**
+ * @author eneim (2018/03/15).
+ *
+ *         A memory-bounded LRU cache of whole media clips, shared by all the looping
+ *         MediaSources (see {@link LoopingMediaSourceBuilder}). A clip is recorded on its first
+ *         pass, later loops are then read from memory instead of the network or the disk. The
+ *         cache is sized in bytes and dropped when the system is low on memory. Thread-safe.
+ */
+
+final class ClipCache {
+
+  static final int DEFAULT_MAX_SIZE =
+      (int) Math.min(16 * 1024 * 1024, getRuntime().maxMemory() / 8);
+
+  private final LruCache<String, byte[]> cache;
+  private volatile boolean enabled = true;
+
+  ClipCache(int maxSize) {
+    this.cache = new LruCache<String, byte[]>(Math.max(1, maxSize)) {
+      @Override protected int sizeOf(String key, byte[] value) {
+        return value.length;
+      }
+    };
+  }
+
+  @Nullable byte[] get(@NonNull String key) {
+    return cache.get(key);
+  }
+
+  // A clip larger than the whole cache would only evict everything else.
+  void put(@NonNull String key, @NonNull byte[] clip) {
+    if (enabled && clip.length <= cache.maxSize()) cache.put(key, clip);
+  }
+
+  // A non-positive size disables the cache.
+  void resize(int maxSize) {
+    this.enabled = maxSize > 0;
+    if (enabled) {
+      cache.resize(maxSize);
+    } else {
+      cache.evictAll();
+    }
+  }
+
+  void evictAll() {
+    cache.evictAll();
+  }
+}
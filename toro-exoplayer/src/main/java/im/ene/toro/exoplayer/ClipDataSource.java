@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2018 Nam Nguyen, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.toro.exoplayer;
+
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * @author eneim (2018/03/15).
+ *
+ *         A {@link DataSource} that serves a whole clip from the {@link ClipCache} if it is there.
+ *         Otherwise, it reads from the upstream and records what it reads: a clip of at most
+ *         {@link #maxClipBytes}, read in one pass from its start to its end, is put to the cache
+ *         so the next loop doesn't do any I/O.
+ */
+
+final class ClipDataSource implements DataSource {
+
+  private static final int DEFAULT_RECORD_SIZE = 64 * 1024;
+
+  static final class Factory implements DataSource.Factory {
+
+    @NonNull private final DataSource.Factory upstreamFactory;
+    @NonNull private final ClipCache cache;
+    private final int maxClipBytes;
+
+    Factory(@NonNull DataSource.Factory upstreamFactory, @NonNull ClipCache cache,
+        int maxClipBytes) {
+      this.upstreamFactory = upstreamFactory;
+      this.cache = cache;
+      this.maxClipBytes = maxClipBytes;
+    }
+
+    @Override public DataSource createDataSource() {
+      return new ClipDataSource(upstreamFactory.createDataSource(), cache, maxClipBytes);
+    }
+  }
+
+  @NonNull private final DataSource upstream;
+  @NonNull private final ClipCache cache;
+  private final int maxClipBytes;
+
+  private Uri uri;
+  // Reading from memory.
+  private byte[] clip;
+  private int readPosition;
+  private int bytesRemaining;
+  // Recording the first pass, null if this read is not recorded.
+  private ByteArrayOutputStream record;
+  private String recordKey;
+  private long recordLength;  // length of the clip, C.LENGTH_UNSET if not known.
+
+  ClipDataSource(@NonNull DataSource upstream, @NonNull ClipCache cache, int maxClipBytes) {
+    this.upstream = upstream;
+    this.cache = cache;
+    this.maxClipBytes = maxClipBytes;
+  }
+
+  @Override public long open(DataSpec dataSpec) throws IOException {
+    this.uri = dataSpec.uri;
+    String key = dataSpec.key != null ? dataSpec.key : dataSpec.uri.toString();
+    byte[] cached = cache.get(key);
+    if (cached != null) {
+      if (dataSpec.position > cached.length) throw new EOFException();
+      clip = cached;
+      readPosition = (int) dataSpec.position;
+      bytesRemaining = cached.length - readPosition;
+      if (dataSpec.length != C.LENGTH_UNSET) {
+        bytesRemaining = (int) Math.min(bytesRemaining, dataSpec.length);
+      }
+      return bytesRemaining;
+    }
+
+    long length = upstream.open(dataSpec);
+    // Only a whole clip, read from its start, can be recorded.
+    if (dataSpec.position == 0 && dataSpec.length == C.LENGTH_UNSET
+        && (length == C.LENGTH_UNSET || length <= maxClipBytes)) {
+      record = new ByteArrayOutputStream(
+          length != C.LENGTH_UNSET ? (int) length : Math.min(maxClipBytes, DEFAULT_RECORD_SIZE));
+      recordKey = key;
+      recordLength = length;
+    }
+    return length;
+  }
+
+  @Override public int read(byte[] buffer, int offset, int readLength) throws IOException {
+    if (readLength == 0) return 0;
+    if (clip != null) {
+      if (bytesRemaining == 0) return C.RESULT_END_OF_INPUT;
+      int count = Math.min(readLength, bytesRemaining);
+      System.arraycopy(clip, readPosition, buffer, offset, count);
+      readPosition += count;
+      bytesRemaining -= count;
+      return count;
+    }
+
+    int count = upstream.read(buffer, offset, readLength);
+    if (record != null) {
+      if (count == C.RESULT_END_OF_INPUT) {
+        commit();
+      } else if (record.size() + count > maxClipBytes) {
+        record = null;  // too large to be kept in memory.
+      } else {
+        record.write(buffer, offset, count);
+        // Extractors may stop at the last byte of a known length, without reading the end.
+        if (record.size() == recordLength) commit();
+      }
+    }
+    return count;
+  }
+
+  // The clip is read to its end: keep it, unless it is shorter than announced.
+  private void commit() {
+    if (recordLength == C.LENGTH_UNSET || record.size() == recordLength) {
+      cache.put(recordKey, record.toByteArray());
+    }
+    record = null;
+  }
+
+  @Override public Uri getUri() {
+    return uri;
+  }
+
+  @Override public void close() throws IOException {
+    uri = null;
+    record = null;  // a read that stops early is not a whole clip.
+    if (clip != null) {
+      clip = null;
+      return;
+    }
+    upstream.close();
+  }
+}
@@ -18,13 +18,14 @@ package im.ene.toro.exoplayer;
 
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.DefaultLoadControl;
 import com.google.android.exoplayer2.DefaultRenderersFactory.ExtensionRendererMode;
 import com.google.android.exoplayer2.LoadControl;
 import com.google.android.exoplayer2.SimpleExoPlayer;
 import com.google.android.exoplayer2.drm.DrmSessionManager;
+import com.google.android.exoplayer2.drm.FrameworkMediaCrypto;
 import com.google.android.exoplayer2.source.MediaSource;
-import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
 import com.google.android.exoplayer2.upstream.cache.Cache;
 
 import static com.google.android.exoplayer2.DefaultRenderersFactory.EXTENSION_RENDERER_MODE_OFF;
@@ -42,21 +43,33 @@ public final class Config {
 
   // primitive flags
   @ExtensionRendererMode final int extensionMode;
+  final boolean sharedPlayer; // if true, one SimpleExoPlayer is handed from Playable to Playable.
+  final boolean videoOnlyWhenMuted; // if true, non-video renderers are disabled while muted.
+  final long previewWindowMs; // C.TIME_UNSET = the full media is played.
+  final boolean previewLooping; // if true, the preview window loops, otherwise it ends.
+  final boolean fastResume; // if true, restored Playables start at their saved rendition.
 
   // NonNull options
   @NonNull final BaseMeter meter;
-  @NonNull final LoadControl loadControl;
   @NonNull final MediaSourceBuilder mediaSourceBuilder;
 
   // Nullable options
+  @Nullable final LoadControl loadControl;  // null = a new DefaultLoadControl for each player.
   @SuppressWarnings("WeakerAccess") //
-  @Nullable final DrmSessionManager drmSessionManager;
+  @Nullable final DrmSessionManager<FrameworkMediaCrypto> drmSessionManager;
   @Nullable final Cache cache; // null by default
 
-  Config(int extensionMode, @NonNull BaseMeter meter, @NonNull LoadControl loadControl,
-      @NonNull MediaSourceBuilder mediaSourceBuilder, @Nullable DrmSessionManager drmSessionManager,
+  Config(int extensionMode, boolean sharedPlayer, boolean videoOnlyWhenMuted,
+      long previewWindowMs, boolean previewLooping, boolean fastResume, @NonNull BaseMeter meter,
+      @Nullable LoadControl loadControl, @NonNull MediaSourceBuilder mediaSourceBuilder,
+      @Nullable DrmSessionManager<FrameworkMediaCrypto> drmSessionManager,
       @Nullable Cache cache) {
     this.extensionMode = extensionMode;
+    this.sharedPlayer = sharedPlayer;
+    this.videoOnlyWhenMuted = videoOnlyWhenMuted;
+    this.previewWindowMs = previewWindowMs;
+    this.previewLooping = previewLooping;
+    this.fastResume = fastResume;
     this.meter = meter;
     this.loadControl = loadControl;
     this.mediaSourceBuilder = mediaSourceBuilder;
@@ -71,8 +84,16 @@ public final class Config {
     Config config = (Config) o;
 
     if (extensionMode != config.extensionMode) return false;
+    if (sharedPlayer != config.sharedPlayer) return false;
+    if (videoOnlyWhenMuted != config.videoOnlyWhenMuted) return false;
+    if (previewWindowMs != config.previewWindowMs) return false;
+    if (previewLooping != config.previewLooping) return false;
+    if (fastResume != config.fastResume) return false;
     if (!meter.equals(config.meter)) return false;
-    if (!loadControl.equals(config.loadControl)) return false;
+    if (loadControl != null ? !loadControl.equals(config.loadControl)
+        : config.loadControl != null) {
+      return false;
+    }
     if (!mediaSourceBuilder.equals(config.mediaSourceBuilder)) return false;
     if (drmSessionManager != null ? !drmSessionManager.equals(config.drmSessionManager)
         : config.drmSessionManager != null) {
@@ -81,12 +102,19 @@ public final class Config {
     return cache != null ? cache.equals(config.cache) : config.cache == null;
   }
 
-  // This method doesn't really help, because the default implementation of loadControl, cache and
-  // drmSessionManager don't guarantee the hashCode identity. We put it here for future.
+  // LoadControl, Cache and DrmSessionManager implementations have identity semantics. The default
+  // Config uses no instance of them but a shared meter, so Configs built with the same options are
+  // equal and map to the same ExoCreator (and so the same player Pool) in ToroExo. Configs using
+  // custom instances are only equal if they share those instances.
   @Override public int hashCode() {
     int result = extensionMode;
+    result = 31 * result + (sharedPlayer ? 1 : 0);
+    result = 31 * result + (videoOnlyWhenMuted ? 1 : 0);
+    result = 31 * result + (int) (previewWindowMs ^ (previewWindowMs >>> 32));
+    result = 31 * result + (previewLooping ? 1 : 0);
+    result = 31 * result + (fastResume ? 1 : 0);
     result = 31 * result + meter.hashCode();
-    result = 31 * result + loadControl.hashCode();
+    result = 31 * result + (loadControl != null ? loadControl.hashCode() : 0);
     result = 31 * result + mediaSourceBuilder.hashCode();
     result = 31 * result + (drmSessionManager != null ? drmSessionManager.hashCode() : 0);
     result = 31 * result + (cache != null ? cache.hashCode() : 0);
@@ -94,24 +122,40 @@ public final class Config {
   }
 
   @SuppressWarnings("unused") public Builder newBuilder() {
-    return new Builder().setCache(this.cache)
+    Builder builder = new Builder().setCache(this.cache)
         .setDrmSessionManager(this.drmSessionManager)
         .setExtensionMode(this.extensionMode)
-        .setLoadControl(this.loadControl)
+        .setSharedPlayer(this.sharedPlayer)
+        .setVideoOnlyWhenMuted(this.videoOnlyWhenMuted)
+        .setPreviewWindow(this.previewWindowMs, this.previewLooping)
+        .setFastResume(this.fastResume)
         .setMediaSourceBuilder(this.mediaSourceBuilder)
         .setMeter(this.meter);
+    builder.loadControl = this.loadControl;
+    return builder;
   }
 
   /// Builder
   @SuppressWarnings({ "unused", "WeakerAccess" }) //
   public static class Builder {
-    @ExtensionRendererMode private int extensionMode = EXTENSION_RENDERER_MODE_OFF;
-    private final DefaultBandwidthMeter bandwidthMeter = new DefaultBandwidthMeter();
+    // Shared by every Config using the default meter: one bandwidth estimate for the whole App,
+    // persisted across launches once ToroExo attaches it to the App.
+    static final PersistentBandwidthMeter DEFAULT_BANDWIDTH_METER =
+        new PersistentBandwidthMeter();
     @SuppressWarnings("unchecked")  //
-    private BaseMeter meter = new BaseMeter(bandwidthMeter, bandwidthMeter);
-    private LoadControl loadControl = new DefaultLoadControl();
+    private static final BaseMeter DEFAULT_METER =
+        new BaseMeter(DEFAULT_BANDWIDTH_METER, DEFAULT_BANDWIDTH_METER);
+
+    @ExtensionRendererMode private int extensionMode = EXTENSION_RENDERER_MODE_OFF;
+    private boolean sharedPlayer = false;
+    private boolean videoOnlyWhenMuted = false;
+    private long previewWindowMs = C.TIME_UNSET;
+    private boolean previewLooping = false;
+    private boolean fastResume = false;
+    private BaseMeter meter = DEFAULT_METER;
+    private LoadControl loadControl = null; // DefaultLoadControl, one per player.
     private MediaSourceBuilder mediaSourceBuilder = MediaSourceBuilder.DEFAULT;
-    private DrmSessionManager drmSessionManager = null;
+    private DrmSessionManager<FrameworkMediaCrypto> drmSessionManager = null;
     private Cache cache = null;
 
     public Builder setExtensionMode(@ExtensionRendererMode int extensionMode) {
@@ -119,11 +163,77 @@ public final class Config {
       return this;
     }
 
+    /**
+     * Use a single {@link SimpleExoPlayer} for all {@link Playable}s created using this Config.
+     * The player is handed to the {@link Playable} that starts playing, the previous one is paused
+     * and gives it up. Suitable for lists where only one item plays at a time (eg: {@link
+     * im.ene.toro.PlayerSelector#DEFAULT}), as it saves the memory and preparation time of one
+     * player per item.
+     */
+    public Builder setSharedPlayer(boolean sharedPlayer) {
+      this.sharedPlayer = sharedPlayer;
+      return this;
+    }
+
+    /**
+     * Disable the audio, text and metadata renderers of a {@link Playable} whose volume is 0, so
+     * that a muted autoplay item only decodes its video. They are enabled again as soon as the
+     * volume is set to a positive value.
+     */
+    public Builder setVideoOnlyWhenMuted(boolean videoOnlyWhenMuted) {
+      this.videoOnlyWhenMuted = videoOnlyWhenMuted;
+      return this;
+    }
+
+    /**
+     * Preview mode, for feeds where most autoplay items are only watched for a few seconds: a
+     * {@link Playable} only plays and buffers the given window of its media, starting at its
+     * resume position, then loops over it or ends. The full media is only requested once
+     * {@link Playable#exitPreview()} is called, eg: when the user engages with the item. Can be
+     * changed for each {@link Playable} by {@link Playable#setPreviewWindow(long, boolean)}.
+     *
+     * @param windowMs length of the window in milliseconds, non-positive value to play the full
+     * media (default).
+     * @param looping if true, the window loops until the preview mode ends.
+     */
+    public Builder setPreviewWindow(long windowMs, boolean looping) {
+      this.previewWindowMs = windowMs > 0 ? windowMs : C.TIME_UNSET;
+      this.previewLooping = looping;
+      return this;
+    }
+
+    /**
+     * Fast resume, for lists where items are often scrolled away and back, or restored after a
+     * configuration change: a {@link Playable} given a saved {@link im.ene.toro.media.PlaybackInfo}
+     * starts at the video rendition it was playing, instead of ramping up from the bandwidth
+     * estimate again. This applies to every Playable of this Config. A single item can opt in by
+     * {@link im.ene.toro.media.PlaybackInfo#setFastResume(boolean)} instead.
+     *
+     * ExoPlayer 2.6.1 has no {@code SeekParameters}, so the seek to the resume position is still
+     * exact: the player decodes from the previous sync point up to the saved frame, and
+     * only the rendition is kept. Seeking to the closest sync point needs ExoPlayer 2.7.0+.
+     */
+    public Builder setFastResume(boolean fastResume) {
+      this.fastResume = fastResume;
+      return this;
+    }
+
+    /**
+     * Set the meter whose estimate selects the initial and adaptive bitrates. By default, a meter
+     * shared by the whole App is used, and its estimates are persisted across launches. They are
+     * kept per network type only if the App declares the
+     * {@code android.permission.ACCESS_NETWORK_STATE} permission, which this library doesn't
+     * request. Without it, all estimates go to a single, network agnostic window.
+     */
     public Builder setMeter(@NonNull BaseMeter meter) {
       this.meter = checkNotNull(meter, "Need non-null BaseMeter");
       return this;
     }
 
+    /**
+     * Set a {@link LoadControl} shared by all players created using this Config. By default, each
+     * player has its own {@link DefaultLoadControl}.
+     */
     public Builder setLoadControl(@NonNull LoadControl loadControl) {
       this.loadControl = checkNotNull(loadControl, "Need non-null LoadControl");
       return this;
@@ -135,7 +245,14 @@ public final class Config {
       return this;
     }
 
-    public Builder setDrmSessionManager(@Nullable DrmSessionManager drmSessionManager) {
+    /**
+     * Set a {@link DrmSessionManager} for protected content. It is shared
+     * by all players created using this Config, so they stay pooled, and Playables of the same
+     * content keys share one session. Released sessions are kept open for a while so the next
+     * Playable of the same keys starts without a license request.
+     */
+    public Builder setDrmSessionManager(
+        @Nullable DrmSessionManager<FrameworkMediaCrypto> drmSessionManager) {
       this.drmSessionManager = drmSessionManager;
       return this;
     }
@@ -146,8 +263,9 @@ public final class Config {
     }
 
     public Config build() {
-      return new Config(extensionMode, meter, loadControl,  //
-          mediaSourceBuilder, drmSessionManager, cache);
+      return new Config(extensionMode, sharedPlayer, videoOnlyWhenMuted, previewWindowMs,
+          previewLooping, fastResume, meter, loadControl, mediaSourceBuilder, drmSessionManager,
+          cache);
     }
   }
 }
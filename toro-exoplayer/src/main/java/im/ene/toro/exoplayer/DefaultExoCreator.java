@@ -19,45 +19,64 @@ package im.ene.toro.exoplayer;
 import android.content.Context;
 import android.net.Uri;
 import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.view.View;
 import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultLoadControl;
 import com.google.android.exoplayer2.DefaultRenderersFactory;
 import com.google.android.exoplayer2.ExoPlaybackException;
 import com.google.android.exoplayer2.ExoPlayerFactory;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.LoadControl;
 import com.google.android.exoplayer2.PlaybackParameters;
+import com.google.android.exoplayer2.Player;
 import com.google.android.exoplayer2.RenderersFactory;
 import com.google.android.exoplayer2.SimpleExoPlayer;
 import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.drm.DrmInitData;
+import com.google.android.exoplayer2.drm.FrameworkMediaCrypto;
 import com.google.android.exoplayer2.mediacodec.MediaCodecRenderer.DecoderInitializationException;
 import com.google.android.exoplayer2.mediacodec.MediaCodecUtil.DecoderQueryException;
 import com.google.android.exoplayer2.metadata.Metadata;
 import com.google.android.exoplayer2.source.BehindLiveWindowException;
+import com.google.android.exoplayer2.source.DynamicConcatenatingMediaSource;
+import com.google.android.exoplayer2.source.LoopingMediaSource;
 import com.google.android.exoplayer2.source.MediaSource;
 import com.google.android.exoplayer2.source.MediaSourceEventListener;
 import com.google.android.exoplayer2.source.TrackGroupArray;
 import com.google.android.exoplayer2.text.Cue;
+import com.google.android.exoplayer2.trackselection.AdaptiveTrackSelection;
 import com.google.android.exoplayer2.trackselection.DefaultTrackSelector;
+import com.google.android.exoplayer2.trackselection.DefaultTrackSelector.Parameters;
 import com.google.android.exoplayer2.trackselection.MappingTrackSelector.MappedTrackInfo;
 import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
-import com.google.android.exoplayer2.trackselection.TrackSelector;
 import com.google.android.exoplayer2.ui.SimpleExoPlayerView;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DataSpec;
-import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory;
-import com.google.android.exoplayer2.upstream.cache.CacheDataSourceFactory;
+import com.google.android.exoplayer2.util.PriorityTaskManager;
 import im.ene.toro.media.PlaybackInfo;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.google.android.exoplayer2.trackselection.MappingTrackSelector.MappedTrackInfo.RENDERER_SUPPORT_UNSUPPORTED_TRACKS;
 import static im.ene.toro.ToroUtil.checkNotNull;
 import static im.ene.toro.exoplayer.ToroExo.toro;
+import static im.ene.toro.exoplayer.PrioritizedDataSource.PRIORITY_PREFETCH;
+import static im.ene.toro.exoplayer.PrioritizedDataSource.setPriority;
 import static im.ene.toro.exoplayer.ToroExo.with;
+import static im.ene.toro.media.PlaybackInfo.BITRATE_UNSET;
 import static im.ene.toro.media.PlaybackInfo.INDEX_UNSET;
+import static im.ene.toro.media.PlaybackInfo.SPEED_UNSET;
 import static im.ene.toro.media.PlaybackInfo.TIME_UNSET;
+import static im.ene.toro.media.PlaybackInfo.VOLUME_UNSET;
 
 /**
  * @author eneim (2018/02/04).
@@ -69,29 +88,50 @@ import static im.ene.toro.media.PlaybackInfo.TIME_UNSET;
 public class DefaultExoCreator implements ExoCreator, MediaSourceEventListener {
 
   private final Context context;  // per application
-  private final TrackSelector trackSelector;  // 'maybe' stateless
-  private final LoadControl loadControl;  // stateless
+  private final BandwidthMeter meter;  // shared
+  @Nullable private final LoadControl loadControl;  // null = new DefaultLoadControl per player
   private final MediaSourceBuilder mediaSourceBuilder;  // stateless
   private final RenderersFactory renderersFactory;  // stateless
+  // Config's DrmSessionManager, shared by all players of this creator. Null for clear content.
+  @Nullable private final SharedDrmSessionManager<FrameworkMediaCrypto> drmSessionManager;
   private final DataSource.Factory mediaDataSourceFactory;  // stateless
+  // Same cache, but no meter: poster reads must not count as playback bandwidth samples.
+  final DataSource.Factory posterDataSourceFactory;  // stateless
   private final DataSource.Factory manifestDataSourceFactory; // stateless
+  private final boolean sharedPlayer;
+  private final boolean videoOnlyWhenMuted;
+  private final long previewWindowMs;  // default preview mode of the Playables
+  private final boolean previewLooping;
+  private final boolean fastResume;  // the Config's opt-in, for all Playables of this creator
+
+  // Shared mode only: the only SimpleExoPlayer, and the Playable currently holding it.
+  private SimpleExoPlayer player;
+  private PlayableImpl playerOwner;
+  private final Map<SimpleExoPlayer, DefaultTrackSelector> trackSelectors =
+      Collections.synchronizedMap(new WeakHashMap<SimpleExoPlayer, DefaultTrackSelector>());
+  private final Map<SimpleExoPlayer, HintedMeter> hintedMeters =
+      Collections.synchronizedMap(new WeakHashMap<SimpleExoPlayer, HintedMeter>());
+  // MediaSource events are delivered to the main thread, so MediaSources can be built anywhere.
+  private final Handler eventHandler = new Handler(Looper.getMainLooper());
 
-  @SuppressWarnings("unchecked") DefaultExoCreator(Context context, Config config, String appName) {
+  public DefaultExoCreator(Context context, Config config) {
     this.context = context.getApplicationContext();
-    trackSelector = new DefaultTrackSelector(config.meter);
+    sharedPlayer = config.sharedPlayer;
+    videoOnlyWhenMuted = config.videoOnlyWhenMuted;
+    previewWindowMs = config.previewWindowMs;
+    previewLooping = config.previewLooping;
+    fastResume = config.fastResume;
+    meter = config.meter;
     loadControl = config.loadControl;
     mediaSourceBuilder = config.mediaSourceBuilder;
-    renderersFactory = new DefaultRenderersFactory(this.context,  //
-        null /* config.drmSessionManager */, config.extensionMode);
-    DataSource.Factory factory = new DefaultDataSourceFactory(this.context, appName, config.meter);
-    if (config.cache != null) factory = new CacheDataSourceFactory(config.cache, factory);
-    mediaDataSourceFactory = factory;
-    manifestDataSourceFactory = new DefaultDataSourceFactory(this.context, appName);
-  }
-
-  @SuppressWarnings("unchecked")  //
-  public DefaultExoCreator(Context context, Config config) {
-    this(context, config, with(context).appName);
+    drmSessionManager = config.drmSessionManager != null ?  //
+        new SharedDrmSessionManager<FrameworkMediaCrypto>(config.drmSessionManager) : null;
+    renderersFactory =
+        new DefaultRenderersFactory(this.context, drmSessionManager, config.extensionMode);
+    // Shared with other ExoCreators using the same meter and cache.
+    mediaDataSourceFactory = with(this.context).getDataSourceFactory(config.meter, config.cache);
+    manifestDataSourceFactory = with(this.context).getDataSourceFactory(null, null);
+    posterDataSourceFactory = with(this.context).getDataSourceFactory(null, config.cache);
   }
 
   public DefaultExoCreator(Context context) {
@@ -105,8 +145,13 @@ public class DefaultExoCreator implements ExoCreator, MediaSourceEventListener {
     DefaultExoCreator that = (DefaultExoCreator) o;
 
     if (!context.equals(that.context)) return false;
-    if (!trackSelector.equals(that.trackSelector)) return false;
-    if (!loadControl.equals(that.loadControl)) return false;
+    if (previewWindowMs != that.previewWindowMs) return false;
+    if (previewLooping != that.previewLooping) return false;
+    if (fastResume != that.fastResume) return false;
+    if (!meter.equals(that.meter)) return false;
+    if (loadControl != null ? !loadControl.equals(that.loadControl) : that.loadControl != null) {
+      return false;
+    }
     if (!mediaSourceBuilder.equals(that.mediaSourceBuilder)) return false;
     if (!renderersFactory.equals(that.renderersFactory)) return false;
     if (!mediaDataSourceFactory.equals(that.mediaDataSourceFactory)) return false;
@@ -115,8 +160,11 @@ public class DefaultExoCreator implements ExoCreator, MediaSourceEventListener {
 
   @Override public int hashCode() {
     int result = context.hashCode();
-    result = 31 * result + trackSelector.hashCode();
-    result = 31 * result + loadControl.hashCode();
+    result = 31 * result + (int) (previewWindowMs ^ (previewWindowMs >>> 32));
+    result = 31 * result + (previewLooping ? 1 : 0);
+    result = 31 * result + (fastResume ? 1 : 0);
+    result = 31 * result + meter.hashCode();
+    result = 31 * result + (loadControl != null ? loadControl.hashCode() : 0);
     result = 31 * result + mediaSourceBuilder.hashCode();
     result = 31 * result + renderersFactory.hashCode();
     result = 31 * result + mediaDataSourceFactory.hashCode();
@@ -124,21 +172,83 @@ public class DefaultExoCreator implements ExoCreator, MediaSourceEventListener {
     return result;
   }
 
-  TrackSelector getTrackSelector() {
-    return trackSelector;
+  // Each player has its own DefaultTrackSelector, so that its constraints follow its Playable.
+  @Nullable DefaultTrackSelector getTrackSelector(@NonNull SimpleExoPlayer player) {
+    return trackSelectors.get(player);
+  }
+
+  // Let the next track selection of a player start at the rendition of the given bitrate.
+  void setRenditionHint(@NonNull SimpleExoPlayer player, int bitrate) {
+    HintedMeter hintedMeter = hintedMeters.get(player);
+    if (hintedMeter != null) hintedMeter.hint = bitrate;
+  }
+
+  // Give a SimpleExoPlayer to a Playable. In shared mode, this is the only player, taken from its
+  // current owner if any.
+  SimpleExoPlayer requestPlayer(@NonNull PlayableImpl playable) {
+    if (!sharedPlayer) return toro.requestPlayer(this);
+    if (playerOwner != null && playerOwner != playable) playerOwner.onPlayerTaken();
+    if (player == null) player = toro.requestPlayer(this);
+    playerOwner = playable;
+    return player;
+  }
+
+  // In shared mode, the player is kept for the next Playable.
+  void releasePlayer(@NonNull PlayableImpl playable, @NonNull SimpleExoPlayer player) {
+    if (!sharedPlayer) {
+      toro.releasePlayer(this, player);
+    } else if (playerOwner == playable) {
+      playerOwner = null;
+    }
+  }
+
+  /**
+   * Open the DRM session of an upcoming item, so its keys are ready when it starts playing. The
+   * session is kept for a while, Playables of the same keys then start without a license request.
+   * No-op if the {@link Config} of this creator has no DrmSessionManager.
+   *
+   * @param drmInitData the DRM init data of the item, eg: from its manifest or the App's backend.
+   */
+  public void prefetchDrmSession(@NonNull DrmInitData drmInitData) {
+    if (drmSessionManager != null) drmSessionManager.prefetch(drmInitData);
+  }
+
+  // Give the shared player back to the Pool if no one is using it.
+  void cleanUp() {
+    if (player != null && playerOwner == null) {
+      toro.releasePlayer(this, player);
+      player = null;
+    }
+    if (drmSessionManager != null) drmSessionManager.releaseLingering();
   }
 
   @Override public SimpleExoPlayer createPlayer() {
-    return ExoPlayerFactory.newSimpleInstance(renderersFactory, trackSelector, loadControl);
+    HintedMeter hintedMeter = new HintedMeter(meter);
+    DefaultTrackSelector trackSelector =
+        new DefaultTrackSelector(new AdaptiveTrackSelection.Factory(hintedMeter));
+    SimpleExoPlayer player =
+        ExoPlayerFactory.newSimpleInstance(renderersFactory, trackSelector,
+            loadControl != null ? loadControl : new DefaultLoadControl());
+    trackSelectors.put(player, trackSelector);
+    hintedMeters.put(player, hintedMeter);
+    return player;
   }
 
   @Override public MediaSource createMediaSource(Uri uri) {
-    return mediaSourceBuilder.buildMediaSource(this.context, uri, new Handler(),
+    return mediaSourceBuilder.buildMediaSource(this.context, uri, eventHandler,
         manifestDataSourceFactory, mediaDataSourceFactory, this);
   }
 
+  // Loads of this MediaSource wait for their turn in ToroExo's PriorityTaskManager.
+  MediaSource createMediaSource(Uri uri, @NonNull AtomicInteger priority) {
+    DataSource.Factory factory = new PrioritizedDataSource.Factory(mediaDataSourceFactory,
+        with(this.context).priorityTaskManager, priority);
+    return mediaSourceBuilder.buildMediaSource(this.context, uri, eventHandler,
+        manifestDataSourceFactory, factory, this);
+  }
+
   @Override public Playable createPlayable(Uri uri) {
-    return new PlayableImpl(this, uri);
+    return new PlayableImpl(this, uri, sharedPlayer);
   }
 
   /// MediaSourceEventListener
@@ -190,30 +300,82 @@ public class DefaultExoCreator implements ExoCreator, MediaSourceEventListener {
    * I'm trying to reuse this thing. Not only to save resource, improve performance, but also to
    * have a way to keep the playback smooth across config change.
    */
-  private static class PlayableImpl implements Playable {
+  static class PlayableImpl implements Playable {
+
+    // Queue mode: number of items queued after the one being played.
+    static final int QUEUE_AHEAD = 1;
 
     private final PlaybackInfo playbackInfo = new PlaybackInfo(); // never expose to outside.
     private final EventListeners listeners = new EventListeners();  // original listener.
 
-    final Uri mediaUri; // immutable
-    final ExoCreator creator; // cached
+    private Uri mediaUri; // the item being played, changes when its queue moves to the next one.
+    final DefaultExoCreator creator; // cached
+    final boolean sharedPlayer; // if true, the player is only obtained on play()
 
     private SimpleExoPlayer player; // on-demand, cached
     private SimpleExoPlayerView playerView; // on-demand, not always required.
     private ListenerWrapper listenerWrapper;  // proxy to wrap original listener.
     private MediaSource mediaSource;  // on-demand
+    private float volume = 1f;  // applied to the player whenever this Playable obtains one.
+    private boolean volumeSet;  // set by the App, a restored PlaybackInfo must not override it.
+    // Priority of this Playable's loads, raised while it is playing.
+    private final AtomicInteger loadPriority = new AtomicInteger(PRIORITY_PREFETCH);
+    private boolean buffering;  // holds PRIORITY_PLAYBACK in the PriorityTaskManager.
+
+    // Queue mode: the next items are appended to the same MediaSource, see MediaQueue.
+    private MediaQueue queue;
+    private int queueOrder = INDEX_UNSET; // order of the item being played.
+    // Window of that item in the player's Timeline, always 0 if not queued.
+    private int queueWindow = 0;
+    private DynamicConcatenatingMediaSource queueSource;  // on-demand, prepared with the player.
+    // Uri of each window of queueSource. The played ones are removed, see #trimQueue(int).
+    private final ArrayList<Uri> queuedUris = new ArrayList<>();
+    // Windows removed from queueSource, but not yet from the player's Timeline.
+    private int trimming = 0;
+
+    // Preview mode: only a window of the media, from the resume position, is played and buffered.
+    private long previewWindowMs; // C.TIME_UNSET = the full media.
+    private boolean previewLooping;
+    private long previewStartMs = C.TIME_UNSET; // start of the prepared window, if any.
+    private PreviewMediaSource previewSource; // the prepared window, until it is known clippable.
+    private long mediaDurationMs = C.TIME_UNSET; // once known, a window never starts past it.
 
     // Adapt from ExoPlayer demo.
     boolean inErrorState = false;
     public TrackGroupArray lastSeenTrackGroupArray;
 
-    PlayableImpl(ExoCreator creator, Uri uri) {
+    // Follow the size of the PlayerView, eg: when it goes fullscreen.
+    private final View.OnLayoutChangeListener layoutChangeListener =
+        new View.OnLayoutChangeListener() {
+          @Override public void onLayoutChange(View v, int left, int top, int right, int bottom,
+              int oldLeft, int oldTop, int oldRight, int oldBottom) {
+            if (right - left != oldRight - oldLeft || bottom - top != oldBottom - oldTop) {
+              updateViewportSize();
+            }
+          }
+        };
+
+    PlayableImpl(DefaultExoCreator creator, Uri uri, boolean sharedPlayer) {
       this.creator = creator;
       this.mediaUri = uri;
+      this.sharedPlayer = sharedPlayer;
+      this.previewWindowMs = creator.previewWindowMs;
+      this.previewLooping = creator.previewLooping;
     }
 
     @Override public void prepare() {
-      if (player == null) player = toro.requestPlayer(creator);
+      // A Playable kept warm still has its player and source, so it must not seek again here.
+      boolean warm = player != null;
+      if (!warm && !sharedPlayer) obtainPlayer();
+      if (warm) return;
+
+      this.lastSeenTrackGroupArray = null;
+      this.inErrorState = false;
+    }
+
+    private void obtainPlayer() {
+      player = creator.requestPlayer(this);
+      player.setVolume(volume);
 
       if (listenerWrapper == null) {
         listenerWrapper = new ListenerWrapper(this, listeners);
@@ -223,20 +385,52 @@ public class DefaultExoCreator implements ExoCreator, MediaSourceEventListener {
       }
 
       if (playerView != null && playerView.getPlayer() != player) playerView.setPlayer(player);
-      boolean haveResumePosition = playbackInfo.getResumeWindow() != C.INDEX_UNSET;
-      if (haveResumePosition) {
-        player.seekTo(playbackInfo.getResumeWindow(), playbackInfo.getResumePosition());
-      }
+      updateViewportSize();
+      applyPlaybackInfo(true);
+    }
 
-      this.lastSeenTrackGroupArray = null;
-      this.inErrorState = false;
+    // Shared mode only: another Playable is taking the player, give it up as if it is paused.
+    void onPlayerTaken() {
+      setBuffering(false);
+      setPriority(loadPriority, PRIORITY_PREFETCH);
+      updatePlaybackInfo();
+      listeners.onPlayerStateChanged(false, player.getPlaybackState());
+      removeListeners();
+      if (playerView != null) playerView.setPlayer(null);
+      this.player = null;
+      clearSource();
     }
 
     @Override public void setPlayerView(@Nullable SimpleExoPlayerView playerView) {
-      if (this.player == null) throw new IllegalStateException("Player is null, prepare it first.");
+      if (this.player == null && !sharedPlayer) {
+        throw new IllegalStateException("Player is null, prepare it first.");
+      }
       if (this.playerView == playerView) return;
-      SimpleExoPlayerView.switchTargetView(this.player, this.playerView, playerView);
+      if (this.playerView != null) {
+        this.playerView.removeOnLayoutChangeListener(layoutChangeListener);
+      }
+      // In shared mode without a player, it will be set when this Playable obtains one.
+      if (this.player != null) {
+        SimpleExoPlayerView.switchTargetView(this.player, this.playerView, playerView);
+      }
       this.playerView = playerView;
+      if (this.playerView != null) this.playerView.addOnLayoutChangeListener(layoutChangeListener);
+      updateViewportSize();
+    }
+
+    // Don't let the player select a video track much larger than the PlayerView can show. The size
+    // is measured in pixels, so the screen density is already taken into account.
+    void updateViewportSize() {
+      if (player == null) return;
+      DefaultTrackSelector selector = creator.getTrackSelector(player);
+      if (selector == null) return;
+      int width = playerView != null ? playerView.getWidth() : 0;
+      int height = playerView != null ? playerView.getHeight() : 0;
+      Parameters parameters = selector.getParameters();
+      // Without a measured size, no constraint. Same as the default Parameters.
+      selector.setParameters(width > 0 && height > 0 ? //
+          parameters.withViewportSize(width, height, false) : //
+          parameters.withViewportSize(Integer.MAX_VALUE, Integer.MAX_VALUE, true));
     }
 
     @Override public SimpleExoPlayerView getPlayerView() {
@@ -244,16 +438,99 @@ public class DefaultExoCreator implements ExoCreator, MediaSourceEventListener {
     }
 
     @Override public void play() {
+      if (player == null && sharedPlayer) obtainPlayer();
       checkNotNull(player, "Playable#play(): Player is null!");
-      if (mediaSource == null) {  // Only actually prepare the source when play() is called.
-        mediaSource = creator.createMediaSource(mediaUri);
-        player.prepare(mediaSource, playbackInfo.getResumeWindow() == C.INDEX_UNSET, false);
-      }
+      setPriority(loadPriority, C.PRIORITY_PLAYBACK);
+      if (mediaSource == null) prepareSource(); // Only actually prepare it when play() is called.
       player.setPlayWhenReady(true);
+      updateLoadPriority();
+    }
+
+    private void prepareSource() {
+      mediaSource = creator.createMediaSource(mediaUri, loadPriority);
+      if (queue != null && queueOrder != INDEX_UNSET) {
+        queueSource = new DynamicConcatenatingMediaSource();
+        queueSource.addMediaSource(mediaSource);
+        queuedUris.add(mediaUri);
+        fillQueue();
+        mediaSource = queueSource;
+      } else if (previewWindowMs != C.TIME_UNSET) {
+        // The loads stop at the end of the window, the rest of the media is never requested.
+        long startMs = playbackInfo.getResumeWindow() != INDEX_UNSET ?  //
+            Math.max(0, playbackInfo.getResumePosition()) : 0;
+        // A resume position at or past the end shows the last window instead.
+        if (mediaDurationMs != C.TIME_UNSET) {
+          startMs = Math.min(startMs, Math.max(0, mediaDurationMs - previewWindowMs));
+        }
+        previewStartMs = startMs;
+        // Media that can't be clipped is played in full, see #onTimelineChanged(Timeline).
+        previewSource = new PreviewMediaSource(mediaSource, C.msToUs(startMs),
+            C.msToUs(startMs + previewWindowMs));
+        mediaSource = previewLooping ? new LoopingMediaSource(previewSource) : previewSource;
+      }
+      // A window starts at the resume position already.
+      boolean resetPosition =
+          previewStartMs != C.TIME_UNSET || playbackInfo.getResumeWindow() == C.INDEX_UNSET;
+      player.prepare(mediaSource, resetPosition, false);
+    }
+
+    @Override public void setPreviewWindow(long windowMs, boolean looping) {
+      this.previewWindowMs = windowMs > 0 ? windowMs : C.TIME_UNSET;
+      this.previewLooping = looping;
+    }
+
+    @Override public void exitPreview() {
+      updatePlaybackInfo();
+      this.previewWindowMs = C.TIME_UNSET;
+      if (previewStartMs == C.TIME_UNSET) return;  // no window is prepared.
+      clearSource();
+      if (player == null) return;  // prepared again when a player is obtained.
+      prepareSource();
+      if (playbackInfo.getResumeWindow() != INDEX_UNSET) {
+        player.seekTo(playbackInfo.getResumeWindow(), playbackInfo.getResumePosition());
+      }
+    }
+
+    // Preview mode: once the media has a Timeline, play it in full from the resume position if it
+    // can't be clipped, eg: a live stream. Also learn its duration, to clamp the next windows.
+    void onTimelineChanged(Timeline timeline) {
+      if (player == null || queueSource != null || timeline.isEmpty()) return;
+      Timeline.Window window = timeline.getWindow(0, new Timeline.Window());
+      if (previewSource == null) {
+        if (previewStartMs == C.TIME_UNSET && !window.isDynamic) {
+          mediaDurationMs = window.getDurationMs();
+        }
+        return;
+      }
+      if (!previewSource.isRefreshed()) return;
+      if (previewSource.isClipped()) {
+        // A window shorter than asked for ends with the media.
+        if (window.durationUs != C.TIME_UNSET && window.getDurationMs() < previewWindowMs) {
+          mediaDurationMs = previewStartMs + window.getDurationMs();
+        }
+      } else {
+        previewStartMs = C.TIME_UNSET;
+        if (!window.isDynamic) mediaDurationMs = window.getDurationMs();
+        long positionMs = playbackInfo.getResumePosition();
+        if (playbackInfo.getResumeWindow() != INDEX_UNSET && window.isSeekable
+            && positionMs != TIME_UNSET
+            && (mediaDurationMs == C.TIME_UNSET || positionMs < mediaDurationMs)) {
+          player.seekTo(0, positionMs);
+        }
+      }
+      previewSource = null;
+    }
+
+    // Position in the media, also in the preview mode where the player only sees the window.
+    private long getCurrentPosition() {
+      long position = player.getCurrentPosition();
+      return previewStartMs != C.TIME_UNSET ? previewStartMs + position : position;
     }
 
     @Override public void pause() {
+      if (player == null && sharedPlayer) return; // not holding the player, so not playing.
       checkNotNull(player, "Playable#pause(): Player is null!").setPlayWhenReady(false);
+      updateLoadPriority();
     }
 
     @Override public void reset() {
@@ -261,44 +538,162 @@ public class DefaultExoCreator implements ExoCreator, MediaSourceEventListener {
       // TODO [20180219] in 2.7.0, there will be #stop() and #stop(boolean) to reset internal state.
       if (player != null) player.stop();
       // TODO [20180214] double check this when ExoPlayer 2.7.0 is released.
-      this.mediaSource = null; // so it will be re-prepared when play() is called.
+      clearSource(); // so it will be re-prepared when play() is called.
       this.lastSeenTrackGroupArray = null;
       this.inErrorState = false;
     }
 
     @Override public void release() {
       this.setPlayerView(null);
+      setBuffering(false);
+      setPriority(loadPriority, PRIORITY_PREFETCH);
       if (this.player != null) {
         this.player.stop();
-        if (listenerWrapper != null) {
-          player.removeListener(listenerWrapper);
-          player.removeVideoListener(listenerWrapper);
-          player.removeTextOutput(listenerWrapper);
-          listenerWrapper = null;
-        }
-        toro.releasePlayer(this.creator, this.player);
+        removeListeners();
+        creator.releasePlayer(this, this.player);
       }
       this.player = null;
+      clearSource();
+    }
+
+    @Override public void setMediaQueue(@Nullable MediaQueue queue, int order) {
+      this.queue = queue;
+      if (queueSource == null) this.queueOrder = order;
+      fillQueue();
+    }
+
+    @Override public int getQueueOrder() {
+      return queueSource != null ? queueOrder : INDEX_UNSET;
+    }
+
+    @NonNull @Override public Uri getMediaUri() {
+      return mediaUri;
+    }
+
+    // Called when the player may have crossed into another queued item.
+    void updateQueue() {
+      if (queueSource == null || player == null) return;
+      int window = player.getCurrentWindowIndex();
+      int index = window - trimming;  // in queuedUris
+      // The queue only moves forward: the windows before the playing one are removed.
+      if (window <= queueWindow || index >= queuedUris.size()) return;
+      queueOrder += window - queueWindow;
+      queueWindow = window;
+      mediaUri = queuedUris.get(index);
+      trimQueue(index);
+      fillQueue();
+    }
+
+    // Remove the windows of the items played through, so the queue doesn't grow with the
+    // playback. The player's Timeline drops them later, queueWindow follows it then.
+    private void trimQueue(int count) {
+      final DynamicConcatenatingMediaSource source = queueSource;
+      for (int i = 0; i < count; i++) {
+        queuedUris.remove(0);
+        trimming++;
+        source.removeMediaSource(0, new Runnable() {
+          @Override public void run() {
+            if (source != queueSource) return;  // prepared again since.
+            trimming--;
+            queueWindow--;
+            updateQueue();  // in case the player moved on meanwhile.
+          }
+        });
+      }
+    }
+
+    // Keep QUEUE_AHEAD items after the one being played, so their buffer is filled in advance.
+    private void fillQueue() {
+      if (queueSource == null || queue == null) return;
+      int index = queueWindow - trimming;  // of the item being played, in queuedUris.
+      while (queuedUris.size() - index <= QUEUE_AHEAD) {
+        Uri next = queue.getMediaUri(queueOrder - index + queuedUris.size());
+        if (next == null) break;  // end of the queue.
+        queuedUris.add(next);
+        queueSource.addMediaSource(creator.createMediaSource(next, loadPriority));
+      }
+    }
+
+    // The current item will be prepared again, alone or as the start of a new queue.
+    private void clearSource() {
       this.mediaSource = null;
+      this.queueSource = null;
+      this.queuedUris.clear();
+      this.queueWindow = 0;
+      this.trimming = 0;
+      this.previewStartMs = C.TIME_UNSET;
+      this.previewSource = null;
+    }
+
+    private void removeListeners() {
+      if (listenerWrapper != null) {
+        player.removeListener(listenerWrapper);
+        player.removeVideoListener(listenerWrapper);
+        player.removeTextOutput(listenerWrapper);
+        listenerWrapper = null;
+      }
     }
 
     @NonNull @Override public PlaybackInfo getPlaybackInfo() {
       updatePlaybackInfo();
-      return new PlaybackInfo(playbackInfo.getResumeWindow(), playbackInfo.getResumePosition());
+      return new PlaybackInfo(playbackInfo);
     }
 
     @Override public void setPlaybackInfo(@NonNull PlaybackInfo playbackInfo) {
+      boolean samePosition = player != null  //
+          && player.getPlaybackState() != Player.STATE_IDLE
+          && player.getCurrentWindowIndex() == queueWindow + playbackInfo.getResumeWindow()
+          && getCurrentPosition() == playbackInfo.getResumePosition();
       this.playbackInfo.setResumeWindow(playbackInfo.getResumeWindow());
       this.playbackInfo.setResumePosition(playbackInfo.getResumePosition());
-
-      if (player != null) {
-        boolean haveResumePosition = this.playbackInfo.getResumeWindow() != INDEX_UNSET;
-        if (haveResumePosition) {
-          player.seekTo(this.playbackInfo.getResumeWindow(), this.playbackInfo.getResumePosition());
+      this.playbackInfo.setVideoBitrate(playbackInfo.getVideoBitrate());
+      this.playbackInfo.setSpeed(playbackInfo.getSpeed());
+      this.playbackInfo.setVolume(playbackInfo.getVolume());
+      this.playbackInfo.setFastResume(playbackInfo.isFastResume());
+      if (player != null) applyPlaybackInfo(!samePosition);
+    }
+
+    // Restore the saved state to the player. Unset values are left as they are, so is the volume
+    // once the App has set one.
+    private void applyPlaybackInfo(boolean seek) {
+      if (!volumeSet && playbackInfo.getVolume() != VOLUME_UNSET) {
+        this.volume = playbackInfo.getVolume();
+        player.setVolume(volume);
+      }
+      updateRenderers();
+      if (playbackInfo.getSpeed() != SPEED_UNSET) {
+        player.setPlaybackParameters(new PlaybackParameters(playbackInfo.getSpeed(), 1f));
+      }
+      // Fast resume, if the Config or the App opted in: start at the saved rendition rather than
+      // ramping up from the bandwidth estimate again. That is all of it in ExoPlayer 2.6.1: it
+      // has no SeekParameters, so the seek below is exact and still decodes from the previous
+      // sync point. With 2.7.0+, SeekParameters.CLOSEST_SYNC would belong here too.
+      boolean fast = creator.fastResume || playbackInfo.isFastResume();
+      if (fast && playbackInfo.getVideoBitrate() != BITRATE_UNSET) {
+        creator.setRenditionHint(player, playbackInfo.getVideoBitrate());
+      }
+      boolean haveResumePosition = playbackInfo.getResumeWindow() != INDEX_UNSET;
+      if (seek && haveResumePosition) {
+        if (previewStartMs == C.TIME_UNSET) {
+          player.seekTo(queueWindow + playbackInfo.getResumeWindow(),
+              playbackInfo.getResumePosition());
+        } else {
+          seekPreview();
         }
       }
     }
 
+    // Seek inside the prepared window, or prepare a new window from the resume position.
+    private void seekPreview() {
+      long offset = playbackInfo.getResumePosition() - previewStartMs;
+      if (offset >= 0 && offset < previewWindowMs) {
+        player.seekTo(playbackInfo.getResumeWindow(), offset);
+      } else {
+        clearSource();
+        prepareSource();
+      }
+    }
+
     @Override public void addEventListener(@NonNull EventListener listener) {
       //noinspection ConstantConditions
       if (listener != null) this.listeners.add(listener);
@@ -309,24 +704,91 @@ public class DefaultExoCreator implements ExoCreator, MediaSourceEventListener {
     }
 
     @Override public void setVolume(float volume) {
+      this.volume = volume;
+      this.volumeSet = true;
       if (player != null) player.setVolume(volume);
+      updateRenderers();
+    }
+
+    // A muted Playable doesn't need to decode audio or parse captions. Those renderers are
+    // disabled through the track selector, so they are not given any track and create no decoder.
+    void updateRenderers() {
+      if (player == null || !creator.videoOnlyWhenMuted) return;
+      DefaultTrackSelector selector = creator.getTrackSelector(player);
+      if (selector == null) return;
+      boolean disabled = volume == 0;
+      for (int i = 0, count = player.getRendererCount(); i < count; i++) {
+        int type = player.getRendererType(i);
+        boolean optional = type == C.TRACK_TYPE_AUDIO || type == C.TRACK_TYPE_TEXT
+            || type == C.TRACK_TYPE_METADATA;
+        if (optional && selector.getRendererDisabled(i) != disabled) {
+          selector.setRendererDisabled(i, disabled);
+        }
+      }
     }
 
     @Override public float getVolume() {
-      return player != null ? player.getVolume() : 1;
+      return player != null ? player.getVolume() : volume;
     }
 
     @Override public boolean isPlaying() {
       return player != null && player.getPlayWhenReady();
     }
 
+    // A playing Playable's loads never wait, and while it is buffering, loads of paused and warm
+    // Playables (or posters) wait for it.
+    void updateLoadPriority() {
+      boolean playing = player != null && player.getPlayWhenReady();
+      setPriority(loadPriority, playing ? C.PRIORITY_PLAYBACK : PRIORITY_PREFETCH);
+      setBuffering(playing && player.isLoading());
+    }
+
+    private void setBuffering(boolean buffering) {
+      if (this.buffering == buffering) return;
+      this.buffering = buffering;
+      PriorityTaskManager priorityTaskManager = with(creator.context).priorityTaskManager;
+      if (buffering) {
+        priorityTaskManager.add(C.PRIORITY_PLAYBACK);
+      } else {
+        PrioritizedDataSource.release(priorityTaskManager, C.PRIORITY_PLAYBACK);
+      }
+    }
+
     void updatePlaybackInfo() {
       if (player == null || player.getPlaybackState() == 1) return;
-      playbackInfo.setResumeWindow(player.getCurrentWindowIndex());
+      // Relative to the item being played, so it is the same with or without a queue.
+      playbackInfo.setResumeWindow(player.getCurrentWindowIndex() - queueWindow);
       playbackInfo.setResumePosition(player.isCurrentWindowSeekable() ? //
-          Math.max(0, player.getCurrentPosition()) : TIME_UNSET);
+          Math.max(0, getCurrentPosition()) : TIME_UNSET);
+      Format videoFormat = player.getVideoFormat();
+      playbackInfo.setVideoBitrate(videoFormat != null ? videoFormat.bitrate : BITRATE_UNSET);
+      playbackInfo.setSpeed(player.getPlaybackParameters().speed);
+      playbackInfo.setVolume(volume);
+    }
+
+  }
+
+  // A player's view of the shared meter. AdaptiveTrackSelection reads the estimate once to pick
+  // its initial track: a hint makes that first read return a bandwidth that fits the hinted
+  // bitrate, later reads are the actual estimate.
+  static class HintedMeter implements BandwidthMeter {
+
+    @NonNull final BandwidthMeter delegate;
+    volatile int hint = BITRATE_UNSET;  // set on the main thread, read on the playback thread.
+
+    HintedMeter(@NonNull BandwidthMeter delegate) {
+      this.delegate = delegate;
     }
 
+    @Override public long getBitrateEstimate() {
+      long estimate = delegate.getBitrateEstimate();
+      int hint = this.hint;
+      if (hint == BITRATE_UNSET) return estimate;
+      this.hint = BITRATE_UNSET;
+      // AdaptiveTrackSelection only uses a fraction (0.75 by default) of the estimate.
+      long hinted = (long) (hint / AdaptiveTrackSelection.DEFAULT_BANDWIDTH_FRACTION) + 1;
+      return estimate == NO_ESTIMATE ? hinted : Math.max(estimate, hinted);
+    }
   }
 
   private static class ListenerWrapper implements Playable.EventListener {
@@ -349,15 +811,17 @@ public class DefaultExoCreator implements ExoCreator, MediaSourceEventListener {
     }
 
     @Override public void onTimelineChanged(Timeline timeline, Object manifest) {
+      playable.onTimelineChanged(timeline);
       delegate.onTimelineChanged(timeline, manifest);
     }
 
     @Override
     public void onTracksChanged(TrackGroupArray trackGroups, TrackSelectionArray trackSelections) {
-      TrackSelector selector = ((DefaultExoCreator) playable.creator).getTrackSelector();
-      if (selector != null && selector instanceof DefaultTrackSelector) {
+      DefaultTrackSelector selector =
+          playable.player != null ? playable.creator.getTrackSelector(playable.player) : null;
+      if (selector != null) {
         if (trackGroups != playable.lastSeenTrackGroupArray) {
-          MappedTrackInfo trackInfo = ((DefaultTrackSelector) selector).getCurrentMappedTrackInfo();
+          MappedTrackInfo trackInfo = selector.getCurrentMappedTrackInfo();
           if (trackInfo != null) {
             if (trackInfo.getTrackTypeRendererSupport(C.TRACK_TYPE_VIDEO)
                 == RENDERER_SUPPORT_UNSUPPORTED_TRACKS) {
@@ -380,10 +844,12 @@ public class DefaultExoCreator implements ExoCreator, MediaSourceEventListener {
     }
 
     @Override public void onLoadingChanged(boolean isLoading) {
+      playable.updateLoadPriority();
       delegate.onLoadingChanged(isLoading);
     }
 
     @Override public void onPlayerStateChanged(boolean playWhenReady, int playbackState) {
+      playable.updateLoadPriority();
       delegate.onPlayerStateChanged(playWhenReady, playbackState);
     }
 
@@ -436,6 +902,7 @@ public class DefaultExoCreator implements ExoCreator, MediaSourceEventListener {
     }
 
     @Override public void onPositionDiscontinuity(int reason) {
+      playable.updateQueue();  // before the listeners, so they see the new item.
       if (playable.inErrorState) {
         // Adapt from ExoPlayer demo.
         // This will only occur if the user has performed a seek whilst in the error state. Update
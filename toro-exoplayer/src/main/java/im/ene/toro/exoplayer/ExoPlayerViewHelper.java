@@ -16,14 +16,30 @@
 
 package im.ene.toro.exoplayer;
 
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.view.PixelCopy;
+import android.view.SurfaceView;
+import android.view.TextureView;
+import android.view.View;
+import android.widget.ImageView;
+import com.google.android.exoplayer2.Player;
 import com.google.android.exoplayer2.ui.SimpleExoPlayerView;
+import im.ene.toro.CacheManager;
 import im.ene.toro.ToroPlayer;
 import im.ene.toro.helper.ToroPlayerHelper;
 import im.ene.toro.media.PlaybackInfo;
 import im.ene.toro.widget.Container;
+import im.ene.toro.widget.PlaybackRegistry;
+
+import static im.ene.toro.ToroUtil.checkNotNull;
+import static im.ene.toro.media.PlaybackInfo.INDEX_UNSET;
+import static im.ene.toro.media.PlaybackInfo.VOLUME_UNSET;
 
 /**
  * @author eneim (2018/01/24).
@@ -31,8 +47,33 @@ import im.ene.toro.widget.Container;
 
 public class ExoPlayerViewHelper extends ToroPlayerHelper {
 
-  @NonNull private final Playable playable;
+  // Queue mode: how long a released helper waits for the next item's ToroPlayer to take over.
+  static final long HAND_OVER_TIMEOUT_MS = 2000;
+
+  @NonNull private final Uri uri;
+  @NonNull private final ExoCreator creator;
   @NonNull private final MyEventListeners listeners;
+  @NonNull private final ToroExo toro;
+  @NonNull private final PlaybackRegistry registry;
+
+  // Created on demand, or taken over from another ToroPlayer of the same item, or taken from the
+  // warm Playables when the same item was released recently.
+  private Playable playable;
+  private Object key; // CacheManager key of the item being played, null if not available.
+  private MediaQueue queue; // queue mode if not null.
+  private int itemOrder = INDEX_UNSET; // order of this helper's item, at initialization.
+  private int playingOrder = INDEX_UNSET; // order of the item being played, see #syncQueue().
+  private Uri playingUri; // Uri of the item being played.
+  // Preview mode of this item, if set. Otherwise the one of the creator's Config.
+  private boolean previewSet;
+  private long previewWindowMs;
+  private boolean previewLooping;
+  private float volume = VOLUME_UNSET; // set before initialization, applied to the Playable.
+  private ImageView posterView;  // also shows the last captured frame
+  private Bitmap frame; // last captured frame shown by posterView, from ToroExo's FramePool.
+  private Bitmap pendingFrame; // frame being copied from a SurfaceView.
+  private boolean frameRendered; // the PlayerView shows a video frame that can be captured.
+  private final Handler handler = new Handler();
 
   public ExoPlayerViewHelper(@NonNull Container container, @NonNull ToroPlayer player,
       @NonNull Uri uri) {
@@ -53,45 +94,283 @@ public class ExoPlayerViewHelper extends ToroPlayerHelper {
 
     listeners = new MyEventListeners();
     if (eventListener != null) listeners.add(eventListener);
-    playable = creator.createPlayable(uri);
+    this.uri = uri;
+    this.creator = creator;
+    this.toro = ToroExo.with(container.getContext());
+    this.registry = container.getPlaybackRegistry();
   }
 
   @Override public void initialize(@Nullable PlaybackInfo playbackInfo) {
+    boolean living = false;
+    if (playable == null) {
+      itemOrder = player.getPlayerOrder();
+      playingOrder = itemOrder;
+      playingUri = uri;
+      key = registry.getKey(player);
+      if (key != null) {
+        playable = registry.find(key, uri, Playable.class);
+        living = playable != null;
+        if (!living) playable = toro.warmPlayables.take(key, uri, creator);
+      }
+      if (playable == null) playable = creator.createPlayable(uri);
+      if (key != null) registry.bind(player, key, uri, playable);
+    }
+
+    playable.setMediaQueue(queue, itemOrder);
+    if (previewSet) playable.setPreviewWindow(previewWindowMs, previewLooping);
+    // Before the PlaybackInfo: the App's volume wins over the saved one.
+    if (volume != VOLUME_UNSET) playable.setVolume(volume);
     playable.addEventListener(listeners);
     playable.prepare();
     playable.setPlayerView((SimpleExoPlayerView) player.getPlayerView());
-    if (playbackInfo != null) playable.setPlaybackInfo(playbackInfo);
+    // A living Playable must keep going, a warm one is already at this position. Seeking again
+    // would drop their buffer.
+    if (playbackInfo != null && !living && !playbackInfo.equals(playable.getPlaybackInfo())) {
+      playable.setPlaybackInfo(playbackInfo);
+    }
+    syncQueue();  // a queued Playable taken over may be playing a later item already.
+  }
+
+  /**
+   * Enable the queue mode: when the item of this helper ends, its player goes on with the next
+   * items of the {@link MediaQueue} without a gap, as the buffer of the next item is filled in
+   * advance. Once the playback moves to the next item, the {@link Container} scrolls to it, the
+   * saved {@link PlaybackInfo} of the finished item is reset, and the {@link ToroPlayer} of the
+   * next item takes the playing {@link Playable} over.
+   *
+   * Requires a {@link CacheManager} on the {@link Container}, and a {@link Playable} that supports
+   * it, like the ones of {@link DefaultExoCreator}.
+   * Must be called before {@link #initialize(PlaybackInfo)}.
+   *
+   * @param queue the items after the one of this helper, or {@code null} to disable.
+   */
+  public void setMediaQueue(@Nullable MediaQueue queue) {
+    this.queue = queue;
+  }
+
+  /**
+   * Set the preview mode of this item, instead of the one of the creator's {@link Config}: only
+   * the given window of the media is played and buffered, starting at the resume position. See
+   * {@link Config.Builder#setPreviewWindow(long, boolean)}.
+   *
+   * @param windowMs length of the window in milliseconds, non-positive value to play the full
+   * media.
+   * @param looping if true, the window loops until the preview mode ends.
+   */
+  public void setPreviewWindow(long windowMs, boolean looping) {
+    this.previewSet = true;
+    this.previewWindowMs = windowMs;
+    this.previewLooping = looping;
+    if (playable != null) playable.setPreviewWindow(windowMs, looping);
+  }
+
+  /**
+   * Leave the preview mode, eg: when the user engages with this item. The full media is requested
+   * and goes on from the current position.
+   */
+  public void exitPreview() {
+    setPreviewWindow(0, false);
+    if (playable != null) playable.exitPreview();
+  }
+
+  // Queue mode: once the Playable plays another item, bind it to that item, so the item's
+  // ToroPlayer finds it living and takes it over.
+  void syncQueue() {
+    if (!ownsPlayable()) return;
+    int order = playable.getQueueOrder();
+    if (order == INDEX_UNSET || order == playingOrder) return;
+    // The item played through starts over next time.
+    container.savePlaybackInfo(playingOrder, new PlaybackInfo());
+    registry.unbind(player, playable);
+    CacheManager cacheManager = container.getCacheManager();
+    key = cacheManager != null ? cacheManager.getKeyForOrder(order) : null;
+    if (key != null) registry.bind(player, key, playable.getMediaUri(), playable);
+    playingOrder = order;
+    playingUri = playable.getMediaUri();
+    if (order != itemOrder) container.smoothScrollToPosition(order);
+  }
+
+  // Queue mode: the Playable plays an item after this helper's own one.
+  private boolean handingOver() {
+    return playingOrder != itemOrder;
   }
 
   @Override public void release() {
     super.release();
-    playable.setPlayerView(null);
+    if (playable == null) return;
     playable.removeEventListener(listeners);
-    playable.release();
+    if (handingOver() && key != null && registry.owns(player, playable)) {
+      // Keep it playing for the ToroPlayer of the next item, which takes it over soon.
+      playable.setPlayerView(null);
+      awaitHandOver(playable, key, playingUri);
+    } else if (registry.unbind(player, playable)) {
+      // If another ToroPlayer of the same item took the Playable over, it is not ours to release.
+      // Cover the PlayerView with its last frame, its surface goes black once detached.
+      captureFrame();
+      playable.setPlayerView(null);
+      if (key != null) {
+        // Keep it warm, it will be released by the cache if the item doesn't come back soon.
+        playable.pause();
+        toro.warmPlayables.put(key, playingUri, creator, playable);
+      } else {
+        playable.release();
+      }
+    }
+    playable = null;
+    key = null;
+    itemOrder = INDEX_UNSET;
+    playingOrder = INDEX_UNSET;
+    playingUri = null;
+    frameRendered = false;
+    // Without a captured frame, the poster covers the detached surface.
+    if (frame == null) showPoster();
+  }
+
+  /**
+   * Show the first frame of the video in an {@link ImageView} laid over the PlayerView, until the
+   * Playable renders its first frame. The poster is loaded by {@link PosterLoader} right away, so
+   * this should be called when binding the ViewHolder: decoders are only started for the players
+   * selected by the {@link Container}, other tiles keep showing their poster.
+   *
+   * The same {@link ImageView} shows the last rendered frame when this helper pauses or releases
+   * the Playable, until the playback resumes. So the decoder and the surface of an off-selection
+   * player can be released (see {@link ToroExo#setMaxWarmPlayables(int)}) without blank tiles.
+   *
+   * @param posterView the {@link ImageView} on top of the PlayerView, or {@code null} to unset.
+   */
+  @SuppressWarnings("WeakerAccess") //
+  public void setPosterView(@Nullable ImageView posterView) {
+    if (this.posterView == posterView) return;
+    if (this.posterView != null) {
+      toro.getPosterLoader().cancel(this.posterView);
+      if (frame != null) this.posterView.setImageDrawable(null);
+    }
+    releaseFrames();
+    this.posterView = posterView;
+    showPoster();
+  }
+
+  private void showPoster() {
+    if (posterView == null) return;
+    toro.getPosterLoader().load(uri, posterView, creator instanceof DefaultExoCreator ?  //
+        ((DefaultExoCreator) creator).posterDataSourceFactory : null);
+    if (frame != null) toro.framePool.release(frame);
+    frame = null;
+    posterView.setVisibility(View.VISIBLE);
+  }
+
+  private void hideOverlay() {
+    if (posterView == null) return;
+    pendingFrame = null;  // the video is back, don't cover it with a late copy.
+    // Put the poster back, so the pooled frame can be reused.
+    if (frame != null) showPoster();
+    posterView.setVisibility(View.INVISIBLE);
+  }
+
+  private void showFrame(@NonNull Bitmap captured) {
+    toro.getPosterLoader().cancel(posterView);
+    posterView.setImageBitmap(captured);
+    if (frame != null && frame != captured) toro.framePool.release(frame);
+    frame = captured;
+    posterView.setVisibility(View.VISIBLE);
+  }
+
+  private void releaseFrames() {
+    if (frame != null) toro.framePool.release(frame);
+    frame = null;
+    pendingFrame = null;  // still being copied into, returned to the pool once finished.
+  }
+
+  // Capture the frame on screen into the poster view. Return false if it can not be done.
+  private boolean captureFrame() {
+    if (posterView == null || !frameRendered || playable == null) return false;
+    SimpleExoPlayerView playerView = playable.getPlayerView();
+    View surface = playerView != null ? playerView.getVideoSurfaceView() : null;
+    if (surface == null || surface.getWidth() <= 0 || surface.getHeight() <= 0) return false;
+    if (surface instanceof TextureView) {
+      Bitmap captured = toro.framePool.acquire(surface.getWidth(), surface.getHeight());
+      showFrame(((TextureView) surface).getBitmap(captured));
+      return true;
+    }
+    if (surface instanceof SurfaceView && Build.VERSION.SDK_INT >= 24) {
+      copyFrame((SurfaceView) surface);
+      return true;
+    }
+    return false;
+  }
+
+  // SurfaceView content can only be copied asynchronously, the frame is shown once copied.
+  @TargetApi(24) private void copyFrame(@NonNull SurfaceView surface) {
+    if (pendingFrame != null) return;
+    final Bitmap captured = toro.framePool.acquire(surface.getWidth(), surface.getHeight());
+    pendingFrame = captured;
+    PixelCopy.request(surface, captured, new PixelCopy.OnPixelCopyFinishedListener() {
+      @Override public void onPixelCopyFinished(int copyResult) {
+        if (pendingFrame == captured && copyResult == PixelCopy.SUCCESS && posterView != null) {
+          pendingFrame = null;
+          showFrame(captured);
+        } else {
+          if (pendingFrame == captured) pendingFrame = null;
+          toro.framePool.release(captured);
+        }
+      }
+    }, handler);
+  }
+
+  // If no ToroPlayer took the Playable over in time, keep it warm for when its item comes back.
+  private void awaitHandOver(@NonNull final Playable playable, @NonNull final Object key,
+      @NonNull final Uri uri) {
+    final ToroPlayer player = this.player;
+    final ExoCreator creator = this.creator;
+    handler.postDelayed(new Runnable() {
+      @Override public void run() {
+        // A Playable taken over has a PlayerView, or is paused/released by its new owner.
+        if (registry.owns(player, playable) && playable.getPlayerView() == null
+            && playable.isPlaying()) {
+          registry.unbind(player, playable);
+          playable.pause();
+          toro.warmPlayables.put(key, uri, creator, playable);
+        }
+      }
+    }, HAND_OVER_TIMEOUT_MS);
+  }
+
+  // False if the Playable is taken over by another ToroPlayer of the same item.
+  private boolean ownsPlayable() {
+    return playable != null && registry.owns(player, playable);
   }
 
   @Override public void play() {
-    playable.play();
+    checkNotNull(playable, "ExoPlayerViewHelper#play(): not initialized.");
+    if (ownsPlayable()) playable.play();
   }
 
+  // While handing over, the Playable belongs to the next item: it is neither paused nor reported
+  // as playing here, so the Container doesn't stop it or save its state for this item.
   @Override public void pause() {
-    playable.pause();
+    if (ownsPlayable() && !handingOver()) {
+      captureFrame();
+      playable.pause();
+    }
   }
 
   @Override public boolean isPlaying() {
-    return playable.isPlaying();
+    return ownsPlayable() && !handingOver() && playable.isPlaying();
   }
 
   @Override public void setVolume(float volume) {
-    playable.setVolume(volume);
+    this.volume = volume;
+    if (playable != null) playable.setVolume(volume);
   }
 
   @Override public float getVolume() {
-    return playable.getVolume();
+    if (playable != null) return playable.getVolume();
+    return volume != VOLUME_UNSET ? volume : 1;
   }
 
   @NonNull @Override public PlaybackInfo getLatestPlaybackInfo() {
-    return playable.getPlaybackInfo();
+    // This helper's item is finished if its Playable moved on to the next one.
+    return playable != null && !handingOver() ? playable.getPlaybackInfo() : new PlaybackInfo();
   }
 
   @SuppressWarnings("WeakerAccess") //
@@ -113,7 +392,20 @@ public class ExoPlayerViewHelper extends ToroPlayerHelper {
 
     @Override public void onPlayerStateChanged(boolean playWhenReady, int playbackState) {
       ExoPlayerViewHelper.super.onPlayerStateUpdated(playWhenReady, playbackState); // important
+      // Resumed on the same surface, the overlay would only hide the video.
+      if (frameRendered && playWhenReady && playbackState == Player.STATE_READY) hideOverlay();
       super.onPlayerStateChanged(playWhenReady, playbackState);
     }
+
+    @Override public void onRenderedFirstFrame() {
+      frameRendered = true;
+      hideOverlay();
+      super.onRenderedFirstFrame();
+    }
+
+    @Override public void onPositionDiscontinuity(int reason) {
+      syncQueue();
+      super.onPositionDiscontinuity(reason);
+    }
   }
 }
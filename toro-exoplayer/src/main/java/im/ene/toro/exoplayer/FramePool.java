@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2018 Nam Nguyen, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.toro.exoplayer;
+
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author eneim (2018/03/06).
+ *
+ *         A small pool of Bitmaps to capture the last rendered frames of videos into. Tiles of a
+ *         list usually have the same size, so a released Bitmap is very likely to be reused for
+ *         the next capture without any allocation. Must be used from the main thread only.
+ */
+
+final class FramePool {
+
+  private static final int MAX_SIZE = 4;
+
+  private final List<Bitmap> frames = new ArrayList<>(MAX_SIZE);
+
+  @NonNull Bitmap acquire(int width, int height) {
+    for (int i = frames.size() - 1; i >= 0; i--) {
+      Bitmap frame = frames.get(i);
+      if (frame.getWidth() == width && frame.getHeight() == height) {
+        frames.remove(i);
+        return frame;
+      }
+    }
+    return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+  }
+
+  void release(@NonNull Bitmap frame) {
+    if (frame.isRecycled() || frames.contains(frame)) return;
+    // Keep the most recent sizes.
+    if (frames.size() >= MAX_SIZE) frames.remove(0).recycle();
+    frames.add(frame);
+  }
+
+  void clear() {
+    for (Bitmap frame : frames) {
+      frame.recycle();
+    }
+    frames.clear();
+  }
+}
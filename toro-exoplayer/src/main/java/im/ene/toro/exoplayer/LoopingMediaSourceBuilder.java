@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2018 Nam Nguyen, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.toro.exoplayer;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.support.annotation.NonNull;
+import com.google.android.exoplayer2.source.LoopingMediaSource;
+import com.google.android.exoplayer2.source.MediaSource;
+import com.google.android.exoplayer2.source.MediaSourceEventListener;
+import com.google.android.exoplayer2.upstream.DataSource;
+
+/**
+ * A {@link MediaSourceBuilder} that loops the media indefinitely, see
+ * {@link MediaSourceBuilder#LOOPING}. Clips up to a given size are kept in memory
+ * on their first pass (the memory is shared by all looping media, see
+ * {@link ToroExo#setMaxClipCacheSize(int)}), so that later loops don't read them again from the
+ * network or the disk. Larger media are looped as-is.
+ *
+ * @author eneim (2018/03/15).
+ * @since 3.4.0
+ */
+public final class LoopingMediaSourceBuilder implements MediaSourceBuilder {
+
+  /**
+   * Enough for a few seconds of video at common feed bitrates.
+   */
+  public static final int DEFAULT_MAX_CLIP_BYTES = 4 * 1024 * 1024;
+
+  private final int maxClipBytes;
+
+  /**
+   * @param maxClipBytes maximum size of a clip to be kept in memory. Non-positive value disables
+   * the in-memory looping.
+   */
+  public LoopingMediaSourceBuilder(int maxClipBytes) {
+    this.maxClipBytes = maxClipBytes;
+  }
+
+  @NonNull @Override
+  public MediaSource buildMediaSource(Context context, Uri uri, Handler handler,
+      DataSource.Factory manifestDataSourceFactory, DataSource.Factory mediaDataSourceFactory,
+      MediaSourceEventListener listener) {
+    DataSource.Factory factory = maxClipBytes <= 0 ? mediaDataSourceFactory
+        : new ClipDataSource.Factory(mediaDataSourceFactory, ToroExo.with(context).clipCache,
+            maxClipBytes);
+    return new LoopingMediaSource(
+        DEFAULT.buildMediaSource(context, uri, handler, manifestDataSourceFactory, factory,
+            listener));
+  }
+
+  // Used as part of the Config's key, see ToroExo.
+  @Override public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    return maxClipBytes == ((LoopingMediaSourceBuilder) o).maxClipBytes;
+  }
+
+  @Override public int hashCode() {
+    return maxClipBytes;
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2018 Nam Nguyen, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.toro.exoplayer;
+
+import android.net.Uri;
+import android.support.annotation.Nullable;
+import im.ene.toro.ToroPlayer;
+
+/**
+ * The items played after the item of an {@link ExoPlayerViewHelper} in queue mode, see
+ * {@link ExoPlayerViewHelper#setMediaQueue(MediaQueue)}. Items are identified by their order, the
+ * same as {@link ToroPlayer#getPlayerOrder()}.
+ *
+ * @author eneim (2018/03/14).
+ */
+public interface MediaQueue {
+
+  /**
+   * @param order order of an item after the one being played.
+   * @return the media Uri of that item, or {@code null} if the queue ends before it.
+   */
+  @Nullable Uri getMediaUri(int order);
+}
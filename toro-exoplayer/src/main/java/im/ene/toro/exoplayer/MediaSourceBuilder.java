@@ -22,7 +22,6 @@ import android.os.Handler;
 import android.support.annotation.NonNull;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.source.ExtractorMediaSource;
-import com.google.android.exoplayer2.source.LoopingMediaSource;
 import com.google.android.exoplayer2.source.MediaSource;
 import com.google.android.exoplayer2.source.MediaSourceEventListener;
 import com.google.android.exoplayer2.source.dash.DashMediaSource;
@@ -70,14 +69,7 @@ public interface MediaSourceBuilder {
     }
   };
 
-  MediaSourceBuilder LOOPING = new MediaSourceBuilder() {
-    @NonNull @Override
-    public MediaSource buildMediaSource(Context context, Uri uri, Handler handler,
-        DataSource.Factory manifestDataSourceFactory, DataSource.Factory mediaDataSourceFactory,
-        MediaSourceEventListener listener) {
-      return new LoopingMediaSource(
-          DEFAULT.buildMediaSource(context, uri, handler, manifestDataSourceFactory,
-              mediaDataSourceFactory, listener));
-    }
-  };
+  // Short clips loop from memory, see LoopingMediaSourceBuilder for a custom clip size.
+  MediaSourceBuilder LOOPING =
+      new LoopingMediaSourceBuilder(LoopingMediaSourceBuilder.DEFAULT_MAX_CLIP_BYTES);
 }
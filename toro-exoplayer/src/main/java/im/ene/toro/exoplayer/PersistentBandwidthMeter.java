@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2018 Nam Nguyen, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.toro.exoplayer;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author eneim (2018/03/07).
+ *
+ *         A {@link DefaultBandwidthMeter} that remembers its estimates across App launches. For
+ *         each network type (Wi-Fi, or mobile of a given subtype ...), the last estimates are kept
+ *         in a sliding window and stored in SharedPreferences. Until the live meter has its own
+ *         estimate for the current network, the median of that window is returned, so the
+ *         AdaptiveTrackSelection picks the right initial rendition from the very first video.
+ *
+ *         The storage is bound by {@link #attach(Context)}, which is done by {@link ToroExo}.
+ *         Before that, this behaves like a {@link DefaultBandwidthMeter}.
+ *
+ *         Reading the network type needs the ACCESS_NETWORK_STATE permission, which is left to the
+ *         App to declare. Without it, every estimate is kept under the same 'unknown' network.
+ */
+
+final class PersistentBandwidthMeter implements BandwidthMeter, TransferListener<Object> {
+
+  private static final String PREF_NAME = "im.ene.toro.exoplayer.bandwidth";
+  private static final String UNKNOWN_NETWORK = "unknown";
+  private static final int WINDOW_SIZE = 8;
+  private static final long MIN_STORE_INTERVAL_MS = 5000;
+
+  private final DefaultBandwidthMeter delegate = new DefaultBandwidthMeter();
+  // Network type key -> latest estimates, oldest first.
+  private final Map<String, List<Long>> windows = new HashMap<>();
+
+  private ConnectivityManager connectivityManager;
+  private SharedPreferences preferences;
+  @NonNull private String network = UNKNOWN_NETWORK;  // network of the current transfers
+  @Nullable private String liveNetwork; // network the delegate's estimate was measured on
+  private long lastStoreTimeMs;
+
+  synchronized void attach(@NonNull Context context) {
+    if (preferences != null) return;
+    Context appContext = context.getApplicationContext();
+    connectivityManager =
+        (ConnectivityManager) appContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+    preferences = appContext.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+    for (Map.Entry<String, ?> entry : preferences.getAll().entrySet()) {
+      if (!(entry.getValue() instanceof String)) continue;
+      List<Long> window = new ArrayList<>(WINDOW_SIZE);
+      for (String value : TextUtils.split((String) entry.getValue(), ",")) {
+        try {
+          window.add(Long.parseLong(value));
+        } catch (NumberFormatException ignored) {
+        }
+      }
+      if (!window.isEmpty()) windows.put(entry.getKey(), window);
+    }
+    network = currentNetwork();
+  }
+
+  @Override public synchronized long getBitrateEstimate() {
+    long estimate = delegate.getBitrateEstimate();
+    // The live estimate of another network is worse than the stored one of the current network.
+    if (estimate != NO_ESTIMATE && network.equals(liveNetwork)) return estimate;
+    List<Long> window = windows.get(network);
+    if (window == null || window.isEmpty()) return estimate;
+    Long[] sorted = window.toArray(new Long[window.size()]);
+    Arrays.sort(sorted);
+    return sorted[sorted.length / 2];
+  }
+
+  @Override public void onTransferStart(Object source, DataSpec dataSpec) {
+    synchronized (this) {
+      network = currentNetwork();
+    }
+    delegate.onTransferStart(source, dataSpec);
+  }
+
+  @Override public void onBytesTransferred(Object source, int bytesTransferred) {
+    delegate.onBytesTransferred(source, bytesTransferred);
+  }
+
+  @Override public void onTransferEnd(Object source) {
+    delegate.onTransferEnd(source);
+    long estimate = delegate.getBitrateEstimate();
+    if (estimate == NO_ESTIMATE) return;
+    synchronized (this) {
+      liveNetwork = network;
+      List<Long> window = windows.get(network);
+      if (window == null) {
+        window = new ArrayList<>(WINDOW_SIZE);
+        windows.put(network, window);
+      }
+      if (window.size() >= WINDOW_SIZE) window.remove(0);
+      window.add(estimate);
+
+      long now = SystemClock.elapsedRealtime();
+      if (preferences != null && now - lastStoreTimeMs >= MIN_STORE_INTERVAL_MS) {
+        lastStoreTimeMs = now;
+        preferences.edit().putString(network, TextUtils.join(",", window)).apply();
+      }
+    }
+  }
+
+  @NonNull private String currentNetwork() {
+    if (connectivityManager == null) return UNKNOWN_NETWORK;
+    NetworkInfo info;
+    try {
+      info = connectivityManager.getActiveNetworkInfo();
+    } catch (SecurityException er) {
+      return UNKNOWN_NETWORK; // no ACCESS_NETWORK_STATE permission.
+    }
+    if (info == null || !info.isConnected()) return UNKNOWN_NETWORK;
+    // Mobile networks of different generations are very different.
+    return info.getType() == ConnectivityManager.TYPE_MOBILE ?  //
+        "mobile_" + info.getSubtype() : String.valueOf(info.getType());
+  }
+}
@@ -16,6 +16,7 @@
 
 package im.ene.toro.exoplayer;
 
+import android.net.Uri;
 import android.support.annotation.FloatRange;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
@@ -79,6 +80,24 @@ public interface Playable {
 
   @FloatRange(from = 0.0, to = 1.0) float getVolume();
 
+  // Only play and buffer a window of the media from the resume position, see
+  // Config.Builder#setPreviewWindow(long, boolean). Applied the next time the media is prepared.
+  void setPreviewWindow(long windowMs, boolean looping);
+
+  // Leave the preview mode, eg: when the user engages. The full media goes on from there.
+  void exitPreview();
+
+  // Queue mode: once the media ends, go on with the next items of the queue without a gap, see
+  // ExoPlayerViewHelper#setMediaQueue(MediaQueue). The order is the one of the current media, only
+  // used when the queue starts: an on-going queue knows which item it is playing.
+  void setMediaQueue(@Nullable MediaQueue queue, int order);
+
+  // Queue mode: order of the item being played, or INDEX_UNSET if not playing a queue.
+  int getQueueOrder();
+
+  // Uri of the media being played: the one of this Playable, or the queued item it went on with.
+  @NonNull Uri getMediaUri();
+
   // Combine necessary interfaces.
   interface EventListener extends Player.EventListener, SimpleExoPlayer.VideoListener, TextOutput,
       MetadataOutput {
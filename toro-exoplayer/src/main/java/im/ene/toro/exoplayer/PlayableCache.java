@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2018 Nam Nguyen, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.toro.exoplayer;
+
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.util.LruCache;
+import im.ene.toro.CacheManager;
+
+/**
+ * @author eneim (2018/03/02).
+ *
+ *         A small LRU set of 'warm' {@link Playable}s: those are released by their Helper, but
+ *         still keep their SimpleExoPlayer, MediaSource and buffered data. Entries are keyed by
+ *         the {@link CacheManager} key of the item they were playing, so scrolling back to that
+ *         item can re-bind the same {@link Playable} instead of preparing a new one. Only a Helper
+ *         of the same Uri and {@link ExoCreator} gets it back: one of another creator would get a
+ *         Playable built with another Config (DRM, cache, preview, ...).
+ *
+ *         {@link Playable}s evicted from this set are released for real. Must be used from the
+ *         main thread only.
+ */
+
+final class PlayableCache {
+
+  static final int DEFAULT_MAX_SIZE = 2;
+
+  private final LruCache<Object, Entry> cache;
+  private boolean enabled = true;
+
+  PlayableCache(int maxSize) {
+    this.cache = new LruCache<Object, Entry>(Math.max(1, maxSize)) {
+      @Override protected void entryRemoved(boolean evicted, Object key, Entry oldValue,
+          Entry newValue) {
+        // Not evicted and no new value means the entry is taken out for reuse.
+        if (evicted || (newValue != null && newValue.playable != oldValue.playable)) {
+          oldValue.playable.release();
+        }
+      }
+    };
+  }
+
+  /**
+   * Keep a paused {@link Playable} warm. Its PlayerView must be detached already.
+   */
+  void put(@NonNull Object key, @NonNull Uri uri, @NonNull ExoCreator creator,
+      @NonNull Playable playable) {
+    if (enabled) {
+      cache.put(key, new Entry(uri, creator, playable));
+    } else {
+      playable.release();
+    }
+  }
+
+  /**
+   * Take out the warm {@link Playable} for a key, only if it is playing the same Uri and was
+   * put by a Helper of the same {@link ExoCreator}. A stale entry for that key is released.
+   */
+  @Nullable Playable take(@NonNull Object key, @NonNull Uri uri, @NonNull ExoCreator creator) {
+    Entry entry = cache.remove(key);
+    if (entry == null) return null;
+    if (entry.uri.equals(uri) && entry.creator == creator) return entry.playable;
+    entry.playable.release();
+    return null;
+  }
+
+  // A non-positive size disables the cache.
+  void resize(int maxSize) {
+    this.enabled = maxSize > 0;
+    if (enabled) {
+      cache.resize(maxSize);
+    } else {
+      cache.evictAll();
+    }
+  }
+
+  void evictAll() {
+    cache.evictAll();
+  }
+
+  static class Entry {
+
+    @NonNull final Uri uri;
+    @NonNull final ExoCreator creator;
+    @NonNull final Playable playable;
+
+    Entry(@NonNull Uri uri, @NonNull ExoCreator creator, @NonNull Playable playable) {
+      this.uri = uri;
+      this.creator = creator;
+      this.playable = playable;
+    }
+  }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright (c) 2018 Nam Nguyen, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.toro.exoplayer;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.MediaDataSource;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+import android.widget.ImageView;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.util.PriorityTaskManager;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static im.ene.toro.exoplayer.PrioritizedDataSource.PRIORITY_PREFETCH;
+
+/**
+ * @author eneim (2018/03/05).
+ *
+ *         Extracts the first frame of a video off the main thread, and keeps it in a memory and a
+ *         disk LRU cache keyed by the video Uri. Binding this poster to a tile lets it show the
+ *         video content before (or without) starting any decoder.
+ *
+ *         When a DataSource.Factory is given (the one of a {@link DefaultExoCreator}, for example),
+ *         the frame is read through it on API 23+. With a cache-enabled {@link Config}, only the
+ *         media prefix is fetched and it is the same data the player will read later. Such a
+ *         factory should not report to a {@link BandwidthMeter}: the short, prioritized poster
+ *         reads would skew the estimate used to select the playback bitrate.
+ *
+ *         {@link #load(Uri, ImageView, DataSource.Factory)} and {@link #cancel(ImageView)} must be
+ *         called from the main thread.
+ */
+
+@SuppressWarnings("WeakerAccess") //
+public final class PosterLoader {
+
+  private static final String TAG = "ToroLib:Poster";
+  private static final String DIR_NAME = "toro_posters";
+  private static final long MAX_DISK_SIZE = 20 * 1024 * 1024;  // 20 MB
+  private static final int MAX_FRAME_WIDTH = 720;  // when the target is not laid out yet
+
+  @NonNull private final Context context;
+  @NonNull private final PriorityTaskManager priorityTaskManager;
+  // Posters never go before the playing items.
+  private final AtomicInteger priority = new AtomicInteger(PRIORITY_PREFETCH);
+  @NonNull private final LruCache<Uri, Bitmap> memoryCache;
+  @NonNull private final File diskDir;
+  @NonNull private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  @NonNull private final Handler handler = new Handler(Looper.getMainLooper());
+  // Pending task for each target, so a recycled tile doesn't wait for its previous poster.
+  private final Map<ImageView, Future<?>> tasks = new WeakHashMap<>();
+
+  PosterLoader(@NonNull Context context, @NonNull PriorityTaskManager priorityTaskManager) {
+    this.context = context.getApplicationContext();
+    this.priorityTaskManager = priorityTaskManager;
+    this.diskDir = new File(this.context.getCacheDir(), DIR_NAME);
+    int maxMemory = (int) Math.min(Runtime.getRuntime().maxMemory() / 16, Integer.MAX_VALUE);
+    this.memoryCache = new LruCache<Uri, Bitmap>(maxMemory) {
+      @Override protected int sizeOf(Uri key, Bitmap value) {
+        return value.getByteCount();
+      }
+    };
+  }
+
+  /**
+   * @return the poster of a Uri if it is in the memory cache, {@code null} otherwise.
+   */
+  @Nullable public Bitmap getCached(@NonNull Uri uri) {
+    return memoryCache.get(uri);
+  }
+
+  /**
+   * Show the poster of a Uri in an {@link ImageView}. The previous request of the same target is
+   * cancelled. Nothing is set to the target if the poster can not be extracted.
+   *
+   * @param uri the video Uri.
+   * @param target the {@link ImageView} to show the poster.
+   * @param factory the DataSource.Factory to read the video with, or {@code null} to let the
+   * platform read it.
+   */
+  public void load(@NonNull final Uri uri, @NonNull final ImageView target,
+      @Nullable final DataSource.Factory factory) {
+    cancel(target);
+    target.setTag(R.id.toro_poster_uri, uri);
+    Bitmap cached = memoryCache.get(uri);
+    if (cached != null) {
+      target.setImageBitmap(cached);
+      return;
+    }
+
+    target.setImageDrawable(null);
+    final int width = target.getWidth() > 0 ? target.getWidth() : MAX_FRAME_WIDTH;
+    tasks.put(target, executor.submit(new Runnable() {
+      @Override public void run() {
+        final Bitmap bitmap = obtain(uri, factory, width);
+        if (bitmap == null) return;
+        handler.post(new Runnable() {
+          @Override public void run() {
+            // The target may be re-bound to other Uri meanwhile.
+            if (uri.equals(target.getTag(R.id.toro_poster_uri))) {
+              tasks.remove(target);
+              target.setImageBitmap(bitmap);
+            }
+          }
+        });
+      }
+    }));
+  }
+
+  public void cancel(@NonNull ImageView target) {
+    Future<?> task = tasks.remove(target);
+    if (task != null) task.cancel(false);
+    target.setTag(R.id.toro_poster_uri, null);
+  }
+
+  /**
+   * Drop the in-memory posters. The disk cache is kept.
+   */
+  public void evictMemory() {
+    memoryCache.evictAll();
+  }
+
+  /// Worker thread
+
+  @Nullable Bitmap obtain(@NonNull Uri uri, @Nullable DataSource.Factory factory, int width) {
+    Bitmap bitmap = memoryCache.get(uri);
+    if (bitmap != null) return bitmap;
+
+    File file = new File(diskDir, fileName(uri));
+    if (file.exists()) {
+      bitmap = BitmapFactory.decodeFile(file.getPath());
+      //noinspection ResultOfMethodCallIgnored
+      if (bitmap != null) file.setLastModified(System.currentTimeMillis());
+    }
+
+    if (bitmap == null) {
+      bitmap = extract(uri, factory, width);
+      if (bitmap == null) return null;
+      store(file, bitmap);
+    }
+
+    memoryCache.put(uri, bitmap);
+    return bitmap;
+  }
+
+  @Nullable private Bitmap extract(@NonNull Uri uri, @Nullable DataSource.Factory factory,
+      int width) {
+    MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+    DataSourceAdapter adapter = null;
+    try {
+      String scheme = uri.getScheme();
+      if (factory != null && Build.VERSION.SDK_INT >= 23) {
+        adapter = new DataSourceAdapter(
+            new PrioritizedDataSource.Factory(factory, priorityTaskManager, priority), uri);
+        retriever.setDataSource(adapter);
+      } else if ("http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme)) {
+        retriever.setDataSource(uri.toString(), new HashMap<String, String>());
+      } else {
+        retriever.setDataSource(context, uri);
+      }
+      Bitmap frame = retriever.getFrameAtTime(0, MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
+      if (frame == null || frame.getWidth() <= width) return frame;
+      int height = Math.max(1, frame.getHeight() * width / frame.getWidth());
+      Bitmap scaled = Bitmap.createScaledBitmap(frame, width, height, true);
+      if (scaled != frame) frame.recycle();
+      return scaled;
+    } catch (RuntimeException er) {
+      Log.w(TAG, "Failed to extract poster: " + uri, er);
+      return null;
+    } finally {
+      retriever.release();
+      if (adapter != null) adapter.closeQuietly();
+    }
+  }
+
+  private void store(@NonNull File file, @NonNull Bitmap bitmap) {
+    if (!diskDir.exists() && !diskDir.mkdirs()) return;
+    OutputStream out = null;
+    try {
+      out = new FileOutputStream(file);
+      bitmap.compress(Bitmap.CompressFormat.JPEG, 80, out);
+    } catch (IOException er) {
+      Log.w(TAG, "Failed to store poster: " + file, er);
+    } finally {
+      if (out != null) {
+        try {
+          out.close();
+        } catch (IOException ignored) {
+        }
+      }
+    }
+    trimDisk();
+  }
+
+  // Delete the least recently used files until the directory fits MAX_DISK_SIZE.
+  private void trimDisk() {
+    File[] files = diskDir.listFiles();
+    if (files == null) return;
+    long size = 0;
+    for (File file : files) {
+      size += file.length();
+    }
+    if (size <= MAX_DISK_SIZE) return;
+    Arrays.sort(files, new Comparator<File>() {
+      @Override public int compare(File o1, File o2) {
+        long diff = o1.lastModified() - o2.lastModified();
+        return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+      }
+    });
+    for (File file : files) {
+      if (size <= MAX_DISK_SIZE) break;
+      long length = file.length();
+      if (file.delete()) size -= length;
+    }
+  }
+
+  @NonNull private static String fileName(@NonNull Uri uri) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-1").digest(uri.toString().getBytes("UTF-8"));
+      StringBuilder builder = new StringBuilder(digest.length * 2);
+      for (byte b : digest) {
+        builder.append(String.format("%02x", b));
+      }
+      return builder.toString();
+    } catch (NoSuchAlgorithmException | IOException er) {
+      return Integer.toHexString(uri.hashCode());
+    }
+  }
+
+  // Let MediaMetadataRetriever read through an ExoPlayer DataSource (and so its Cache).
+  @TargetApi(23) static class DataSourceAdapter extends MediaDataSource {
+
+    @NonNull final DataSource.Factory factory;
+    @NonNull final Uri uri;
+
+    DataSource source;
+    long position = C.POSITION_UNSET;  // position of the opened source
+    long size = -1;
+
+    DataSourceAdapter(@NonNull DataSource.Factory factory, @NonNull Uri uri) {
+      this.factory = factory;
+      this.uri = uri;
+    }
+
+    @Override public int readAt(long position, byte[] buffer, int offset, int size)
+        throws IOException {
+      if (this.size >= 0 && position >= this.size) return -1;
+      if (source == null || position != this.position) {
+        // Retriever jumps around (to the moov atom for example), re-open at the new position.
+        closeQuietly();
+        source = factory.createDataSource();
+        long length = source.open(new DataSpec(uri, position, C.LENGTH_UNSET, null));
+        if (length != C.LENGTH_UNSET) this.size = position + length;
+        this.position = position;
+      }
+      int read = source.read(buffer, offset, size);
+      if (read == C.RESULT_END_OF_INPUT) return -1;
+      this.position += read;
+      return read;
+    }
+
+    @Override public long getSize() throws IOException {
+      // Open the source once to learn the length, the first read will continue from there.
+      if (size < 0 && source == null) readAt(0, new byte[0], 0, 0);
+      return size;
+    }
+
+    @Override public void close() throws IOException {
+      closeQuietly();
+    }
+
+    void closeQuietly() {
+      if (source == null) return;
+      try {
+        source.close();
+      } catch (IOException ignored) {
+      }
+      source = null;
+      position = C.POSITION_UNSET;
+    }
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2018 Nam Nguyen, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.toro.exoplayer;
+
+import android.support.annotation.NonNull;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ExoPlayer;
+import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.source.ClippingMediaSource;
+import com.google.android.exoplayer2.source.MediaPeriod;
+import com.google.android.exoplayer2.source.MediaSource;
+import com.google.android.exoplayer2.upstream.Allocator;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author eneim (2018/03/16).
+ *
+ *         Plays a window of the media through a {@link ClippingMediaSource}, if the media can be
+ *         clipped. In ExoPlayer 2.6.1, a ClippingMediaSource only takes a static media of one
+ *         period, seekable unless the window starts at 0, and the window must start before its
+ *         end: anything else (live streams, multi-period DASH, a start past the end) fails the
+ *         playback, or throws on the loading thread. So the first Timeline of the media is checked
+ *         here, and the full media is played if it can't be clipped, see {@link #isClipped()}.
+ */
+
+final class PreviewMediaSource implements MediaSource {
+
+  @NonNull private final MediaSource mediaSource;
+  private final long startUs;
+  @NonNull private final ClippingMediaSource clippingSource;
+  // Periods created through the ClippingMediaSource, to be released through it.
+  private final List<MediaPeriod> clippedPeriods = new ArrayList<>();
+
+  private Listener sourceListener;
+  private Listener clippingListener;  // the ClippingMediaSource, listening to the media.
+  // Decided by the first Timeline of the media, on the playback thread.
+  private volatile boolean refreshed;
+  private volatile boolean clipped;
+
+  PreviewMediaSource(@NonNull MediaSource mediaSource, long startUs, long endUs) {
+    this.mediaSource = mediaSource;
+    this.startUs = startUs;
+    this.clippingSource = new ClippingMediaSource(new Gate(), startUs, endUs);
+  }
+
+  /**
+   * @return true if the window is played, false if the full media is, or not known yet.
+   */
+  boolean isClipped() {
+    return refreshed && clipped;
+  }
+
+  /**
+   * @return true once the media has a Timeline, so {@link #isClipped()} is decided.
+   */
+  boolean isRefreshed() {
+    return refreshed;
+  }
+
+  // The checks of the ClippingTimeline of 2.6.1, a bit stricter: no empty window either.
+  static boolean canClip(@NonNull Timeline timeline, long startUs) {
+    if (timeline.getWindowCount() != 1 || timeline.getPeriodCount() != 1) return false;
+    Timeline.Window window = timeline.getWindow(0, new Timeline.Window());
+    if (window.isDynamic || (startUs != 0 && !window.isSeekable)) return false;
+    return window.durationUs == C.TIME_UNSET || startUs < window.durationUs;
+  }
+
+  @Override public void prepareSource(ExoPlayer player, boolean isTopLevelSource,
+      Listener listener) {
+    this.sourceListener = listener;
+    clippingSource.prepareSource(player, false, new Listener() {
+      @Override
+      public void onSourceInfoRefreshed(MediaSource source, Timeline timeline, Object manifest) {
+        sourceListener.onSourceInfoRefreshed(PreviewMediaSource.this, timeline, manifest);
+      }
+    });
+  }
+
+  @Override public void maybeThrowSourceInfoRefreshError() throws IOException {
+    clippingSource.maybeThrowSourceInfoRefreshError();
+  }
+
+  @Override public MediaPeriod createPeriod(MediaPeriodId id, Allocator allocator) {
+    if (!clipped) return mediaSource.createPeriod(id, allocator);
+    MediaPeriod mediaPeriod = clippingSource.createPeriod(id, allocator);
+    clippedPeriods.add(mediaPeriod);
+    return mediaPeriod;
+  }
+
+  @Override public void releasePeriod(MediaPeriod mediaPeriod) {
+    if (clippedPeriods.remove(mediaPeriod)) {
+      clippingSource.releasePeriod(mediaPeriod);
+    } else {
+      mediaSource.releasePeriod(mediaPeriod);
+    }
+  }
+
+  @Override public void releaseSource() {
+    clippingSource.releaseSource();
+    sourceListener = null;
+  }
+
+  // Between the ClippingMediaSource and the media: only lets through the Timelines it can clip.
+  private final class Gate implements MediaSource, Listener {
+
+    @Override public void prepareSource(ExoPlayer player, boolean isTopLevelSource,
+        Listener listener) {
+      clippingListener = listener;
+      mediaSource.prepareSource(player, false, this);
+    }
+
+    @Override public void maybeThrowSourceInfoRefreshError() throws IOException {
+      mediaSource.maybeThrowSourceInfoRefreshError();
+    }
+
+    @Override public MediaPeriod createPeriod(MediaPeriodId id, Allocator allocator) {
+      return mediaSource.createPeriod(id, allocator);
+    }
+
+    @Override public void releasePeriod(MediaPeriod mediaPeriod) {
+      mediaSource.releasePeriod(mediaPeriod);
+    }
+
+    @Override public void releaseSource() {
+      mediaSource.releaseSource();
+      clippingListener = null;
+    }
+
+    @Override
+    public void onSourceInfoRefreshed(MediaSource source, Timeline timeline, Object manifest) {
+      if (!refreshed) {
+        clipped = canClip(timeline, startUs);
+        refreshed = true;
+      }
+      if (!clipped) {
+        sourceListener.onSourceInfoRefreshed(PreviewMediaSource.this, timeline, manifest);
+      } else if (canClip(timeline, startUs)) {
+        clippingListener.onSourceInfoRefreshed(this, timeline, manifest);
+      }
+      // else: the periods are clipped already, so the last clipped Timeline is kept.
+    }
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2018 Nam Nguyen, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.toro.exoplayer;
+
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.util.PriorityTaskManager;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author eneim (2018/03/09).
+ *
+ *         A DataSource that waits for its turn in the {@link ToroExo}'s {@link PriorityTaskManager}
+ *         before opening and before each read. Its priority can change while it is loading: a
+ *         {@link Playable} that starts playing raises the priority of its loads in place.
+ *
+ *         Loads at {@link C#PRIORITY_PLAYBACK} never wait. The playing Playables register that
+ *         priority while they are buffering, rather than their DataSources: a progressive load
+ *         keeps its DataSource open while the buffer is full. Meanwhile, loads at
+ *         {@link #PRIORITY_PREFETCH} (paused and warm Playables, poster extraction) are blocked
+ *         on their loading thread, and go on once the playing items have buffered enough.
+ *
+ *         Unlike ExoPlayer's PriorityDataSource, this never throws: a lower priority load only
+ *         pauses, so it doesn't end as a playback error. A waiting load sleeps until a priority is
+ *         removed from the {@link PriorityTaskManager} or its own priority changes, so those must
+ *         go through {@link #release(PriorityTaskManager, int)} and
+ *         {@link #setPriority(AtomicInteger, int)}.
+ */
+
+final class PrioritizedDataSource implements DataSource {
+
+  // Below playback, above downloads.
+  static final int PRIORITY_PREFETCH = C.PRIORITY_PLAYBACK - 1;
+  private static final int NOT_REGISTERED = Integer.MIN_VALUE;
+  // Notified when a turn may have come: a priority is removed, or a load's priority changes.
+  private static final Object TURN_LOCK = new Object();
+
+  static void setPriority(@NonNull AtomicInteger priority, int value) {
+    if (priority.getAndSet(value) != value) signal();
+  }
+
+  static void release(@NonNull PriorityTaskManager priorityTaskManager, int priority) {
+    priorityTaskManager.remove(priority);
+    signal();
+  }
+
+  private static void signal() {
+    synchronized (TURN_LOCK) {
+      TURN_LOCK.notifyAll();
+    }
+  }
+
+  @NonNull private final DataSource upstream;
+  @NonNull private final PriorityTaskManager priorityTaskManager;
+  @NonNull private final AtomicInteger priority;
+  private int registered = NOT_REGISTERED; // priority this load is registered with.
+
+  PrioritizedDataSource(@NonNull DataSource upstream,
+      @NonNull PriorityTaskManager priorityTaskManager, @NonNull AtomicInteger priority) {
+    this.upstream = upstream;
+    this.priorityTaskManager = priorityTaskManager;
+    this.priority = priority;
+  }
+
+  @Override public long open(DataSpec dataSpec) throws IOException {
+    awaitTurn();
+    return upstream.open(dataSpec);
+  }
+
+  @Override public int read(byte[] buffer, int offset, int readLength) throws IOException {
+    awaitTurn();
+    return upstream.read(buffer, offset, readLength);
+  }
+
+  @Override public Uri getUri() {
+    return upstream.getUri();
+  }
+
+  @Override public void close() throws IOException {
+    try {
+      upstream.close();
+    } finally {
+      unregister();
+    }
+  }
+
+  // Not PriorityTaskManager#proceed(int): that one would not wake up when the priority of this
+  // load is raised while waiting. Here, the turn is checked again on each signal.
+  private void awaitTurn() throws IOException {
+    try {
+      synchronized (TURN_LOCK) {
+        while (true) {
+          int current = priority.get();
+          if (current >= C.PRIORITY_PLAYBACK) {
+            unregister();
+            return;
+          }
+          if (registered != current) {
+            unregister();
+            priorityTaskManager.add(current);
+            registered = current;
+          }
+          if (priorityTaskManager.proceedNonBlocking(current)) return;
+          TURN_LOCK.wait();
+        }
+      }
+    } catch (InterruptedException er) {
+      // The Loader is cancelled.
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+  }
+
+  private void unregister() {
+    if (registered == NOT_REGISTERED) return;
+    int priority = registered;
+    registered = NOT_REGISTERED;
+    release(priorityTaskManager, priority);
+  }
+
+  static final class Factory implements DataSource.Factory {
+
+    @NonNull private final DataSource.Factory upstreamFactory;
+    @NonNull private final PriorityTaskManager priorityTaskManager;
+    @NonNull private final AtomicInteger priority;
+
+    Factory(@NonNull DataSource.Factory upstreamFactory,
+        @NonNull PriorityTaskManager priorityTaskManager, @NonNull AtomicInteger priority) {
+      this.upstreamFactory = upstreamFactory;
+      this.priorityTaskManager = priorityTaskManager;
+      this.priority = priority;
+    }
+
+    @Override public DataSource createDataSource() {
+      return new PrioritizedDataSource(upstreamFactory.createDataSource(), priorityTaskManager,
+          priority);
+    }
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2018 Nam Nguyen, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.toro.exoplayer;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import com.google.android.exoplayer2.drm.DrmInitData;
+import com.google.android.exoplayer2.drm.DrmSession;
+import com.google.android.exoplayer2.drm.DrmSessionManager;
+import com.google.android.exoplayer2.drm.ExoMediaCrypto;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author eneim (2018/03/11).
+ *
+ *         Lets all the players of an {@link ExoCreator} use the {@link DrmSessionManager} of its
+ *         {@link Config}, so Playables of the same content keys share one session and one license
+ *         request.
+ *
+ *         A DefaultDrmSessionManager binds itself to the Looper of its first session for good,
+ *         while each player acquires them on its own playback thread, which dies with the player.
+ *         Here, all sessions are acquired on the main Looper instead, which outlives every player,
+ *         and calls to the manager are serialized. A DRM thread of our own could not be quit once
+ *         idle: the delegate would reject the Looper of the next one. Only the key and provision
+ *         responses are handled on the main thread, the requests are made on a thread per session.
+ *
+ *         A released session is kept open for {@link #LINGER_MS}, so the next Playable of the same
+ *         keys, or the same item scrolled back to, starts without a license round trip.
+ *         {@link #prefetch(DrmInitData)} opens the session of an upcoming item the same way.
+ *
+ *         A DefaultDrmSessionManager of ExoPlayer 2.6.1 opens one session at a time, and hands it
+ *         out for any {@link DrmInitData} while it is open. So the sessions are told apart by the
+ *         DrmInitData they were acquired for, not by their instance: only one of them lingers,
+ *         and it is closed before a session is acquired for other keys. A session still in use
+ *         for other keys is not ours to close though: the delegate then hands it out as is, and
+ *         no session is prefetched meanwhile.
+ */
+
+final class SharedDrmSessionManager<T extends ExoMediaCrypto> implements DrmSessionManager<T> {
+
+  static final long LINGER_MS = 30000;
+
+  @NonNull private final DrmSessionManager<T> delegate;
+  // The keys of the sessions in use, one entry per acquired reference.
+  private final List<Lease<T>> leases = new ArrayList<>();
+  // The session kept open for reuse, holding one reference to it, and the keys it was open for.
+  @Nullable private DrmSession<T> lingeringSession;
+  @Nullable private DrmInitData lingeringKeys;
+  // Acquires the sessions, and runs the delayed release of the lingering one.
+  private final Handler drmHandler = new Handler(Looper.getMainLooper());
+  private final Runnable lingerTimeout = new Runnable() {
+    @Override public void run() {
+      releaseLingering();
+    }
+  };
+
+  SharedDrmSessionManager(@NonNull DrmSessionManager<T> delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override public boolean canAcquireSession(@NonNull DrmInitData drmInitData) {
+    return delegate.canAcquireSession(drmInitData);
+  }
+
+  @Override public synchronized DrmSession<T> acquireSession(Looper playbackLooper,
+      DrmInitData drmInitData) {
+    DrmSession<T> reused = unlinger(drmInitData);
+    DrmSession<T> session = delegate.acquireSession(drmHandler.getLooper(), drmInitData);
+    // The caller's reference takes over the lingering one.
+    if (reused != null) delegate.releaseSession(reused);
+    leases.add(new Lease<>(drmInitData, session));
+    return session;
+  }
+
+  @Override public synchronized void releaseSession(DrmSession<T> session) {
+    DrmInitData keys = null;
+    for (int i = leases.size() - 1; i >= 0; i--) {
+      if (leases.get(i).session == session) {
+        keys = leases.remove(i).keys;
+        break;
+      }
+    }
+    // A failed session must not be handed to the next Playable.
+    if (keys == null || keys.equals(lingeringKeys)
+        || session.getState() == DrmSession.STATE_ERROR) {
+      delegate.releaseSession(session);
+      return;
+    }
+    linger(keys, session);
+  }
+
+  /**
+   * Open the session of an upcoming item ahead of its playback, so that its keys are ready.
+   */
+  synchronized void prefetch(@NonNull DrmInitData drmInitData) {
+    if (drmInitData.equals(lingeringKeys) || !delegate.canAcquireSession(drmInitData)) return;
+    // The delegate would hand out the session in use, opened for other keys.
+    for (Lease<T> lease : leases) {
+      if (!lease.keys.equals(drmInitData)) return;
+    }
+    releaseLingering();
+    linger(drmInitData, delegate.acquireSession(drmHandler.getLooper(), drmInitData));
+  }
+
+  /**
+   * Close the session kept open for reuse, if any.
+   */
+  synchronized void releaseLingering() {
+    DrmSession<T> session = unlinger(lingeringKeys);
+    if (session != null) delegate.releaseSession(session);
+  }
+
+  private void linger(@NonNull DrmInitData keys, @NonNull DrmSession<T> session) {
+    releaseLingering();
+    lingeringKeys = keys;
+    lingeringSession = session;
+    drmHandler.postDelayed(lingerTimeout, LINGER_MS);
+  }
+
+  // Take the lingering session if it was open for these keys, or else close it.
+  @Nullable private DrmSession<T> unlinger(@Nullable DrmInitData keys) {
+    DrmSession<T> session = lingeringSession;
+    if (session == null) return null;
+    boolean matched = lingeringKeys.equals(keys);
+    drmHandler.removeCallbacks(lingerTimeout);
+    lingeringSession = null;
+    lingeringKeys = null;
+    if (matched) return session;
+    delegate.releaseSession(session);
+    return null;
+  }
+
+  private static final class Lease<T extends ExoMediaCrypto> {
+
+    @NonNull final DrmInitData keys;
+    @NonNull final DrmSession<T> session;
+
+    Lease(@NonNull DrmInitData keys, @NonNull DrmSession<T> session) {
+      this.keys = keys;
+      this.session = session;
+    }
+  }
+}
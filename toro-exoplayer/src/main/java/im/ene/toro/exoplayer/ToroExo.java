@@ -18,17 +18,27 @@ package im.ene.toro.exoplayer;
 
 import android.annotation.SuppressLint;
 import android.app.Application;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.StringRes;
 import android.support.v4.util.Pools;
 import com.google.android.exoplayer2.SimpleExoPlayer;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSourceFactory;
+import com.google.android.exoplayer2.util.PriorityTaskManager;
 import java.net.CookieHandler;
 import java.net.CookieManager;
 import java.net.CookiePolicy;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static com.google.android.exoplayer2.util.Util.getUserAgent;
 import static im.ene.toro.exoplayer.BuildConfig.LIB_NAME;
@@ -40,12 +50,19 @@ import static java.lang.Runtime.getRuntime;
  *         Global helper class to manage {@link ExoCreator} and {@link SimpleExoPlayer} instances.
  *
  *         In this setup, {@link ExoCreator} and SimpleExoPlayer pools are cached. A {@link Config}
- *         is a key for each {@link ExoCreator}.
+ *         is a key for each {@link ExoCreator}: Configs built with the same options share the same
+ *         {@link ExoCreator}, player Pool and DataSource factories.
  *
  *         ExoCreator creator = ToroExo.with(this).getDefaultCreator();
  *         SimpleExoPlayer player = creator.createPlayer();
  *         MediaSource source = creator.createMediaSource(videoUri);
  *         // next: do stuff with SimpleExoPlayer instance and MediaSource instance.
+ *
+ *         Threading: {@link ExoCreator}s, Pools and DataSource factories can be obtained from any
+ *         thread, so are the MediaSources built by {@link DefaultExoCreator}. A SimpleExoPlayer is
+ *         bound to the Looper of the thread creating it, so {@link #requestPlayer(ExoCreator)}
+ *         must be called from the main thread. {@link #releasePlayer(ExoCreator,
+ *         SimpleExoPlayer)} can be called from any thread.
  */
 
 public final class ToroExo {
@@ -66,14 +83,50 @@ public final class ToroExo {
   final Config defaultConfig = new Config.Builder().build();
 
   @NonNull private final Context context;  // Application context
-  @NonNull private final Map<Config, ExoCreator> creators;
-  @NonNull private final Map<ExoCreator, Pools.Pool<SimpleExoPlayer>> playerPools;
+  @NonNull private final ConcurrentMap<Config, ExoCreator> creators;
+  @NonNull private final ConcurrentMap<ExoCreator, Pools.Pool<SimpleExoPlayer>> playerPools;
+  @NonNull final PlayableCache warmPlayables;
+  // Lets the loads of playing items go before the others, see PrioritizedDataSource.
+  @NonNull final PriorityTaskManager priorityTaskManager = new PriorityTaskManager();
+  @NonNull private final PosterLoader posterLoader;
+  @NonNull final FramePool framePool = new FramePool();
+  // Clips looped from memory, see LoopingMediaSourceBuilder.
+  @NonNull final ClipCache clipCache = new ClipCache(ClipCache.DEFAULT_MAX_SIZE);
+  // Stateless DataSource factories, shared by ExoCreators using the same meter and cache.
+  @NonNull private final ConcurrentMap<List<Object>, DataSource.Factory> dataSourceFactories;
 
   private ToroExo(Context context) {
     this.context = context.getApplicationContext();
     this.appName = getUserAgent(context.getApplicationContext(), LIB_NAME);
-    this.playerPools = new HashMap<>();
-    this.creators = new HashMap<>();
+    this.playerPools = new ConcurrentHashMap<>();
+    this.creators = new ConcurrentHashMap<>();
+    this.dataSourceFactories = new ConcurrentHashMap<>();
+    this.warmPlayables = new PlayableCache(PlayableCache.DEFAULT_MAX_SIZE);
+    this.posterLoader = new PosterLoader(this.context, priorityTaskManager);
+    // Seed the default meter with the estimates of previous launches.
+    Config.Builder.DEFAULT_BANDWIDTH_METER.attach(this.context);
+    // Warm Playables hold decoders and buffers, drop them as soon as memory is getting low.
+    this.context.registerComponentCallbacks(new ComponentCallbacks2() {
+      @Override public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+          warmPlayables.evictAll();
+          posterLoader.evictMemory();
+          framePool.clear();
+          clipCache.evictAll();
+        }
+      }
+
+      @Override public void onConfigurationChanged(Configuration newConfig) {
+        // no-ops
+      }
+
+      @Override public void onLowMemory() {
+        warmPlayables.evictAll();
+        posterLoader.evictMemory();
+        framePool.clear();
+        clipCache.evictAll();
+      }
+    });
 
     // Adapt from ExoPlayer demo app. Start this on demand.
     CookieManager cookieManager = new CookieManager();
@@ -86,8 +139,9 @@ public final class ToroExo {
   public final ExoCreator getCreator(Config config) {
     ExoCreator creator = this.creators.get(config);
     if (creator == null) {
-      creator = new DefaultExoCreator(context, config);
-      this.creators.put(config, creator);
+      ExoCreator newCreator = new DefaultExoCreator(context, config);
+      creator = this.creators.putIfAbsent(config, newCreator);
+      if (creator == null) creator = newCreator;
     }
 
     return creator;
@@ -101,11 +155,16 @@ public final class ToroExo {
    * Request an instance of {@link SimpleExoPlayer}. It can be an existing instance cached by Pool
    * or new one.
    *
+   * Must be called from the main thread, see {@link ToroExo}.
+   *
    * @param creator the {@link ExoCreator} that is scoped to the {@link SimpleExoPlayer} config.
    * @return an usable {@link SimpleExoPlayer} instance.
    */
   @SuppressWarnings("WeakerAccess") @NonNull  //
   public final SimpleExoPlayer requestPlayer(ExoCreator creator) {
+    if (Looper.myLooper() != Looper.getMainLooper()) {
+      throw new IllegalStateException("SimpleExoPlayer must be requested from the main thread.");
+    }
     //noinspection UnusedAssignment
     SimpleExoPlayer player = getPool(creator).acquire();
     if (player == null) {
@@ -125,11 +184,46 @@ public final class ToroExo {
     return getPool(creator).release(player);
   }
 
+  /**
+   * Set the maximum number of recently released {@link Playable}s to keep warm, so that scrolling
+   * back to their items resumes without preparing again. Default is 2. Non-positive value disables
+   * this behaviour. The warm {@link Playable}s are dropped when the system is low on memory.
+   *
+   * @param count maximum number of warm {@link Playable}s.
+   */
+  public final void setMaxWarmPlayables(int count) {
+    this.warmPlayables.resize(count);
+  }
+
+  /**
+   * Set the memory, in bytes, shared by the clips that loop from memory (see
+   * {@link LoopingMediaSourceBuilder}). Default is 1/8 of the heap, up to 16MB. Non-positive value
+   * disables this behaviour. The clips are dropped when the system is low on memory.
+   *
+   * @param size maximum size of the looping clips in memory, in bytes.
+   */
+  public final void setMaxClipCacheSize(int size) {
+    this.clipCache.resize(size);
+  }
+
+  /**
+   * @return the {@link PosterLoader} to show the first frame of videos before they are played.
+   */
+  @NonNull public final PosterLoader getPosterLoader() {
+    return posterLoader;
+  }
+
   /**
    * Release and clear all current cached ExoPlayer instances. This should be called when
    * client Application runs out of memory ({@link Application#onTrimMemory(int)} for example).
+   * Must be called from the main thread.
    */
   public final void cleanUp() {
+    // Warm Playables and shared players go back to the Pools, so release them first.
+    warmPlayables.evictAll();
+    for (ExoCreator creator : creators.values()) {
+      if (creator instanceof DefaultExoCreator) ((DefaultExoCreator) creator).cleanUp();
+    }
     for (Pools.Pool<SimpleExoPlayer> pool : playerPools.values()) {
       SimpleExoPlayer item;
       while ((item = pool.acquire()) != null) {
@@ -142,13 +236,27 @@ public final class ToroExo {
   private Pools.Pool<SimpleExoPlayer> getPool(ExoCreator creator) {
     Pools.Pool<SimpleExoPlayer> pool = playerPools.get(creator);
     if (pool == null) {
-      pool = new Pools.SimplePool<>(MAX_POOL_SIZE);
-      playerPools.put(creator, pool);
+      Pools.Pool<SimpleExoPlayer> newPool = new Pools.SynchronizedPool<>(MAX_POOL_SIZE);
+      pool = playerPools.putIfAbsent(creator, newPool);
+      if (pool == null) pool = newPool;
     }
 
     return pool;
   }
 
+  DataSource.Factory getDataSourceFactory(@Nullable BaseMeter meter, @Nullable Cache cache) {
+    List<Object> key = Arrays.asList(meter, cache);
+    DataSource.Factory factory = dataSourceFactories.get(key);
+    if (factory == null) {
+      //noinspection unchecked
+      factory = new DefaultDataSourceFactory(context, appName, meter);
+      if (cache != null) factory = new CacheDataSourceFactory(cache, factory);
+      DataSource.Factory existing = dataSourceFactories.putIfAbsent(key, factory);
+      if (existing != null) factory = existing;
+    }
+    return factory;
+  }
+
   String getString(@StringRes int resId, @Nullable Object... params) {
     return params == null ? this.context.getString(resId) : this.context.getString(resId, params);
   }
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2018 Nam Nguyen, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.toro.exoplayer;
+
+import android.net.Uri;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author eneim (2018/03/15).
+ *
+ *         {@link ClipDataSource} over a fake upstream: which reads end up in the
+ *         {@link ClipCache}, and how a cached clip is served back.
+ */
+@RunWith(RobolectricTestRunner.class) @Config(manifest = Config.NONE, sdk = 26)  //
+public class ClipDataSourceTest {
+
+  private static final int MAX_CLIP_BYTES = 1000;
+  private static final int CHUNK_SIZE = 128;
+
+  private final Uri uri = Uri.parse("http://toro.test/clip.mp4");
+  private ClipCache cache;
+
+  @Before public void setUp() {
+    cache = new ClipCache(4 * MAX_CLIP_BYTES);
+  }
+
+  @Test public void knownLength_isRecordedAndServedFromMemory() throws IOException {
+    byte[] content = content(MAX_CLIP_BYTES);
+    FakeUpstream upstream = new FakeUpstream(content, true);
+    assertArrayEquals(content, readAll(newSource(upstream), new DataSpec(uri)));
+    assertArrayEquals(content, cache.get(uri.toString()));
+
+    // A later loop: no I/O at all.
+    FakeUpstream next = new FakeUpstream(content, true);
+    ClipDataSource source = newSource(next);
+    assertEquals(content.length, source.open(new DataSpec(uri)));
+    assertArrayEquals(content, readOpened(source));
+    source.close();
+    assertEquals(0, next.opens);
+    assertEquals(0, next.closes);
+  }
+
+  @Test public void unknownLength_isRecordedAtTheEnd() throws IOException {
+    byte[] content = content(MAX_CLIP_BYTES - 1);
+    ClipDataSource source = newSource(new FakeUpstream(content, false));
+    assertEquals(C.LENGTH_UNSET, source.open(new DataSpec(uri)));
+    byte[] buffer = new byte[content.length];
+    int read = 0;
+    while (read < content.length) {
+      read += source.read(buffer, read, content.length - read);
+    }
+    assertNull(cache.get(uri.toString()));  // not known to be the end yet.
+    assertEquals(C.RESULT_END_OF_INPUT, source.read(buffer, 0, 1));
+    assertArrayEquals(content, cache.get(uri.toString()));
+    source.close();
+  }
+
+  @Test public void knownLength_overLimit_isNotRecorded() throws IOException {
+    byte[] content = content(MAX_CLIP_BYTES + 1);
+    assertArrayEquals(content, readAll(newSource(new FakeUpstream(content, true)),
+        new DataSpec(uri)));
+    assertNull(cache.get(uri.toString()));
+  }
+
+  @Test public void unknownLength_overLimit_abortsRecording() throws IOException {
+    byte[] content = content(MAX_CLIP_BYTES * 3);
+    // Still read through as is.
+    assertArrayEquals(content, readAll(newSource(new FakeUpstream(content, false)),
+        new DataSpec(uri)));
+    assertNull(cache.get(uri.toString()));
+  }
+
+  @Test public void shorterThanAnnounced_isNotRecorded() throws IOException {
+    byte[] content = content(MAX_CLIP_BYTES / 2);
+    FakeUpstream upstream = new FakeUpstream(content, true);
+    upstream.announcedLength = content.length + 10;  // the connection drops early.
+    readAll(newSource(upstream), new DataSpec(uri));
+    assertNull(cache.get(uri.toString()));
+  }
+
+  @Test public void closedBeforeTheEnd_isNotRecorded() throws IOException {
+    byte[] content = content(MAX_CLIP_BYTES);
+    FakeUpstream upstream = new FakeUpstream(content, false);
+    ClipDataSource source = newSource(upstream);
+    source.open(new DataSpec(uri));
+    source.read(new byte[CHUNK_SIZE], 0, CHUNK_SIZE);
+    source.close();
+    assertEquals(1, upstream.closes);
+    assertNull(cache.get(uri.toString()));
+
+    // Nor completed by a later read of the same source.
+    source.open(new DataSpec(uri, CHUNK_SIZE, C.LENGTH_UNSET, null));
+    readOpened(source);
+    source.close();
+    assertNull(cache.get(uri.toString()));
+  }
+
+  @Test public void partialRead_isNotRecorded() throws IOException {
+    byte[] content = content(MAX_CLIP_BYTES);
+    readAll(newSource(new FakeUpstream(content, true)),
+        new DataSpec(uri, 10, C.LENGTH_UNSET, null));
+    readAll(newSource(new FakeUpstream(content, true)), new DataSpec(uri, 0, 100, null));
+    assertNull(cache.get(uri.toString()));
+  }
+
+  @Test public void cachedClip_opensAtOffset() throws IOException {
+    byte[] content = content(MAX_CLIP_BYTES);
+    readAll(newSource(new FakeUpstream(content, true)), new DataSpec(uri));
+    FakeUpstream upstream = new FakeUpstream(content, true);
+
+    byte[] tail = readAll(newSource(upstream), new DataSpec(uri, 300, C.LENGTH_UNSET, null));
+    assertArrayEquals(Arrays.copyOfRange(content, 300, content.length), tail);
+
+    ClipDataSource source = newSource(upstream);
+    assertEquals(200, source.open(new DataSpec(uri, 300, 200, null)));
+    assertArrayEquals(Arrays.copyOfRange(content, 300, 500), readOpened(source));
+    source.close();
+
+    source = newSource(upstream);
+    assertEquals(0, source.open(new DataSpec(uri, content.length, C.LENGTH_UNSET, null)));
+    assertEquals(C.RESULT_END_OF_INPUT, source.read(new byte[1], 0, 1));
+    source.close();
+    assertEquals(0, upstream.opens);
+  }
+
+  @Test(expected = EOFException.class) public void cachedClip_openPastTheEnd_throws()
+      throws IOException {
+    byte[] content = content(MAX_CLIP_BYTES);
+    readAll(newSource(new FakeUpstream(content, true)), new DataSpec(uri));
+    newSource(new FakeUpstream(content, true)).open(
+        new DataSpec(uri, content.length + 1, C.LENGTH_UNSET, null));
+  }
+
+  @Test public void customKey_isTheCacheKey() throws IOException {
+    byte[] content = content(100);
+    readAll(newSource(new FakeUpstream(content, true)),
+        new DataSpec(uri, 0, C.LENGTH_UNSET, "clip-key"));
+    assertNotNull(cache.get("clip-key"));
+    assertNull(cache.get(uri.toString()));
+  }
+
+  @Test public void cache_keepsWithinItsSize() {
+    cache.put("a", new byte[3 * MAX_CLIP_BYTES]);
+    cache.put("b", new byte[MAX_CLIP_BYTES]);
+    cache.put("c", new byte[MAX_CLIP_BYTES]);  // over the size: the least recent one goes.
+    assertNull(cache.get("a"));
+    assertNotNull(cache.get("b"));
+    assertNotNull(cache.get("c"));
+
+    cache.put("huge", new byte[4 * MAX_CLIP_BYTES + 1]);  // larger than the whole cache.
+    assertNull(cache.get("huge"));
+    assertNotNull(cache.get("b"));
+
+    cache.resize(0);  // disabled.
+    assertNull(cache.get("b"));
+    cache.put("d", new byte[1]);
+    assertNull(cache.get("d"));
+  }
+
+  private ClipDataSource newSource(DataSource upstream) {
+    return new ClipDataSource(upstream, cache, MAX_CLIP_BYTES);
+  }
+
+  private static byte[] content(int length) {
+    byte[] content = new byte[length];
+    for (int i = 0; i < length; i++) content[i] = (byte) (i * 31 + 7);
+    return content;
+  }
+
+  private static byte[] readAll(DataSource source, DataSpec dataSpec) throws IOException {
+    source.open(dataSpec);
+    try {
+      return readOpened(source);
+    } finally {
+      source.close();
+    }
+  }
+
+  private static byte[] readOpened(DataSource source) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    byte[] buffer = new byte[CHUNK_SIZE];
+    int count;
+    while ((count = source.read(buffer, 0, buffer.length)) != C.RESULT_END_OF_INPUT) {
+      output.write(buffer, 0, count);
+    }
+    return output.toByteArray();
+  }
+
+  // Serves the content in chunks of at most CHUNK_SIZE / 2 bytes, like a network would.
+  static class FakeUpstream implements DataSource {
+
+    final byte[] content;
+    long announcedLength;
+    int opens;
+    int closes;
+    private Uri uri;
+    private int position;
+    private int end;
+
+    FakeUpstream(byte[] content, boolean lengthKnown) {
+      this.content = content;
+      this.announcedLength = lengthKnown ? content.length : C.LENGTH_UNSET;
+    }
+
+    @Override public long open(DataSpec dataSpec) throws IOException {
+      opens++;
+      uri = dataSpec.uri;
+      position = (int) dataSpec.position;
+      end = dataSpec.length != C.LENGTH_UNSET ? position + (int) dataSpec.length : content.length;
+      if (dataSpec.length != C.LENGTH_UNSET) return dataSpec.length;
+      return announcedLength != C.LENGTH_UNSET ? announcedLength - position : C.LENGTH_UNSET;
+    }
+
+    @Override public int read(byte[] buffer, int offset, int readLength) throws IOException {
+      if (position == end) return C.RESULT_END_OF_INPUT;
+      int count = Math.min(Math.min(readLength, CHUNK_SIZE / 2), end - position);
+      System.arraycopy(content, position, buffer, offset, count);
+      position += count;
+      return count;
+    }
+
+    @Override public Uri getUri() {
+      return uri;
+    }
+
+    @Override public void close() throws IOException {
+      closes++;
+      uri = null;
+    }
+  }
+}
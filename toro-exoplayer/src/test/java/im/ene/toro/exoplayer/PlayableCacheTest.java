@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2018 Nam Nguyen, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.toro.exoplayer;
+
+import android.net.Uri;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author eneim (2018/03/16).
+ *
+ *         Which warm {@link Playable}s {@link PlayableCache} gives back, and which ones it
+ *         releases.
+ */
+@RunWith(RobolectricTestRunner.class) @Config(manifest = Config.NONE, sdk = 26)  //
+public class PlayableCacheTest {
+
+  private final Uri uri = Uri.parse("http://toro.test/video.mp4");
+  private final List<Playable> released = new ArrayList<>();
+  private final ExoCreator creator = newProxy(ExoCreator.class);
+  private PlayableCache cache;
+
+  @Before public void setUp() {
+    cache = new PlayableCache(2);
+  }
+
+  @Test public void take_sameUriAndCreator_givesItBack() {
+    Playable playable = newPlayable();
+    cache.put("key", uri, creator, playable);
+    assertSame(playable, cache.take("key", uri, creator));
+    assertTrue(released.isEmpty());
+    assertNull(cache.take("key", uri, creator));  // taken out.
+  }
+
+  @Test public void take_otherCreator_releasesIt() {
+    Playable playable = newPlayable();
+    cache.put("key", uri, creator, playable);
+    assertNull(cache.take("key", uri, newProxy(ExoCreator.class)));
+    assertEquals(1, released.size());
+    assertSame(playable, released.get(0));
+    assertNull(cache.take("key", uri, creator));
+  }
+
+  @Test public void take_otherUri_releasesIt() {
+    cache.put("key", uri, creator, newPlayable());
+    assertNull(cache.take("key", Uri.parse("http://toro.test/other.mp4"), creator));
+    assertEquals(1, released.size());
+  }
+
+  @Test public void put_overSize_releasesTheOldest() {
+    Playable oldest = newPlayable();
+    cache.put("a", uri, creator, oldest);
+    cache.put("b", uri, creator, newPlayable());
+    cache.put("c", uri, creator, newPlayable());
+    assertEquals(1, released.size());
+    assertSame(oldest, released.get(0));
+  }
+
+  @Test public void resize_disabled_releasesEverything() {
+    cache.put("a", uri, creator, newPlayable());
+    cache.resize(0);
+    assertEquals(1, released.size());
+    cache.put("b", uri, creator, newPlayable());  // released right away.
+    assertEquals(2, released.size());
+    assertNull(cache.take("b", uri, creator));
+  }
+
+  private Playable newPlayable() {
+    return (Playable) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class[] { Playable.class }, new InvocationHandler() {
+          @Override public Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getName().equals("release")) released.add((Playable) proxy);
+            return defaultValue(proxy, method, args);
+          }
+        });
+  }
+
+  private static <T> T newProxy(Class<T> type) {
+    return type.cast(Proxy.newProxyInstance(PlayableCacheTest.class.getClassLoader(),
+        new Class[] { type }, new InvocationHandler() {
+          @Override public Object invoke(Object proxy, Method method, Object[] args) {
+            return defaultValue(proxy, method, args);
+          }
+        }));
+  }
+
+  private static Object defaultValue(Object proxy, Method method, Object[] args) {
+    if (method.getName().equals("equals")) return proxy == args[0];
+    if (method.getName().equals("hashCode")) return System.identityHashCode(proxy);
+    Class<?> type = method.getReturnType();
+    if (type == boolean.class) return false;
+    if (type == int.class) return 0;
+    if (type == long.class) return 0L;
+    if (type == float.class) return 0f;
+    return null;
+  }
+}
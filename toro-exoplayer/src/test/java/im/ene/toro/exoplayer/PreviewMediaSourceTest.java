@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2018 Nam Nguyen, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.toro.exoplayer;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ExoPlayer;
+import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.source.ClippingMediaPeriod;
+import com.google.android.exoplayer2.source.MediaPeriod;
+import com.google.android.exoplayer2.source.MediaSource;
+import com.google.android.exoplayer2.upstream.Allocator;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author eneim (2018/03/16).
+ *
+ *         {@link PreviewMediaSource} over a fake media: the window is played if the media can be
+ *         clipped, the full media otherwise, and the playback never fails because of it.
+ */
+@RunWith(RobolectricTestRunner.class) @Config(manifest = Config.NONE, sdk = 26)  //
+public class PreviewMediaSourceTest {
+
+  private static final long START_US = C.msToUs(5000);
+  private static final long END_US = C.msToUs(15000);
+
+  private FakeMediaSource media;
+  private PreviewMediaSource source;
+  private final List<Timeline> timelines = new ArrayList<>();
+
+  @Before public void setUp() {
+    media = new FakeMediaSource();
+    source = new PreviewMediaSource(media, START_US, END_US);
+    source.prepareSource(null, true, new MediaSource.Listener() {
+      @Override
+      public void onSourceInfoRefreshed(MediaSource mediaSource, Timeline timeline,
+          Object manifest) {
+        assertSame(source, mediaSource);
+        timelines.add(timeline);
+      }
+    });
+    assertFalse(source.isRefreshed());
+  }
+
+  @Test public void staticMedia_isClipped() {
+    media.refresh(new FakeTimeline(1, 1, C.msToUs(60000), true, false));
+    assertTrue(source.isClipped());
+    assertEquals(1, timelines.size());
+    assertEquals(END_US - START_US, window(timelines.get(0)).durationUs);
+
+    MediaPeriod period = source.createPeriod(new MediaSource.MediaPeriodId(0), null);
+    assertTrue(period instanceof ClippingMediaPeriod);
+    source.releasePeriod(period);
+    assertEquals(1, media.created.size());
+    assertEquals(media.created, media.released);
+  }
+
+  @Test public void shorterMedia_isClippedAtItsEnd() {
+    media.refresh(new FakeTimeline(1, 1, C.msToUs(10000), true, false));
+    assertTrue(source.isClipped());
+    assertEquals(C.msToUs(10000) - START_US, window(timelines.get(0)).durationUs);
+  }
+
+  @Test public void unknownDuration_isClipped() {
+    media.refresh(new FakeTimeline(1, 1, C.TIME_UNSET, true, false));
+    assertTrue(source.isClipped());
+  }
+
+  @Test public void liveMedia_isPlayedInFull() {
+    assertPlayedInFull(new FakeTimeline(1, 1, C.msToUs(60000), true, true));
+  }
+
+  @Test public void multiPeriodMedia_isPlayedInFull() {
+    assertPlayedInFull(new FakeTimeline(1, 2, C.msToUs(60000), true, false));
+  }
+
+  @Test public void unseekableMedia_isPlayedInFull() {
+    assertPlayedInFull(new FakeTimeline(1, 1, C.msToUs(60000), false, false));
+  }
+
+  @Test public void startAtTheEnd_isPlayedInFull() {
+    assertPlayedInFull(new FakeTimeline(1, 1, START_US, true, false));
+    assertPlayedInFull(new FakeTimeline(1, 1, START_US / 2, true, false));
+  }
+
+  @Test public void startAtZero_unseekableMedia_isClipped() {
+    PreviewMediaSource fromStart = new PreviewMediaSource(media, 0, END_US);
+    fromStart.prepareSource(null, true, new MediaSource.Listener() {
+      @Override
+      public void onSourceInfoRefreshed(MediaSource mediaSource, Timeline timeline,
+          Object manifest) {
+        timelines.add(timeline);
+      }
+    });
+    media.refresh(new FakeTimeline(1, 1, C.msToUs(60000), false, false));
+    assertTrue(fromStart.isClipped());
+  }
+
+  @Test public void laterTimeline_cannotBeClipped_isDropped() {
+    media.refresh(new FakeTimeline(1, 1, C.msToUs(60000), true, false));
+    media.refresh(new FakeTimeline(1, 1, C.msToUs(60000), true, true));
+    assertTrue(source.isClipped());
+    assertEquals(1, timelines.size());
+  }
+
+  @Test public void laterTimeline_playedInFull_staysInFull() {
+    media.refresh(new FakeTimeline(1, 1, C.msToUs(60000), true, true));
+    Timeline next = new FakeTimeline(1, 1, C.msToUs(60000), true, false);
+    media.refresh(next);
+    assertFalse(source.isClipped());
+    assertSame(next, timelines.get(1));
+  }
+
+  @Test public void releaseSource_releasesTheMedia() {
+    source.releaseSource();
+    assertTrue(media.releasedSource);
+  }
+
+  private void assertPlayedInFull(Timeline timeline) {
+    setUp();
+    media.refresh(timeline);
+    assertTrue(source.isRefreshed());
+    assertFalse(source.isClipped());
+    assertSame(timeline, timelines.get(timelines.size() - 1));
+
+    MediaPeriod period = source.createPeriod(new MediaSource.MediaPeriodId(0), null);
+    assertSame(media.created.get(media.created.size() - 1), period);
+    source.releasePeriod(period);
+    assertSame(period, media.released.get(media.released.size() - 1));
+  }
+
+  private static Timeline.Window window(Timeline timeline) {
+    return timeline.getWindow(0, new Timeline.Window());
+  }
+
+  static class FakeMediaSource implements MediaSource {
+
+    final List<MediaPeriod> created = new ArrayList<>();
+    final List<MediaPeriod> released = new ArrayList<>();
+    Listener listener;
+    boolean releasedSource;
+
+    void refresh(Timeline timeline) {
+      listener.onSourceInfoRefreshed(this, timeline, null);
+    }
+
+    @Override public void prepareSource(ExoPlayer player, boolean isTopLevelSource,
+        Listener listener) {
+      this.listener = listener;
+    }
+
+    @Override public void maybeThrowSourceInfoRefreshError() {
+      // no-ops
+    }
+
+    @Override public MediaPeriod createPeriod(MediaPeriodId id, Allocator allocator) {
+      MediaPeriod period = (MediaPeriod) Proxy.newProxyInstance(getClass().getClassLoader(),
+          new Class[] { MediaPeriod.class }, new InvocationHandler() {
+            @Override public Object invoke(Object proxy, Method method, Object[] args) {
+              return method.getName().equals("equals") ? proxy == args[0] : null;
+            }
+          });
+      created.add(period);
+      return period;
+    }
+
+    @Override public void releasePeriod(MediaPeriod mediaPeriod) {
+      released.add(mediaPeriod);
+    }
+
+    @Override public void releaseSource() {
+      releasedSource = true;
+    }
+  }
+
+  // Windows of the same duration, each one of the given number of periods.
+  static class FakeTimeline extends Timeline {
+
+    final int windowCount;
+    final int periodsPerWindow;
+    final long windowDurationUs;
+    final boolean seekable;
+    final boolean dynamic;
+
+    FakeTimeline(int windowCount, int periodsPerWindow, long windowDurationUs, boolean seekable,
+        boolean dynamic) {
+      this.windowCount = windowCount;
+      this.periodsPerWindow = periodsPerWindow;
+      this.windowDurationUs = windowDurationUs;
+      this.seekable = seekable;
+      this.dynamic = dynamic;
+    }
+
+    @Override public int getWindowCount() {
+      return windowCount;
+    }
+
+    @Override public Window getWindow(int windowIndex, Window window, boolean setIds,
+        long defaultPositionProjectionUs) {
+      window.isSeekable = seekable;
+      window.isDynamic = dynamic;
+      window.defaultPositionUs = 0;
+      window.durationUs = windowDurationUs;
+      window.firstPeriodIndex = windowIndex * periodsPerWindow;
+      window.lastPeriodIndex = window.firstPeriodIndex + periodsPerWindow - 1;
+      window.positionInFirstPeriodUs = 0;
+      return window;
+    }
+
+    @Override public int getPeriodCount() {
+      return windowCount * periodsPerWindow;
+    }
+
+    @Override public Period getPeriod(int periodIndex, Period period, boolean setIds) {
+      long durationUs = windowDurationUs == C.TIME_UNSET || periodsPerWindow > 1 ? C.TIME_UNSET
+          : windowDurationUs;
+      return period.set(periodIndex, periodIndex, periodIndex / periodsPerWindow, durationUs, 0);
+    }
+
+    @Override public int getIndexOfPeriod(Object uid) {
+      return uid instanceof Integer ? (Integer) uid : C.INDEX_UNSET;
+    }
+  }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2018 Nam Nguyen, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.toro.exoplayer;
+
+import android.net.Uri;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultHttpDataSource;
+import com.google.android.exoplayer2.util.PriorityTaskManager;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static im.ene.toro.exoplayer.PrioritizedDataSource.PRIORITY_PREFETCH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author eneim (2018/03/14).
+ *
+ *         {@link PrioritizedDataSource} reading from a local server that sends its response
+ *         slowly, like a real network. A prefetch load must wait while a playing item buffers, and
+ *         go on as soon as it is its turn again, or as soon as its own priority is raised.
+ */
+@RunWith(RobolectricTestRunner.class) @Config(manifest = Config.NONE, sdk = 26)  //
+public class PrioritizedDataSourceTest {
+
+  private static final int CONTENT_LENGTH = 64 * 1024;
+  private static final int CHUNK_SIZE = 1024;
+  private static final long CHUNK_DELAY_MS = 2;
+  private static final long TIMEOUT_MS = 5000;
+  // Long enough for a load that should be waiting to have read something if it didn't wait.
+  private static final long BLOCKED_MS = 300;
+
+  private ThrottledServer server;
+  private PriorityTaskManager priorityTaskManager;
+
+  @Before public void setUp() throws IOException {
+    server = new ThrottledServer();
+    server.start();
+    priorityTaskManager = new PriorityTaskManager();
+  }
+
+  @After public void tearDown() throws IOException {
+    server.stop();
+  }
+
+  @Test public void playbackLoad_neverWaits() throws Exception {
+    priorityTaskManager.add(C.PRIORITY_PLAYBACK);  // another item is buffering.
+    PrioritizedDataSource source = newSource(new AtomicInteger(C.PRIORITY_PLAYBACK));
+    assertEquals(CONTENT_LENGTH, readAll(source));
+    source.close();
+    PrioritizedDataSource.release(priorityTaskManager, C.PRIORITY_PLAYBACK);
+    assertTrue(isIdle());
+  }
+
+  @Test public void prefetchLoad_waitsForBufferingItem() throws Exception {
+    PrioritizedDataSource source = newSource(new AtomicInteger(PRIORITY_PREFETCH));
+    byte[] buffer = new byte[CHUNK_SIZE];
+    source.open(new DataSpec(server.uri));
+    int first = source.read(buffer, 0, buffer.length);
+    assertTrue(first > 0);
+
+    // The playing item starts buffering: the next read must wait.
+    priorityTaskManager.add(C.PRIORITY_PLAYBACK);
+    BackgroundRead read = new BackgroundRead(source);
+    read.start();
+    assertFalse(read.done.await(BLOCKED_MS, TimeUnit.MILLISECONDS));
+
+    // It is done buffering: the read goes on right away.
+    PrioritizedDataSource.release(priorityTaskManager, C.PRIORITY_PLAYBACK);
+    assertTrue(read.done.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    assertNull(read.error.get());
+    assertEquals(CONTENT_LENGTH - first, read.length.get());
+
+    source.close();
+    assertTrue(isIdle());
+  }
+
+  @Test public void prefetchLoad_goesOnWhenItsPriorityIsRaised() throws Exception {
+    AtomicInteger priority = new AtomicInteger(PRIORITY_PREFETCH);
+    PrioritizedDataSource source = newSource(priority);
+    priorityTaskManager.add(C.PRIORITY_PLAYBACK);
+
+    BackgroundRead read = new BackgroundRead(source, new DataSpec(server.uri));
+    read.start();
+    assertFalse(read.done.await(BLOCKED_MS, TimeUnit.MILLISECONDS));
+    assertEquals(0, read.length.get());
+
+    // The item of this load starts playing.
+    PrioritizedDataSource.setPriority(priority, C.PRIORITY_PLAYBACK);
+    assertTrue(read.done.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    assertNull(read.error.get());
+    assertEquals(CONTENT_LENGTH, read.length.get());
+
+    source.close();
+    PrioritizedDataSource.release(priorityTaskManager, C.PRIORITY_PLAYBACK);
+    assertTrue(isIdle());
+  }
+
+  @Test public void waitingLoad_isCancelledByInterrupt() throws Exception {
+    PrioritizedDataSource source = newSource(new AtomicInteger(PRIORITY_PREFETCH));
+    priorityTaskManager.add(C.PRIORITY_PLAYBACK);
+
+    BackgroundRead read = new BackgroundRead(source, new DataSpec(server.uri));
+    read.start();
+    assertFalse(read.done.await(BLOCKED_MS, TimeUnit.MILLISECONDS));
+    read.interrupt();  // what the Loader does to cancel a load.
+    assertTrue(read.done.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    assertTrue(read.error.get() instanceof InterruptedIOException);
+
+    source.close();
+    PrioritizedDataSource.release(priorityTaskManager, C.PRIORITY_PLAYBACK);
+    assertTrue(isIdle());
+  }
+
+  private PrioritizedDataSource newSource(AtomicInteger priority) {
+    return new PrioritizedDataSource(new DefaultHttpDataSource("ToroTest", null),
+        priorityTaskManager, priority);
+  }
+
+  // Nothing is registered in the PriorityTaskManager anymore.
+  private boolean isIdle() {
+    return priorityTaskManager.proceedNonBlocking(Integer.MIN_VALUE);
+  }
+
+  private static int readAll(PrioritizedDataSource source, DataSpec dataSpec) throws IOException {
+    if (dataSpec != null) source.open(dataSpec);
+    byte[] buffer = new byte[CHUNK_SIZE];
+    int total = 0;
+    int read;
+    while ((read = source.read(buffer, 0, buffer.length)) != C.RESULT_END_OF_INPUT) {
+      total += read;
+    }
+    return total;
+  }
+
+  private int readAll(PrioritizedDataSource source) throws IOException {
+    return readAll(source, new DataSpec(server.uri));
+  }
+
+  // Open (if a DataSpec is given) and read the source to the end on another thread.
+  static class BackgroundRead extends Thread {
+
+    final PrioritizedDataSource source;
+    final DataSpec dataSpec;
+    final CountDownLatch done = new CountDownLatch(1);
+    final AtomicInteger length = new AtomicInteger();
+    final AtomicReference<IOException> error = new AtomicReference<>();
+
+    BackgroundRead(PrioritizedDataSource source) {
+      this(source, null);
+    }
+
+    BackgroundRead(PrioritizedDataSource source, DataSpec dataSpec) {
+      this.source = source;
+      this.dataSpec = dataSpec;
+    }
+
+    @Override public void run() {
+      try {
+        length.set(readAll(source, dataSpec));
+      } catch (IOException er) {
+        error.set(er);
+      } finally {
+        done.countDown();
+      }
+    }
+  }
+
+  // Serves CONTENT_LENGTH bytes to each request, CHUNK_SIZE bytes every CHUNK_DELAY_MS.
+  static class ThrottledServer implements Runnable {
+
+    ServerSocket serverSocket;
+    Uri uri;
+    private Thread thread;
+
+    void start() throws IOException {
+      serverSocket = new ServerSocket(0);
+      uri = Uri.parse("http://127.0.0.1:" + serverSocket.getLocalPort() + "/video.mp4");
+      thread = new Thread(this, "ThrottledServer");
+      thread.start();
+    }
+
+    void stop() throws IOException {
+      serverSocket.close();
+      thread.interrupt();
+    }
+
+    @Override public void run() {
+      while (!serverSocket.isClosed()) {
+        final Socket socket;
+        try {
+          socket = serverSocket.accept();
+        } catch (IOException er) {
+          return;  // closed.
+        }
+        new Thread(new Runnable() {
+          @Override public void run() {
+            serve(socket);
+          }
+        }).start();
+      }
+    }
+
+    private static void serve(Socket socket) {
+      try {
+        InputStream input = socket.getInputStream();
+        // Skip the request, up to the empty line after its headers.
+        int matched = 0;
+        int b;
+        while (matched < 4 && (b = input.read()) != -1) {
+          matched = (b == '\r' || b == '\n') ? matched + 1 : 0;
+        }
+        OutputStream output = socket.getOutputStream();
+        output.write(("HTTP/1.1 200 OK\r\n"
+            + "Content-Type: video/mp4\r\n"
+            + "Content-Length: " + CONTENT_LENGTH + "\r\n"
+            + "Connection: close\r\n\r\n").getBytes("US-ASCII"));
+        byte[] chunk = new byte[CHUNK_SIZE];
+        for (int sent = 0; sent < CONTENT_LENGTH; sent += CHUNK_SIZE) {
+          output.write(chunk);
+          output.flush();
+          Thread.sleep(CHUNK_DELAY_MS);
+        }
+      } catch (IOException | InterruptedException ignored) {
+        // The client is gone.
+      } finally {
+        try {
+          socket.close();
+        } catch (IOException ignored) {
+        }
+      }
+    }
+  }
+}
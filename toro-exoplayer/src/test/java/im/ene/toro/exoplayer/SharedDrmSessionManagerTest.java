@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2018 Nam Nguyen, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.toro.exoplayer;
+
+import android.os.Looper;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.drm.DrmInitData;
+import com.google.android.exoplayer2.drm.DrmSession;
+import com.google.android.exoplayer2.drm.DrmSessionManager;
+import com.google.android.exoplayer2.drm.ExoMediaCrypto;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static im.ene.toro.exoplayer.SharedDrmSessionManager.LINGER_MS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author eneim (2018/03/14).
+ *
+ *         {@link SharedDrmSessionManager} over a fake manager that counts the references to its
+ *         sessions, like a DefaultDrmSessionManager does: a released session must stay open for
+ *         {@link SharedDrmSessionManager#LINGER_MS}, be reused without a new reference, never be
+ *         handed out for other keys, and be closed in the end, whatever the order of the calls.
+ */
+@RunWith(RobolectricTestRunner.class) @Config(manifest = Config.NONE, sdk = 26)  //
+public class SharedDrmSessionManagerTest {
+
+  private FakeDrmSessionManager fake;
+  private SharedDrmSessionManager<ExoMediaCrypto> manager;
+  private DrmInitData keys;
+
+  @Before public void setUp() {
+    fake = new FakeDrmSessionManager();
+    manager = new SharedDrmSessionManager<>(fake);
+    keys = newKeys(0);
+  }
+
+  @Test public void acquire_usesMainLooper() {
+    manager.acquireSession(Looper.myLooper(), keys);
+    assertSame(Looper.getMainLooper(), fake.looper);
+  }
+
+  @Test public void release_lingersThenCloses() {
+    DrmSession<ExoMediaCrypto> session = manager.acquireSession(Looper.myLooper(), keys);
+    manager.releaseSession(session);
+    assertEquals(1, fake.references(session));
+
+    advanceBy(LINGER_MS - 1);
+    assertEquals(1, fake.references(session));
+    advanceBy(1);
+    assertEquals(0, fake.references(session));
+  }
+
+  @Test public void acquire_reusesLingeringSession() {
+    DrmSession<ExoMediaCrypto> session = manager.acquireSession(Looper.myLooper(), keys);
+    manager.releaseSession(session);
+    advanceBy(LINGER_MS / 2);
+
+    // The caller takes over the lingering reference, and the pending release is cancelled.
+    assertSame(session, manager.acquireSession(Looper.myLooper(), keys));
+    assertEquals(1, fake.references(session));
+    assertEquals(1, fake.opened);
+    advanceBy(LINGER_MS);
+    assertEquals(1, fake.references(session));
+
+    manager.releaseSession(session);
+    advanceBy(LINGER_MS);
+    assertEquals(0, fake.references(session));
+  }
+
+  @Test public void release_sessionSharedByTwoPlayers_lingersOnce() {
+    DrmSession<ExoMediaCrypto> first = manager.acquireSession(Looper.myLooper(), keys);
+    DrmSession<ExoMediaCrypto> second = manager.acquireSession(Looper.myLooper(), keys);
+    assertSame(first, second);
+    assertEquals(2, fake.references(first));
+
+    manager.releaseSession(first);
+    manager.releaseSession(second);
+    assertEquals(1, fake.references(first));
+    advanceBy(LINGER_MS);
+    assertEquals(0, fake.references(first));
+  }
+
+  @Test public void release_failedSession_closesRightAway() {
+    DrmSession<ExoMediaCrypto> session = manager.acquireSession(Looper.myLooper(), keys);
+    ((FakeDrmSession) session).state = DrmSession.STATE_ERROR;
+    manager.releaseSession(session);
+    assertEquals(0, fake.references(session));
+  }
+
+  @Test public void release_otherKeys_replacesLingeringSession() {
+    DrmSession<ExoMediaCrypto> first = manager.acquireSession(Looper.myLooper(), keys);
+    DrmSession<ExoMediaCrypto> second = manager.acquireSession(Looper.myLooper(), newKeys(1));
+    manager.releaseSession(first);
+    manager.releaseSession(second);
+
+    assertEquals(0, fake.references(first));
+    assertEquals(1, fake.references(second));
+    advanceBy(LINGER_MS);
+    assertEquals(0, fake.references(second));
+  }
+
+  @Test public void acquire_otherKeys_closesLingeringSessionFirst() {
+    fake.singleSession = true;
+    DrmSession<ExoMediaCrypto> first = manager.acquireSession(Looper.myLooper(), keys);
+    manager.releaseSession(first);
+
+    // A single session manager would hand out the lingering session, open with the first keys.
+    DrmSession<ExoMediaCrypto> second = manager.acquireSession(Looper.myLooper(), newKeys(1));
+    assertNotSame(first, second);
+    assertEquals(0, fake.references(first));
+    assertEquals(newKeys(1), ((FakeDrmSession) second).keys);
+    assertEquals(2, fake.opened);
+
+    // And back to the first keys.
+    manager.releaseSession(second);
+    DrmSession<ExoMediaCrypto> third = manager.acquireSession(Looper.myLooper(), keys);
+    assertEquals(keys, ((FakeDrmSession) third).keys);
+    assertEquals(0, fake.references(second));
+    assertEquals(3, fake.opened);
+  }
+
+  @Test public void prefetch_otherKeysInUse_doesNothing() {
+    fake.singleSession = true;
+    DrmSession<ExoMediaCrypto> playing = manager.acquireSession(Looper.myLooper(), keys);
+    manager.prefetch(newKeys(1));
+    assertEquals(1, fake.references(playing));
+    assertEquals(1, fake.opened);
+
+    // Nothing lingers as if it was open with the prefetched keys.
+    manager.releaseSession(playing);
+    DrmSession<ExoMediaCrypto> next = manager.acquireSession(Looper.myLooper(), newKeys(1));
+    assertEquals(newKeys(1), ((FakeDrmSession) next).keys);
+  }
+
+  @Test public void prefetch_otherKeys_closesLingeringSession() {
+    fake.singleSession = true;
+    DrmSession<ExoMediaCrypto> released = manager.acquireSession(Looper.myLooper(), keys);
+    manager.releaseSession(released);
+    manager.prefetch(newKeys(1));
+
+    assertEquals(0, fake.references(released));
+    DrmSession<ExoMediaCrypto> prefetched = manager.acquireSession(Looper.myLooper(), newKeys(1));
+    assertEquals(newKeys(1), ((FakeDrmSession) prefetched).keys);
+    assertEquals(1, fake.references(prefetched));
+    assertEquals(2, fake.opened);
+  }
+
+  @Test public void prefetch_opensOnceAndLingers() {
+    manager.prefetch(keys);
+    manager.prefetch(keys);
+    DrmSession<ExoMediaCrypto> session = fake.sessions.get(keys);
+    assertEquals(1, fake.references(session));
+
+    assertSame(session, manager.acquireSession(Looper.myLooper(), keys));
+    assertEquals(1, fake.references(session));
+    manager.releaseSession(session);
+    advanceBy(LINGER_MS);
+    assertEquals(0, fake.references(session));
+  }
+
+  @Test public void prefetch_unsupportedKeys_doesNothing() {
+    fake.canAcquire = false;
+    manager.prefetch(keys);
+    assertEquals(0, fake.opened);
+  }
+
+  @Test public void releaseLingering_closesLingeringSessionOnly() {
+    DrmSession<ExoMediaCrypto> playing = manager.acquireSession(Looper.myLooper(), newKeys(1));
+    DrmSession<ExoMediaCrypto> released = manager.acquireSession(Looper.myLooper(), keys);
+    manager.releaseSession(released);
+
+    manager.releaseLingering();
+    assertEquals(0, fake.references(released));
+    assertEquals(1, fake.references(playing));  // still in use.
+
+    // Nothing left to run afterwards.
+    advanceBy(LINGER_MS);
+    assertEquals(1, fake.references(playing));
+    manager.releaseSession(playing);
+    assertEquals(1, fake.references(playing));
+  }
+
+  private static void advanceBy(long ms) {
+    Robolectric.getForegroundThreadScheduler().advanceBy(ms, TimeUnit.MILLISECONDS);
+  }
+
+  private static DrmInitData newKeys(int id) {
+    return new DrmInitData(
+        new DrmInitData.SchemeData(C.WIDEVINE_UUID, "video/mp4", new byte[] { (byte) id }));
+  }
+
+  // One session per DrmInitData, open as long as it has references. In single session mode, like
+  // a DefaultDrmSessionManager of 2.6.1, the open session is handed out whatever the keys.
+  static class FakeDrmSessionManager implements DrmSessionManager<ExoMediaCrypto> {
+
+    final Map<DrmInitData, FakeDrmSession> sessions = new HashMap<>();
+    boolean singleSession;
+    boolean canAcquire = true;
+    int opened;
+    Looper looper;
+
+    @Override public boolean canAcquireSession(DrmInitData drmInitData) {
+      return canAcquire;
+    }
+
+    @Override public DrmSession<ExoMediaCrypto> acquireSession(Looper playbackLooper,
+        DrmInitData drmInitData) {
+      if (looper != null && looper != playbackLooper) {
+        throw new IllegalStateException("Already bound to another Looper.");
+      }
+      looper = playbackLooper;
+      FakeDrmSession session = sessions.get(drmInitData);
+      if (singleSession) {
+        for (FakeDrmSession open : sessions.values()) {
+          if (open.references > 0) session = open;
+        }
+      }
+      if (session == null || session.references == 0) {
+        session = new FakeDrmSession(drmInitData);
+        sessions.put(drmInitData, session);
+        opened++;
+      }
+      session.references++;
+      return session;
+    }
+
+    @Override public void releaseSession(DrmSession<ExoMediaCrypto> drmSession) {
+      FakeDrmSession session = (FakeDrmSession) drmSession;
+      if (session.references == 0) throw new IllegalStateException("Released too many times.");
+      if (--session.references == 0) session.state = DrmSession.STATE_RELEASED;
+    }
+
+    int references(DrmSession session) {
+      return ((FakeDrmSession) session).references;
+    }
+  }
+
+  static class FakeDrmSession implements DrmSession<ExoMediaCrypto> {
+
+    final DrmInitData keys;
+    int references;
+    int state = STATE_OPENED_WITH_KEYS;
+
+    FakeDrmSession(DrmInitData keys) {
+      this.keys = keys;
+    }
+
+    @Override public int getState() {
+      return state;
+    }
+
+    @Override public DrmSessionException getError() {
+      return null;
+    }
+
+    @Override public ExoMediaCrypto getMediaCrypto() {
+      return null;
+    }
+
+    @Override public Map<String, String> queryKeyStatus() {
+      return null;
+    }
+
+    @Override public byte[] getOfflineLicenseKeySetId() {
+      return null;
+    }
+  }
+}
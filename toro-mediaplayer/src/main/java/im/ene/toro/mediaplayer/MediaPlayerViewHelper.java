@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2018 Nam Nguyen, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.toro.mediaplayer;
+
+import android.annotation.TargetApi;
+import android.graphics.SurfaceTexture;
+import android.media.MediaPlayer;
+import android.media.PlaybackParams;
+import android.net.Uri;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import android.view.Surface;
+import android.view.TextureView;
+import im.ene.toro.ToroPlayer;
+import im.ene.toro.ToroPlayer.State;
+import im.ene.toro.helper.ToroPlayerHelper;
+import im.ene.toro.media.PlaybackInfo;
+import im.ene.toro.widget.Container;
+import java.io.IOException;
+
+import static android.media.MediaPlayer.MEDIA_INFO_BUFFERING_END;
+import static android.media.MediaPlayer.MEDIA_INFO_BUFFERING_START;
+
+/**
+ * @author eneim (2018/03/13).
+ *
+ *         {@link ToroPlayerHelper} backed by the framework {@link MediaPlayer}, for the devices or
+ *         Apps that can not use ExoPlayer. The player view must be a {@link TextureView}.
+ *
+ *         The {@link MediaPlayer} comes from {@link ToroMediaPlayer}: either the one prefetched
+ *         for the same Uri, or a pooled one prepared asynchronously. On completion, the player is
+ *         rewound instead of being reset and prepared again, so it keeps its Surface and can be
+ *         played again right away.
+ */
+
+@SuppressWarnings({ "WeakerAccess", "unused" }) //
+public class MediaPlayerViewHelper extends ToroPlayerHelper
+    implements MediaPlayer.OnPreparedListener, MediaPlayer.OnCompletionListener,
+    MediaPlayer.OnInfoListener, MediaPlayer.OnErrorListener, TextureView.SurfaceTextureListener {
+
+  private static final String TAG = "ToroLib:MediaPlayer";
+
+  @NonNull final ToroMediaPlayer toro;
+  @NonNull final TextureView playerView;
+  @NonNull final Uri mediaUri;
+  final PlaybackInfo playbackInfo = new PlaybackInfo();
+
+  MediaPlayer mediaPlayer;  // taken at initialize, given back at release.
+  Surface surface;  // created on the TextureView's SurfaceTexture, released with it.
+  boolean prepared = false;
+  boolean playWhenReady = false;  // mimic the ExoPlayer
+  @State int playerState = State.STATE_IDLE;
+  float volume = 1f;
+  boolean volumeSet;  // set by the App, a restored PlaybackInfo must not override it.
+
+  public MediaPlayerViewHelper(@NonNull Container container, @NonNull ToroPlayer player,
+      @NonNull Uri mediaUri) {
+    super(container, player);
+    if (!(player.getPlayerView() instanceof TextureView)) {
+      throw new IllegalArgumentException("Only support TextureView.");
+    }
+    //noinspection ConstantConditions
+    if (mediaUri == null) {
+      throw new IllegalArgumentException("Media Uri must not be null.");
+    }
+    this.playerView = (TextureView) player.getPlayerView();
+    this.mediaUri = mediaUri;
+    this.toro = ToroMediaPlayer.with(playerView.getContext());
+  }
+
+  @Override public void initialize(@Nullable PlaybackInfo playbackInfo) {
+    if (playbackInfo != null) {
+      this.playbackInfo.setResumePosition(playbackInfo.getResumePosition());
+      this.playbackInfo.setSpeed(playbackInfo.getSpeed());
+      if (!volumeSet && playbackInfo.getVolume() != PlaybackInfo.VOLUME_UNSET) {
+        this.volume = playbackInfo.getVolume();
+      }
+    }
+
+    if (mediaPlayer == null) {
+      ToroMediaPlayer.PreparingPlayer prefetched = toro.take(mediaUri);
+      if (prefetched != null && !prefetched.failed) {
+        mediaPlayer = prefetched.player;
+        prepared = prefetched.prepared;
+      } else {
+        if (prefetched != null) toro.releasePlayer(prefetched.player);
+        mediaPlayer = toro.acquirePlayer();
+        try {
+          mediaPlayer.setDataSource(playerView.getContext(), mediaUri);
+        } catch (IOException | IllegalArgumentException | SecurityException
+            | IllegalStateException er) {
+          Log.w(TAG, "Failed to open: " + mediaUri, er);
+          toro.releasePlayer(mediaPlayer);
+          mediaPlayer = null;
+          return;
+        }
+        mediaPlayer.prepareAsync();
+      }
+
+      mediaPlayer.setOnPreparedListener(this);
+      mediaPlayer.setOnCompletionListener(this);
+      mediaPlayer.setOnInfoListener(this);
+      mediaPlayer.setOnErrorListener(this);
+    }
+
+    playerView.setSurfaceTextureListener(this);
+    if (playerView.isAvailable()) {
+      onSurfaceTextureAvailable(playerView.getSurfaceTexture(), playerView.getWidth(),
+          playerView.getHeight());
+    }
+
+    if (prepared) {
+      onPrepared(mediaPlayer);
+    } else {
+      playerState = State.STATE_BUFFERING;
+      onPlayerStateUpdated(playWhenReady, playerState);
+    }
+  }
+
+  @Override public void play() {
+    playWhenReady = true;
+    if (prepared) {
+      mediaPlayer.start();
+      applySpeed();
+    }
+    onPlayerStateUpdated(playWhenReady, playerState);
+  }
+
+  @Override public void pause() {
+    playWhenReady = false;
+    if (prepared) {
+      updateResumePosition();
+      if (mediaPlayer.isPlaying()) mediaPlayer.pause();
+    }
+    onPlayerStateUpdated(playWhenReady, playerState);
+  }
+
+  @Override public boolean isPlaying() {
+    return playWhenReady; // is actually playing or is preparing/buffering to play
+  }
+
+  @Override public void setVolume(float volume) {
+    this.volume = volume;
+    this.volumeSet = true;
+    if (prepared) mediaPlayer.setVolume(volume, volume);
+  }
+
+  @Override public float getVolume() {
+    return volume;
+  }
+
+  @NonNull @Override public PlaybackInfo getLatestPlaybackInfo() {
+    updateResumePosition();
+    PlaybackInfo info =
+        new PlaybackInfo(PlaybackInfo.INDEX_UNSET, playbackInfo.getResumePosition());
+    info.setSpeed(playbackInfo.getSpeed());
+    info.setVolume(volume);
+    return info;
+  }
+
+  @Override public void release() {
+    playerView.setSurfaceTextureListener(null);
+    if (mediaPlayer != null) {
+      updateResumePosition();
+      toro.releasePlayer(mediaPlayer);
+      mediaPlayer = null;
+    }
+    if (surface != null) {
+      surface.release();
+      surface = null;
+    }
+    this.prepared = false;
+    this.playWhenReady = false;
+    this.playerState = State.STATE_IDLE;
+    super.release();
+  }
+
+  // MediaPlayer callbacks
+
+  @Override public void onPrepared(MediaPlayer mp) {
+    prepared = true;
+    mp.setVolume(volume, volume);
+    long resumePosition = playbackInfo.getResumePosition();
+    if (resumePosition > 0) mp.seekTo((int) resumePosition);
+    playerState = State.STATE_READY;
+    if (playWhenReady) {
+      mp.start();
+      applySpeed();
+    }
+    onPlayerStateUpdated(playWhenReady, playerState);
+  }
+
+  @Override public void onCompletion(MediaPlayer mp) {
+    if (mp != mediaPlayer) return;  // already released.
+    playWhenReady = false;  // !!Keeping playWhenReady as true will make a loop playback.
+    // Rewind in place before telling anyone: a completed player can be started again, with the
+    // same Surface, and the listeners of STATE_END may play or release it right away.
+    playbackInfo.setResumePosition(0);
+    mp.seekTo(0);
+    playerState = State.STATE_READY;
+    onPlayerStateUpdated(playWhenReady, State.STATE_END);
+  }
+
+  @Override public boolean onInfo(MediaPlayer mp, int what, int extra) {
+    switch (what) {
+      case MEDIA_INFO_BUFFERING_START:
+        playerState = State.STATE_BUFFERING;
+        break;
+      case MEDIA_INFO_BUFFERING_END:
+        playerState = State.STATE_READY;
+        break;
+      default:
+        return false;
+    }
+    onPlayerStateUpdated(playWhenReady, playerState);
+    return true;
+  }
+
+  @Override public boolean onError(MediaPlayer mp, int what, int extra) {
+    Log.w(TAG, "Playback error: " + what + ", " + extra + ", " + mediaUri);
+    // A player in error state is reset before it goes back to the Pool.
+    if (mp == mediaPlayer) {
+      updateResumePosition();
+      toro.releasePlayer(mp);
+      mediaPlayer = null;
+    }
+    prepared = false;
+    playWhenReady = false;
+    playerState = State.STATE_IDLE;
+    onPlayerStateUpdated(playWhenReady, playerState);
+    return true;  // prevent the completion callback.
+  }
+
+  // TextureView callbacks
+
+  @Override public void onSurfaceTextureAvailable(SurfaceTexture texture, int width, int height) {
+    if (surface == null) surface = new Surface(texture);
+    if (mediaPlayer != null) mediaPlayer.setSurface(surface);
+  }
+
+  @Override public void onSurfaceTextureSizeChanged(SurfaceTexture texture, int width,
+      int height) {
+    // Do nothing.
+  }
+
+  @Override public boolean onSurfaceTextureDestroyed(SurfaceTexture texture) {
+    if (mediaPlayer != null) mediaPlayer.setSurface(null);
+    if (surface != null) {
+      surface.release();
+      surface = null;
+    }
+    return true;
+  }
+
+  @Override public void onSurfaceTextureUpdated(SurfaceTexture texture) {
+    // Do nothing.
+  }
+
+  void updateResumePosition() {
+    if (!prepared || mediaPlayer == null) return;
+    try {
+      playbackInfo.setResumePosition(mediaPlayer.getCurrentPosition());
+    } catch (IllegalStateException er) {
+      Log.w(TAG, "Failed to get position: " + mediaUri, er);
+    }
+  }
+
+  @TargetApi(Build.VERSION_CODES.M) void applySpeed() {
+    float speed = playbackInfo.getSpeed();
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M || speed <= 0) return;
+    mediaPlayer.setPlaybackParams(new PlaybackParams().setSpeed(speed));
+  }
+}
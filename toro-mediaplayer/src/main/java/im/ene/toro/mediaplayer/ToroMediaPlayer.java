@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2018 Nam Nguyen, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.toro.mediaplayer;
+
+import android.annotation.SuppressLint;
+import android.app.Application;
+import android.content.Context;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.util.Pools;
+import android.util.Log;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author eneim (2018/03/13).
+ *
+ *         Global helper class to manage the {@link MediaPlayer} instances of
+ *         {@link MediaPlayerViewHelper}s.
+ *
+ *         Released players are reset and kept in a bounded Pool, so the next item doesn't pay for
+ *         a new native player. {@link #prefetch(Uri)} prepares a player for an upcoming item in
+ *         the background ({@link MediaPlayer#prepareAsync()}), the helper of that item then takes
+ *         it over, often already prepared.
+ *
+ *         Must be used from the main thread. Call {@link #cleanUp()} when the App runs low on
+ *         memory ({@link Application#onTrimMemory(int)} for example).
+ */
+
+public final class ToroMediaPlayer {
+
+  private static final String TAG = "ToroLib:MediaPlayer";
+  static final int MAX_POOL_SIZE = 4;
+  static final int MAX_PREFETCH = 2;
+
+  @SuppressLint("StaticFieldLeak") static volatile ToroMediaPlayer toro;
+
+  public static ToroMediaPlayer with(@NonNull Context context) {
+    if (toro == null) {
+      synchronized (ToroMediaPlayer.class) {
+        if (toro == null) toro = new ToroMediaPlayer(context);
+      }
+    }
+    return toro;
+  }
+
+  @NonNull private final Context context;  // Application context
+  @NonNull private final Pools.Pool<MediaPlayer> pool = new Pools.SimplePool<>(MAX_POOL_SIZE);
+  // Players preparing (or prepared) for upcoming items, oldest first.
+  @NonNull private final LinkedHashMap<Uri, PreparingPlayer> prefetched = new LinkedHashMap<>();
+
+  ToroMediaPlayer(@NonNull Context context) {
+    this.context = context.getApplicationContext();
+  }
+
+  /**
+   * Start preparing a {@link MediaPlayer} for an item that is about to be played, eg: the next
+   * items of a list. At most 2 items are prefetched, the oldest one is dropped first.
+   *
+   * @param uri the media Uri of the upcoming item.
+   */
+  public void prefetch(@NonNull Uri uri) {
+    if (prefetched.containsKey(uri)) return;
+    MediaPlayer player = acquirePlayer();
+    PreparingPlayer preparing = new PreparingPlayer(player);
+    try {
+      player.setDataSource(context, uri);
+      player.prepareAsync();
+    } catch (IOException | IllegalArgumentException | SecurityException
+        | IllegalStateException er) {
+      Log.w(TAG, "Failed to prefetch: " + uri, er);
+      preparing.detach();
+      releasePlayer(player);
+      return;
+    }
+
+    prefetched.put(uri, preparing);
+    if (prefetched.size() > MAX_PREFETCH) {
+      Iterator<Map.Entry<Uri, PreparingPlayer>> iterator = prefetched.entrySet().iterator();
+      PreparingPlayer oldest = iterator.next().getValue();
+      iterator.remove();
+      oldest.detach();
+      releasePlayer(oldest.player);
+    }
+  }
+
+  /**
+   * Release and clear all the pooled and prefetched {@link MediaPlayer}s.
+   */
+  public void cleanUp() {
+    for (PreparingPlayer preparing : prefetched.values()) {
+      preparing.detach();
+      preparing.player.release();
+    }
+    prefetched.clear();
+    MediaPlayer player;
+    while ((player = pool.acquire()) != null) {
+      player.release();
+    }
+  }
+
+  // Take the player prefetched for this Uri, if any. Its listeners are unset.
+  @Nullable PreparingPlayer take(@NonNull Uri uri) {
+    PreparingPlayer preparing = prefetched.remove(uri);
+    if (preparing != null) preparing.detach();
+    return preparing;
+  }
+
+  @NonNull MediaPlayer acquirePlayer() {
+    MediaPlayer player = pool.acquire();
+    return player != null ? player : new MediaPlayer();
+  }
+
+  // Reset the player to its idle state, and keep it for later if the Pool is not full.
+  void releasePlayer(@NonNull MediaPlayer player) {
+    player.setOnPreparedListener(null);
+    player.setOnCompletionListener(null);
+    player.setOnInfoListener(null);
+    player.setOnErrorListener(null);
+    player.setSurface(null);
+    player.reset();
+    if (!pool.release(player)) player.release();
+  }
+
+  // A player prepared ahead of its helper. Remembers if it is done, until a helper takes it.
+  static final class PreparingPlayer
+      implements MediaPlayer.OnPreparedListener, MediaPlayer.OnErrorListener {
+
+    @NonNull final MediaPlayer player;
+    boolean prepared;
+    boolean failed;
+
+    PreparingPlayer(@NonNull MediaPlayer player) {
+      this.player = player;
+      player.setOnPreparedListener(this);
+      player.setOnErrorListener(this);
+    }
+
+    void detach() {
+      player.setOnPreparedListener(null);
+      player.setOnErrorListener(null);
+    }
+
+    @Override public void onPrepared(MediaPlayer mp) {
+      prepared = true;
+    }
+
+    @Override public boolean onError(MediaPlayer mp, int what, int extra) {
+      failed = true;
+      return true;
+    }
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2018 Nam Nguyen, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.toro.mediaplayer;
+
+import android.media.MediaPlayer;
+import android.net.Uri;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.shadows.ShadowMediaPlayer;
+import org.robolectric.shadows.ShadowMediaPlayer.MediaInfo;
+import org.robolectric.shadows.util.DataSource;
+
+import static im.ene.toro.mediaplayer.ToroMediaPlayer.MAX_POOL_SIZE;
+import static im.ene.toro.mediaplayer.ToroMediaPlayer.MAX_PREFETCH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * @author eneim (2018/03/14).
+ *
+ *         Bounds of {@link ToroMediaPlayer}: at most {@link ToroMediaPlayer#MAX_PREFETCH} players
+ *         are prepared ahead, at most {@link ToroMediaPlayer#MAX_POOL_SIZE} are kept for reuse,
+ *         and every other player is released, whatever happens to it.
+ */
+@RunWith(RobolectricTestRunner.class) @Config(manifest = Config.NONE, sdk = 26)  //
+public class ToroMediaPlayerTest {
+
+  private ToroMediaPlayer toro;
+
+  @Before public void setUp() {
+    toro = new ToroMediaPlayer(RuntimeEnvironment.application);
+  }
+
+  @Test public void prefetch_preparesAhead() {
+    Uri uri = addMedia(0);
+    toro.prefetch(uri);
+    ShadowLooper.idleMainLooper();
+
+    ToroMediaPlayer.PreparingPlayer preparing = toro.take(uri);
+    assertNotNull(preparing);
+    assertTrue(preparing.prepared);
+    assertFalse(preparing.failed);
+    assertEquals(ShadowMediaPlayer.State.PREPARED, shadowOf(preparing.player).getState());
+    assertNull(toro.take(uri));  // taken once only.
+  }
+
+  @Test public void prefetch_sameUri_onlyOnce() {
+    Uri uri = addMedia(0);
+    toro.prefetch(uri);
+    MediaPlayer pooled = newPooledPlayer();
+    toro.prefetch(uri);
+
+    assertNotSame(pooled, toro.take(uri).player);
+    assertSame(pooled, toro.acquirePlayer());  // not used by the second call.
+  }
+
+  @Test public void prefetch_overLimit_dropsOldest() {
+    MediaPlayer pooled = newPooledPlayer();
+    List<Uri> uris = new ArrayList<>();
+    for (int i = 0; i <= MAX_PREFETCH; i++) {
+      uris.add(addMedia(i));
+      toro.prefetch(uris.get(i));
+    }
+
+    // The oldest one is reset, and goes back to the Pool.
+    assertNull(toro.take(uris.get(0)));
+    MediaPlayer oldest = toro.acquirePlayer();
+    assertSame(pooled, oldest);
+    assertEquals(ShadowMediaPlayer.State.IDLE, shadowOf(oldest).getState());
+    for (int i = 1; i <= MAX_PREFETCH; i++) {
+      assertNotNull(toro.take(uris.get(i)));
+    }
+  }
+
+  @Test public void prefetch_failedToOpen_givesPlayerBack() {
+    Uri broken = Uri.parse("http://toro.test/broken.mp4");
+    ShadowMediaPlayer.addException(toDataSource(broken), new IOException("Broken"));
+    Uri unsupported = Uri.parse("http://toro.test/unsupported.mp4");
+    ShadowMediaPlayer.addException(toDataSource(unsupported), new IllegalArgumentException());
+
+    for (Uri uri : new Uri[] { broken, unsupported }) {
+      MediaPlayer pooled = newPooledPlayer();
+      toro.prefetch(uri);
+      assertNull(toro.take(uri));
+      assertSame(pooled, toro.acquirePlayer());
+      assertEquals(ShadowMediaPlayer.State.IDLE, shadowOf(pooled).getState());
+    }
+  }
+
+  @Test public void prefetch_failedToPrepare_isMarked() {
+    Uri uri = addMedia(0);
+    MediaPlayer player = newPooledPlayer();  // the one to be prefetched.
+    toro.prefetch(uri);
+    shadowOf(player).invokeErrorListener(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
+
+    ToroMediaPlayer.PreparingPlayer preparing = toro.take(uri);
+    assertSame(player, preparing.player);
+    assertTrue(preparing.failed);
+  }
+
+  @Test public void releasePlayer_keepsAtMostPoolSize() {
+    List<MediaPlayer> players = new ArrayList<>();
+    for (int i = 0; i < MAX_POOL_SIZE + 2; i++) {
+      players.add(toro.acquirePlayer());
+    }
+    for (MediaPlayer player : players) {
+      toro.releasePlayer(player);
+    }
+
+    Set<MediaPlayer> pooled = new HashSet<>();
+    for (int i = 0; i < MAX_POOL_SIZE; i++) {
+      MediaPlayer player = toro.acquirePlayer();
+      assertTrue(players.contains(player));
+      assertEquals(ShadowMediaPlayer.State.IDLE, shadowOf(player).getState());
+      pooled.add(player);
+    }
+    assertEquals(MAX_POOL_SIZE, pooled.size());
+    assertFalse(players.contains(toro.acquirePlayer()));  // the Pool is empty now.
+    for (MediaPlayer player : players) {
+      if (!pooled.contains(player)) {
+        assertEquals(ShadowMediaPlayer.State.END, shadowOf(player).getState());
+      }
+    }
+  }
+
+  @Test public void cleanUp_releasesEverything() {
+    Uri uri = addMedia(0);
+    MediaPlayer prefetched = newPooledPlayer();
+    toro.prefetch(uri);
+    MediaPlayer pooled = newPooledPlayer();
+
+    toro.cleanUp();
+    assertEquals(ShadowMediaPlayer.State.END, shadowOf(pooled).getState());
+    assertEquals(ShadowMediaPlayer.State.END, shadowOf(prefetched).getState());
+    assertNull(toro.take(uri));
+    assertNotSame(pooled, toro.acquirePlayer());
+  }
+
+  private MediaPlayer newPooledPlayer() {
+    MediaPlayer player = new MediaPlayer();
+    toro.releasePlayer(player);
+    return player;
+  }
+
+  private static Uri addMedia(int index) {
+    Uri uri = Uri.parse("http://toro.test/" + index + ".mp4");
+    ShadowMediaPlayer.addMediaInfo(toDataSource(uri), new MediaInfo(10000, 0));
+    return uri;
+  }
+
+  private static DataSource toDataSource(Uri uri) {
+    return DataSource.toDataSource(RuntimeEnvironment.application, uri);
+  }
+}
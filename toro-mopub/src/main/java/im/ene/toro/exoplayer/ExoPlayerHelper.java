@@ -17,6 +17,7 @@
 package im.ene.toro.exoplayer;
 
 import android.content.Context;
+import android.net.Uri;
 import android.os.Handler;
 import android.support.annotation.FloatRange;
 import android.support.annotation.NonNull;
@@ -26,39 +27,30 @@ import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.DefaultRenderersFactory;
 import com.google.android.exoplayer2.ExoPlaybackException;
 import com.google.android.exoplayer2.ExoPlayer;
-import com.google.android.exoplayer2.ExoPlayerFactory;
 import com.google.android.exoplayer2.ParserException;
 import com.google.android.exoplayer2.PlaybackParameters;
-import com.google.android.exoplayer2.RenderersFactory;
 import com.google.android.exoplayer2.SimpleExoPlayer;
 import com.google.android.exoplayer2.Timeline;
-import com.google.android.exoplayer2.drm.DefaultDrmSessionManager;
 import com.google.android.exoplayer2.drm.DrmSessionManager;
 import com.google.android.exoplayer2.drm.FrameworkMediaCrypto;
-import com.google.android.exoplayer2.drm.FrameworkMediaDrm;
-import com.google.android.exoplayer2.drm.HttpMediaDrmCallback;
 import com.google.android.exoplayer2.drm.UnsupportedDrmException;
 import com.google.android.exoplayer2.mediacodec.MediaCodecRenderer;
 import com.google.android.exoplayer2.mediacodec.MediaCodecUtil;
 import com.google.android.exoplayer2.source.BehindLiveWindowException;
 import com.google.android.exoplayer2.source.MediaSource;
 import com.google.android.exoplayer2.source.TrackGroupArray;
-import com.google.android.exoplayer2.trackselection.AdaptiveTrackSelection;
 import com.google.android.exoplayer2.trackselection.DefaultTrackSelector;
 import com.google.android.exoplayer2.trackselection.MappingTrackSelector;
-import com.google.android.exoplayer2.trackselection.TrackSelection;
 import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
 import com.google.android.exoplayer2.ui.SimpleExoPlayerView;
 import com.google.android.exoplayer2.upstream.BandwidthMeter;
-import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
-import com.google.android.exoplayer2.upstream.DefaultHttpDataSourceFactory;
 import com.google.android.exoplayer2.util.Util;
-import im.ene.toro.ToroUtil;
 import im.ene.toro.media.DrmMedia;
 import im.ene.toro.media.PlaybackInfo;
 import java.net.CookieManager;
 import java.net.CookiePolicy;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 import static com.google.android.exoplayer2.drm.UnsupportedDrmException.REASON_UNSUPPORTED_SCHEME;
@@ -79,6 +71,9 @@ import static com.google.android.exoplayer2.drm.UnsupportedDrmException.REASON_U
   @DefaultRenderersFactory.ExtensionRendererMode final int extensionMode;
 
   SimpleExoPlayer player;
+  List<Object> playerKey; // key of the Pool the player goes back to, null if not pooled.
+  // Leased from the ExoPlayerPool along with the player built with it.
+  DrmSessionManager<FrameworkMediaCrypto> drmSessionManager;
   ComponentListener componentListener;
   DefaultTrackSelector trackSelector;
 
@@ -123,7 +118,7 @@ import static com.google.android.exoplayer2.drm.UnsupportedDrmException.REASON_U
   }
 
   public void prepare(@NonNull MediaSourceBuilder mediaSourceBuilder) throws ParserException {
-    prepare(mediaSourceBuilder, new DefaultBandwidthMeter(mainHandler, null));
+    prepare(mediaSourceBuilder, ExoPlayerPool.DEFAULT_BANDWIDTH_METER);
   }
 
   public void prepare(@NonNull MediaSourceBuilder mediaSourceBuilder,
@@ -147,7 +142,7 @@ import static com.google.android.exoplayer2.drm.UnsupportedDrmException.REASON_U
         String[] keyRequestPropertiesArray = drmMedia.getKeyRequestPropertiesArray();
         try {
           drmSessionManager = buildDrmSessionManager(drmSchemeUuid, drmLicenseUrl,  //
-              keyRequestPropertiesArray, mainHandler);
+              keyRequestPropertiesArray, mediaSourceBuilder.getMediaUri(), mainHandler);
         } catch (UnsupportedDrmException e) {
           int errorStringId = Util.SDK_INT < 18 ? im.ene.toro.R.string.error_drm_not_supported
               : (e.reason == REASON_UNSUPPORTED_SCHEME ?  //
@@ -177,17 +172,19 @@ import static com.google.android.exoplayer2.drm.UnsupportedDrmException.REASON_U
     this.player = playerView.getPlayer();
     boolean needNewPlayer = player == null;
     if (needNewPlayer) {
-      TrackSelection.Factory adaptiveTrackSelectionFactory =
-          new AdaptiveTrackSelection.Factory(bandwidthMeter);
-      trackSelector = new DefaultTrackSelector(adaptiveTrackSelectionFactory);
-
-      RenderersFactory renderersFactory =
-          new DefaultRenderersFactory(context, drmSessionManager, extensionMode);
-
-      player = ExoPlayerFactory.newSimpleInstance(renderersFactory, trackSelector);
+      // Reuse a released player (and its renderers) built with the same components.
+      ExoPlayerPool pool = ExoPlayerPool.with(context);
+      player = pool.acquirePlayer(extensionMode, bandwidthMeter, drmSessionManager);
+      playerKey = ExoPlayerPool.playerKey(extensionMode, drmSessionManager);
+      this.drmSessionManager = drmSessionManager;
+      trackSelector = pool.getTrackSelector(player);
+      player.setVolume(1f);
       player.addListener(componentListener);
       player.setPlayWhenReady(shouldAutoPlay);
       needRetrySource = true;
+    } else if (drmSessionManager != null && drmSessionManager != this.drmSessionManager) {
+      // The current player keeps its own one.
+      ExoPlayerPool.with(context).releaseDrmSessionManager(drmSessionManager);
     }
 
     if (needNewPlayer || needRetrySource) {
@@ -208,11 +205,23 @@ import static com.google.android.exoplayer2.drm.UnsupportedDrmException.REASON_U
       shouldAutoPlay = player.getPlayWhenReady();
       updateResumePosition();
       player.removeListener(componentListener);
-      player.release();
       playerView.setPlayer(null);
+      if (playerKey != null) {
+        // Stopped, but keeps its renderers for the next helper.
+        player.stop();
+        ExoPlayerPool.with(context).releasePlayer(playerKey, player);
+      } else {
+        player.release();
+      }
       player = null;
     }
 
+    playerKey = null;
+    if (drmSessionManager != null) {
+      ExoPlayerPool.with(context).releaseDrmSessionManager(drmSessionManager);
+      drmSessionManager = null;
+    }
+
     trackSelector = null;
     mediaSourceBuilder = null;
     bandwidthMeter = null;
@@ -431,25 +440,15 @@ import static com.google.android.exoplayer2.drm.UnsupportedDrmException.REASON_U
     return false;
   }
 
+  // Items of the same scheme, license Url and key request properties reuse idle managers.
   @Nullable DrmSessionManager<FrameworkMediaCrypto> buildDrmSessionManager(UUID uuid,
-      String licenseUrl, String[] keyRequestPropertiesArray, Handler mainHandler)
+      String licenseUrl, String[] keyRequestPropertiesArray, Uri contentUri, Handler mainHandler)
       throws UnsupportedDrmException {
-    if (Util.SDK_INT < 18) {
-      return null;
-    }
-    HttpMediaDrmCallback drmCallback = new HttpMediaDrmCallback(licenseUrl,
-        new DefaultHttpDataSourceFactory(Util.getUserAgent(context, ToroUtil.LIB_NAME), null));
-    if (keyRequestPropertiesArray != null) {
-      for (int i = 0; i < keyRequestPropertiesArray.length - 1; i += 2) {
-        drmCallback.setKeyRequestProperty(keyRequestPropertiesArray[i],
-            keyRequestPropertiesArray[i + 1]);
-      }
-    }
-    return new DefaultDrmSessionManager<>(uuid, FrameworkMediaDrm.newInstance(uuid), drmCallback,
-        null, mainHandler, null);
+    return ExoPlayerPool.with(context)
+        .acquireDrmSessionManager(uuid, licenseUrl, keyRequestPropertiesArray, contentUri);
   }
 
-  private static UUID getDrmUuid(String typeString) throws ParserException {
+  static UUID getDrmUuid(String typeString) throws ParserException {
     switch (typeString.toLowerCase()) {
       case "widevine":
         return C.WIDEVINE_UUID;
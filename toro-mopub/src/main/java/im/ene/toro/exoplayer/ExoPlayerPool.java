@@ -0,0 +1,436 @@
+/*
+ * Copyright (c) 2018 Nam Nguyen, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.toro.exoplayer;
+
+import android.annotation.SuppressLint;
+import android.app.Application;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.util.Pools;
+import android.util.Base64;
+import com.google.android.exoplayer2.DefaultRenderersFactory;
+import com.google.android.exoplayer2.ExoPlayerFactory;
+import com.google.android.exoplayer2.ParserException;
+import com.google.android.exoplayer2.RenderersFactory;
+import com.google.android.exoplayer2.SimpleExoPlayer;
+import com.google.android.exoplayer2.drm.DefaultDrmSessionManager;
+import com.google.android.exoplayer2.drm.DrmSessionManager;
+import com.google.android.exoplayer2.drm.ExoMediaDrm;
+import com.google.android.exoplayer2.drm.FrameworkMediaCrypto;
+import com.google.android.exoplayer2.drm.FrameworkMediaDrm;
+import com.google.android.exoplayer2.drm.HttpMediaDrmCallback;
+import com.google.android.exoplayer2.drm.UnsupportedDrmException;
+import com.google.android.exoplayer2.trackselection.AdaptiveTrackSelection;
+import com.google.android.exoplayer2.trackselection.DefaultTrackSelector;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
+import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory;
+import com.google.android.exoplayer2.upstream.DefaultHttpDataSourceFactory;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.Util;
+import im.ene.toro.media.DrmMedia;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.WeakHashMap;
+
+import static android.content.Context.MODE_PRIVATE;
+import static im.ene.toro.mopub.BuildConfig.LIB_NAME;
+import static java.lang.Runtime.getRuntime;
+
+/**
+ * @author eneim (2018/03/10).
+ *
+ *         Keeps the reusable ExoPlayer components of {@link ExoPlayerHelper}: a bandwidth meter
+ *         shared by the whole App, DataSource factories, DRM session managers and Pools of
+ *         {@link SimpleExoPlayer}. Players are pooled by the components they are built with
+ *         (extension mode and DRM session manager), so a released player, with its renderers and
+ *         track selector, serves the next helper of the same kind. The bandwidth meter is not one
+ *         of them: each player reads the meter of its current helper, so a helper given a new meter
+ *         each time still gets a pooled player, and the Pools don't grow with the meters.
+ *
+ *         DRM session managers (and so their MediaDrm) are pooled by scheme, license Url and key
+ *         request properties. One of ExoPlayer r2.4 holds a single session, opened for the first
+ *         content it is given, so a manager is leased to one helper at a time and comes back to
+ *         the Pool when that helper is released. An offline license stored by
+ *         {@link #setOfflineLicense(DrmMedia, Uri, byte[])} is restored without a license request,
+ *         by managers leased for that content only.
+ *
+ *         Each manager has its own MediaDrm, released when the manager leaves the Pool, so items
+ *         playing at the same time open one MediaDrm each. A MediaDrm can't be shared by managers
+ *         of r2.4: each of them sets itself as the only event listener of its MediaDrm.
+ *
+ *         Must be used from the main thread. Call {@link #cleanUp()} when the App runs low on
+ *         memory ({@link Application#onTrimMemory(int)} for example).
+ */
+
+@SuppressWarnings("WeakerAccess") //
+public final class ExoPlayerPool {
+
+  private static final int MAX_POOL_SIZE = Math.max(4, getRuntime().availableProcessors());
+  private static final String PREF_OFFLINE_LICENSES = "im.ene.toro.mopub.offline_licenses";
+  private static final int PLAYER_KEY_DRM = 1;  // index of the DRM session manager in a player key
+
+  // One bandwidth estimate for the whole App, instead of a cold one for each prepare() call.
+  static final DefaultBandwidthMeter DEFAULT_BANDWIDTH_METER = new DefaultBandwidthMeter();
+
+  @SuppressLint("StaticFieldLeak") static volatile ExoPlayerPool pool;
+
+  public static ExoPlayerPool with(@NonNull Context context) {
+    if (pool == null) {
+      synchronized (ExoPlayerPool.class) {
+        if (pool == null) pool = new ExoPlayerPool(context, FRAMEWORK_MEDIA_DRM);
+      }
+    }
+    return pool;
+  }
+
+  // Opens the MediaDrm of each new DRM session manager. There is no DRM plugin on the JVM, so the
+  // tests give fake ones.
+  interface MediaDrmFactory {
+
+    @NonNull ExoMediaDrm<FrameworkMediaCrypto> newMediaDrm(@NonNull UUID uuid)
+        throws UnsupportedDrmException;
+  }
+
+  private static final MediaDrmFactory FRAMEWORK_MEDIA_DRM = new MediaDrmFactory() {
+    @NonNull @Override public ExoMediaDrm<FrameworkMediaCrypto> newMediaDrm(@NonNull UUID uuid)
+        throws UnsupportedDrmException {
+      return FrameworkMediaDrm.newInstance(uuid);
+    }
+  };
+
+  @NonNull private final Context context; // Application context
+  @NonNull private final String userAgent;
+  private final Map<List<Object>, Pools.Pool<SimpleExoPlayer>> playerPools = new HashMap<>();
+  private final Map<SimpleExoPlayer, DefaultTrackSelector> trackSelectors = new WeakHashMap<>();
+  private final Map<SimpleExoPlayer, LeasedMeter> meters = new WeakHashMap<>();
+  private DataSource.Factory defaultDataSourceFactory; // without TransferListener
+  private DataSource.Factory meteredDataSourceFactory; // with DEFAULT_BANDWIDTH_METER
+  private final Map<List<Object>, Pools.Pool<DrmSessionManager<FrameworkMediaCrypto>>>
+      drmSessionManagers = new HashMap<>();
+  // Key of the Pool each DRM session manager goes back to. Removed ones are not pooled anymore.
+  private final Map<DrmSessionManager, List<Object>> drmKeys = new HashMap<>();
+  // MediaDrm of each DRM session manager, pooled or leased.
+  private final Map<DrmSessionManager, ExoMediaDrm<FrameworkMediaCrypto>> mediaDrms =
+      new HashMap<>();
+  @NonNull private final MediaDrmFactory mediaDrmFactory;
+  @NonNull private final SharedPreferences offlineLicenses;
+  @NonNull private final Handler handler = new Handler(Looper.getMainLooper());
+
+  ExoPlayerPool(@NonNull Context context, @NonNull MediaDrmFactory mediaDrmFactory) {
+    this.context = context.getApplicationContext();
+    this.mediaDrmFactory = mediaDrmFactory;
+    this.userAgent = Util.getUserAgent(this.context, LIB_NAME);
+    this.offlineLicenses = this.context.getSharedPreferences(PREF_OFFLINE_LICENSES, MODE_PRIVATE);
+  }
+
+  /**
+   * Get a {@link SimpleExoPlayer} built with the given components, from the Pool if possible.
+   */
+  @NonNull SimpleExoPlayer acquirePlayer(
+      @DefaultRenderersFactory.ExtensionRendererMode int extensionMode,
+      @Nullable BandwidthMeter bandwidthMeter,
+      @Nullable DrmSessionManager<FrameworkMediaCrypto> drmSessionManager) {
+    List<Object> key = playerKey(extensionMode, drmSessionManager);
+    SimpleExoPlayer player = getPool(key).acquire();
+    if (player == null) {
+      LeasedMeter meter = new LeasedMeter();
+      DefaultTrackSelector trackSelector =
+          new DefaultTrackSelector(new AdaptiveTrackSelection.Factory(meter));
+      RenderersFactory renderersFactory =
+          new DefaultRenderersFactory(context, drmSessionManager, extensionMode);
+      player = ExoPlayerFactory.newSimpleInstance(renderersFactory, trackSelector);
+      trackSelectors.put(player, trackSelector);
+      meters.put(player, meter);
+    }
+    meters.get(player).delegate = bandwidthMeter;
+    return player;
+  }
+
+  /**
+   * Give a stopped {@link SimpleExoPlayer} back to its Pool, or release it if the Pool is full.
+   */
+  void releasePlayer(@NonNull List<Object> key, @NonNull SimpleExoPlayer player) {
+    LeasedMeter meter = meters.get(player);
+    if (meter != null) meter.delegate = null;  // the helper's meter is not kept by the Pool.
+    if (!getPool(key).release(player)) releaseIdlePlayer(player);
+  }
+
+  @Nullable DefaultTrackSelector getTrackSelector(@NonNull SimpleExoPlayer player) {
+    return trackSelectors.get(player);
+  }
+
+  // DataSource factories are stateless. The ones without a TransferListener or with the default
+  // meter are shared, others are built for their caller, which may give a new meter each time.
+  @NonNull DataSource.Factory getDataSourceFactory(
+      @Nullable TransferListener<? super DataSource> listener) {
+    if (listener == null) {
+      if (defaultDataSourceFactory == null) defaultDataSourceFactory = newDataSourceFactory(null);
+      return defaultDataSourceFactory;
+    }
+    if (listener != DEFAULT_BANDWIDTH_METER) return newDataSourceFactory(listener);
+    if (meteredDataSourceFactory == null) {
+      meteredDataSourceFactory = newDataSourceFactory(DEFAULT_BANDWIDTH_METER);
+    }
+    return meteredDataSourceFactory;
+  }
+
+  @NonNull private DataSource.Factory newDataSourceFactory(
+      @Nullable TransferListener<? super DataSource> listener) {
+    return new DefaultDataSourceFactory(context, listener,
+        new DefaultHttpDataSourceFactory(userAgent, listener));
+  }
+
+  /**
+   * Get an idle DRM session manager for a scheme, license Url and key request properties, from the
+   * Pool if possible. It must be given back by {@link #releaseDrmSessionManager(DrmSessionManager)}
+   * once its player is stopped. If an offline license is stored for the content, the manager
+   * restores it, and is only leased for that content.
+   */
+  @Nullable DrmSessionManager<FrameworkMediaCrypto> acquireDrmSessionManager(@NonNull UUID uuid,
+      String licenseUrl, @Nullable String[] keyRequestProperties, @Nullable Uri contentUri)
+      throws UnsupportedDrmException {
+    if (Util.SDK_INT < 18) return null;
+    List<Object> key = drmKey(uuid, licenseUrl, keyRequestProperties);
+    String licenseKey = contentUri != null ? offlineLicenseKey(key, contentUri) : null;
+    String keySetId = licenseKey != null ? offlineLicenses.getString(licenseKey, null) : null;
+    if (keySetId != null) key = offlineDrmKey(key, contentUri);
+    DrmSessionManager<FrameworkMediaCrypto> manager = getDrmPool(key).acquire();
+    if (manager != null) return manager;
+
+    ExoMediaDrm<FrameworkMediaCrypto> mediaDrm = mediaDrmFactory.newMediaDrm(uuid);
+    DefaultDrmSessionManager<FrameworkMediaCrypto> drmSessionManager =
+        new DefaultDrmSessionManager<>(uuid, mediaDrm,
+            newDrmCallback(userAgent, licenseUrl, keyRequestProperties), null, handler, null);
+    if (keySetId != null) {
+      drmSessionManager.setMode(DefaultDrmSessionManager.MODE_PLAYBACK,
+          Base64.decode(keySetId, Base64.NO_WRAP));
+    }
+    drmKeys.put(drmSessionManager, key);
+    mediaDrms.put(drmSessionManager, mediaDrm);
+    return drmSessionManager;
+  }
+
+  /**
+   * Give a DRM session manager, whose player is stopped, back to its Pool.
+   */
+  void releaseDrmSessionManager(@NonNull DrmSessionManager<FrameworkMediaCrypto> manager) {
+    List<Object> key = drmKeys.get(manager);
+    if (key == null || !getDrmPool(key).release(manager)) {
+      drmKeys.remove(manager);
+      dropDrmSessionManager(manager);
+    }
+  }
+
+  /**
+   * Store (or clear) the key set id of an offline license for a DRM content. Next DRM session
+   * managers for the same content (Uri, scheme, license Url and key request properties) restore
+   * those keys instead of requesting a license. Other contents of the same license server are not
+   * affected. Get the id by OfflineLicenseHelper for example.
+   *
+   * @param drmMedia the DRM media the license is for.
+   * @param contentUri the Uri of the content, as given to the {@link MediaSourceBuilder}.
+   * @param keySetId the offline license key set id, or {@code null} to remove it.
+   */
+  public void setOfflineLicense(@NonNull DrmMedia drmMedia, @NonNull Uri contentUri,
+      @Nullable byte[] keySetId) {
+    UUID uuid;
+    try {
+      uuid = ExoPlayerHelper.getDrmUuid(drmMedia.getType());
+    } catch (ParserException er) {
+      throw new IllegalArgumentException(er);
+    }
+    List<Object> key =
+        drmKey(uuid, drmMedia.getLicenseUrl(), drmMedia.getKeyRequestPropertiesArray());
+    String licenseKey = offlineLicenseKey(key, contentUri);
+    SharedPreferences.Editor editor = offlineLicenses.edit();
+    if (keySetId != null) {
+      editor.putString(licenseKey, Base64.encodeToString(keySetId, Base64.NO_WRAP));
+    } else {
+      editor.remove(licenseKey);
+    }
+    editor.apply();
+    // Only new managers pick the license up, an open session can't change its mode.
+    List<Object> offlineKey = offlineDrmKey(key, contentUri);
+    drainDrmPool(drmSessionManagers.remove(offlineKey));
+    // Leased ones are dropped when they come back.
+    drmKeys.values().removeAll(Collections.singleton(offlineKey));
+  }
+
+  /**
+   * Release all the pooled {@link SimpleExoPlayer}s, and the idle DRM session managers with their
+   * MediaDrm.
+   */
+  public void cleanUp() {
+    for (Pools.Pool<SimpleExoPlayer> pool : playerPools.values()) {
+      SimpleExoPlayer player;
+      while ((player = pool.acquire()) != null) releaseIdlePlayer(player);
+    }
+    // Idle players are gone, so are the managers they were built with. Leased managers are
+    // dropped when they come back.
+    for (Pools.Pool<DrmSessionManager<FrameworkMediaCrypto>> pool : drmSessionManagers.values()) {
+      drainDrmPool(pool);
+    }
+    drmSessionManagers.clear();
+    drmKeys.clear();
+  }
+
+  private void drainDrmPool(@Nullable Pools.Pool<DrmSessionManager<FrameworkMediaCrypto>> pool) {
+    if (pool == null) return;
+    DrmSessionManager<FrameworkMediaCrypto> manager;
+    while ((manager = pool.acquire()) != null) {
+      drmKeys.remove(manager);
+      dropDrmSessionManager(manager);
+    }
+  }
+
+  // Release an idle DRM session manager for good: the idle players built with it, then its
+  // MediaDrm. Its sessions are already closed, as its players are stopped.
+  private void dropDrmSessionManager(@NonNull DrmSessionManager manager) {
+    Iterator<Map.Entry<List<Object>, Pools.Pool<SimpleExoPlayer>>> iterator =
+        playerPools.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<List<Object>, Pools.Pool<SimpleExoPlayer>> entry = iterator.next();
+      if (entry.getKey().get(PLAYER_KEY_DRM) != manager) continue;
+      SimpleExoPlayer player;
+      while ((player = entry.getValue().acquire()) != null) releaseIdlePlayer(player);
+      iterator.remove();
+    }
+    ExoMediaDrm<FrameworkMediaCrypto> mediaDrm = mediaDrms.remove(manager);
+    if (mediaDrm != null) mediaDrm.release();
+  }
+
+  private void releaseIdlePlayer(@NonNull SimpleExoPlayer player) {
+    trackSelectors.remove(player);
+    meters.remove(player);
+    player.release();
+  }
+
+  private Pools.Pool<SimpleExoPlayer> getPool(@NonNull List<Object> key) {
+    Pools.Pool<SimpleExoPlayer> pool = playerPools.get(key);
+    if (pool == null) {
+      pool = new Pools.SimplePool<>(MAX_POOL_SIZE);
+      playerPools.put(key, pool);
+    }
+    return pool;
+  }
+
+  private Pools.Pool<DrmSessionManager<FrameworkMediaCrypto>> getDrmPool(
+      @NonNull List<Object> key) {
+    Pools.Pool<DrmSessionManager<FrameworkMediaCrypto>> pool = drmSessionManagers.get(key);
+    if (pool == null) {
+      pool = new Pools.SimplePool<>(MAX_POOL_SIZE);
+      drmSessionManagers.put(key, pool);
+    }
+    return pool;
+  }
+
+  // License requests of a DRM session manager, sent to the license Url with the key request
+  // properties as headers.
+  @NonNull static HttpMediaDrmCallback newDrmCallback(@NonNull String userAgent, String licenseUrl,
+      @Nullable String[] keyRequestProperties) {
+    HttpMediaDrmCallback drmCallback = new HttpMediaDrmCallback(licenseUrl,
+        new DefaultHttpDataSourceFactory(userAgent, null));
+    if (keyRequestProperties != null) {
+      for (int i = 0; i < keyRequestProperties.length - 1; i += 2) {
+        drmCallback.setKeyRequestProperty(keyRequestProperties[i], keyRequestProperties[i + 1]);
+      }
+    }
+    return drmCallback;
+  }
+
+  @NonNull static List<Object> drmKey(@NonNull UUID uuid, String licenseUrl,
+      @Nullable String[] keyRequestProperties) {
+    return Arrays.<Object>asList(uuid, licenseUrl,
+        keyRequestProperties != null ? Arrays.asList(keyRequestProperties) : null);
+  }
+
+  // Managers restoring an offline license are only leased for the content of that license.
+  @NonNull private static List<Object> offlineDrmKey(@NonNull List<Object> drmKey,
+      @NonNull Uri contentUri) {
+    List<Object> key = new ArrayList<>(drmKey);
+    key.add(contentUri);
+    return key;
+  }
+
+  // SHA-1 of the content identity: its Uri, and the scheme, license Url and key request properties
+  // of its license. Each part is length-prefixed, so that different identities never concatenate
+  // into the same text.
+  @NonNull static String offlineLicenseKey(@NonNull List<Object> drmKey,
+      @NonNull Uri contentUri) {
+    StringBuilder identity = new StringBuilder();
+    for (Object part : offlineDrmKey(drmKey, contentUri)) {
+      if (part instanceof List) {  // key request properties
+        identity.append(((List) part).size()).append(';');
+        for (Object property : (List) part) appendPart(identity, property);
+      } else {
+        appendPart(identity, part);
+      }
+    }
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      byte[] hash = digest.digest(identity.toString().getBytes(Charset.forName("UTF-8")));
+      StringBuilder hex = new StringBuilder(hash.length * 2);
+      for (byte b : hash) {
+        hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException er) {
+      throw new IllegalStateException(er);  // SHA-1 is always available on Android.
+    }
+  }
+
+  private static void appendPart(@NonNull StringBuilder identity, @Nullable Object part) {
+    String text = part != null ? part.toString() : null;
+    if (text != null) identity.append(text.length()).append(':').append(text);
+    identity.append(';');
+  }
+
+  // Players built with the same components are interchangeable.
+  @NonNull static List<Object> playerKey(
+      @DefaultRenderersFactory.ExtensionRendererMode int extensionMode,
+      @Nullable DrmSessionManager drmSessionManager) {
+    return Arrays.<Object>asList(extensionMode, drmSessionManager);
+  }
+
+  // A pooled player's view of the meter of the helper it is leased to. Its track selector reads
+  // the estimate on the playback thread.
+  static final class LeasedMeter implements BandwidthMeter {
+
+    volatile BandwidthMeter delegate;
+
+    @Override public long getBitrateEstimate() {
+      BandwidthMeter delegate = this.delegate;
+      return delegate != null ? delegate.getBitrateEstimate() : NO_ESTIMATE;
+    }
+  }
+}
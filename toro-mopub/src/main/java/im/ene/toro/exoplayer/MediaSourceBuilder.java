@@ -33,14 +33,10 @@ import com.google.android.exoplayer2.source.smoothstreaming.DefaultSsChunkSource
 import com.google.android.exoplayer2.source.smoothstreaming.SsMediaSource;
 import com.google.android.exoplayer2.upstream.BandwidthMeter;
 import com.google.android.exoplayer2.upstream.DataSource;
-import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
-import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory;
-import com.google.android.exoplayer2.upstream.DefaultHttpDataSourceFactory;
 import com.google.android.exoplayer2.upstream.TransferListener;
 import com.google.android.exoplayer2.util.Util;
 
 import static android.text.TextUtils.isEmpty;
-import static im.ene.toro.mopub.BuildConfig.LIB_NAME;
 
 /**
  * @author eneim (7/8/17).
@@ -83,8 +79,12 @@ public class MediaSourceBuilder {
     this(context, mediaUri, null);
   }
 
+  @NonNull public Uri getMediaUri() {
+    return mediaUri;
+  }
+
   public MediaSource build() {
-    return this.build(new DefaultBandwidthMeter(this.handler, null));
+    return this.build(ExoPlayerPool.DEFAULT_BANDWIDTH_METER);
   }
 
   @SuppressWarnings("SameParameterValue") //
@@ -121,7 +121,6 @@ public class MediaSourceBuilder {
   }
 
   private DataSource.Factory buildDataSourceFactory(TransferListener<? super DataSource> listener) {
-    return new DefaultDataSourceFactory(context, listener,
-        new DefaultHttpDataSourceFactory(Util.getUserAgent(context, LIB_NAME), listener));
+    return ExoPlayerPool.with(context).getDataSourceFactory(listener);
   }
 }
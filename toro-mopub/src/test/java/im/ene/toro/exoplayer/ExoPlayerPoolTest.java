@@ -0,0 +1,398 @@
+/*
+ * Copyright (c) 2018 Nam Nguyen, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.toro.exoplayer;
+
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.drm.DrmSessionManager;
+import com.google.android.exoplayer2.drm.ExoMediaDrm;
+import com.google.android.exoplayer2.drm.FrameworkMediaCrypto;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
+import im.ene.toro.media.DrmMedia;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static com.google.android.exoplayer2.DefaultRenderersFactory.EXTENSION_RENDERER_MODE_OFF;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author eneim (2018/03/16).
+ *
+ *         DRM session managers of {@link ExoPlayerPool}, over fake MediaDrms and a local stand-in
+ *         license server: how they are leased and pooled, when their MediaDrm is released, and
+ *         what reaches the license server.
+ */
+@RunWith(RobolectricTestRunner.class) @Config(manifest = Config.NONE, sdk = 26)  //
+public class ExoPlayerPoolTest {
+
+  private static final String[] KEY_REQUEST_PROPERTIES = { "X-Token", "token" };
+  private static final byte[] LICENSE = { 1, 2, 3, 4 };
+
+  private LicenseServer server;
+  private FakeMediaDrms mediaDrms;
+  private ExoPlayerPool pool;
+  private DrmMedia drmMedia;
+  private final Uri content = Uri.parse("http://toro.test/content.mpd");
+
+  @Before public void setUp() throws IOException {
+    server = new LicenseServer();
+    server.start();
+    mediaDrms = new FakeMediaDrms();
+    pool = new ExoPlayerPool(RuntimeEnvironment.application, mediaDrms);
+    drmMedia = newDrmMedia(server.licenseUrl, KEY_REQUEST_PROPERTIES);
+  }
+
+  @After public void tearDown() throws IOException {
+    server.stop();
+  }
+
+  @Test public void acquire_leasesOneManagerAtATime() throws Exception {
+    DrmSessionManager<FrameworkMediaCrypto> first = acquire(null);
+    DrmSessionManager<FrameworkMediaCrypto> second = acquire(null);
+    assertNotSame(first, second);  // the first one is leased.
+
+    pool.releaseDrmSessionManager(first);
+    assertSame(first, acquire(null));
+    assertEquals(2, mediaDrms.opened.size());
+    assertTrue(mediaDrms.released.isEmpty());
+  }
+
+  @Test public void acquire_otherLicenseServer_otherPool() throws Exception {
+    DrmSessionManager<FrameworkMediaCrypto> manager = acquire(null);
+    pool.releaseDrmSessionManager(manager);
+
+    assertNotSame(manager, pool.acquireDrmSessionManager(C.WIDEVINE_UUID,
+        server.licenseUrl + "?other", KEY_REQUEST_PROPERTIES, null));
+    assertNotSame(manager, pool.acquireDrmSessionManager(C.WIDEVINE_UUID, server.licenseUrl,
+        new String[] { "X-Token", "other" }, null));
+    assertSame(manager, acquire(null));
+  }
+
+  @Test public void offlineLicense_isLeasedForItsContentOnly() throws Exception {
+    DrmSessionManager<FrameworkMediaCrypto> online = acquire(content);
+    pool.releaseDrmSessionManager(online);
+
+    pool.setOfflineLicense(drmMedia, content, new byte[] { 42 });
+    DrmSessionManager<FrameworkMediaCrypto> offline = acquire(content);
+    assertNotSame(online, offline);
+    pool.releaseDrmSessionManager(offline);
+
+    // Other contents of the same license server still use the online managers.
+    assertSame(online, acquire(Uri.parse("http://toro.test/other.mpd")));
+    assertSame(offline, acquire(content));
+  }
+
+  @Test public void setOfflineLicense_dropsThePooledManagersOfTheContent() throws Exception {
+    pool.setOfflineLicense(drmMedia, content, new byte[] { 42 });
+    DrmSessionManager<FrameworkMediaCrypto> pooled = acquire(content);
+    DrmSessionManager<FrameworkMediaCrypto> leased = acquire(content);
+    pool.releaseDrmSessionManager(pooled);
+    DrmSessionManager<FrameworkMediaCrypto> online = acquire(null);
+    pool.releaseDrmSessionManager(online);
+
+    pool.setOfflineLicense(drmMedia, content, new byte[] { 43 });
+    assertTrue(mediaDrms.isReleased(pooled));
+    assertFalse(mediaDrms.isReleased(leased));  // still in use.
+    assertFalse(mediaDrms.isReleased(online));  // not of that content.
+
+    // The leased one doesn't go back to the Pool either.
+    pool.releaseDrmSessionManager(leased);
+    assertTrue(mediaDrms.isReleased(leased));
+    DrmSessionManager<FrameworkMediaCrypto> next = acquire(content);
+    assertNotSame(pooled, next);
+    assertNotSame(leased, next);
+    assertSame(online, acquire(null));
+  }
+
+  @Test public void removeOfflineLicense_backToOnlineManagers() throws Exception {
+    DrmSessionManager<FrameworkMediaCrypto> online = acquire(null);
+    pool.releaseDrmSessionManager(online);
+    pool.setOfflineLicense(drmMedia, content, new byte[] { 42 });
+    pool.releaseDrmSessionManager(acquire(content));
+
+    pool.setOfflineLicense(drmMedia, content, null);
+    assertSame(online, acquire(content));
+  }
+
+  @Test public void cleanUp_releasesIdleMediaDrms() throws Exception {
+    DrmSessionManager<FrameworkMediaCrypto> idle = acquire(null);
+    DrmSessionManager<FrameworkMediaCrypto> leased = acquire(null);
+    pool.releaseDrmSessionManager(idle);
+
+    pool.cleanUp();
+    assertTrue(mediaDrms.isReleased(idle));
+    assertFalse(mediaDrms.isReleased(leased));
+
+    // Given back after the clean up: released too, not pooled.
+    pool.releaseDrmSessionManager(leased);
+    assertTrue(mediaDrms.isReleased(leased));
+    DrmSessionManager<FrameworkMediaCrypto> next = acquire(null);
+    assertNotSame(idle, next);
+    assertNotSame(leased, next);
+    assertEquals(mediaDrms.opened.size() - 1, mediaDrms.released.size());
+  }
+
+  @Test public void offlineLicenseKey_neverMapsTwoContentsToOneKey() {
+    Uri uri = Uri.parse("http://toro.test/a");
+    List<List<Object>> drmKeys = new ArrayList<>();
+    drmKeys.add(ExoPlayerPool.drmKey(C.WIDEVINE_UUID, "http://license", null));
+    drmKeys.add(ExoPlayerPool.drmKey(C.WIDEVINE_UUID, "http://license", new String[0]));
+    drmKeys.add(ExoPlayerPool.drmKey(C.WIDEVINE_UUID, "http://license", new String[] { "" }));
+    drmKeys.add(ExoPlayerPool.drmKey(C.WIDEVINE_UUID, "http://license", new String[] { "a;b" }));
+    drmKeys.add(ExoPlayerPool.drmKey(C.WIDEVINE_UUID, "http://license", new String[] { "a", "b" }));
+    drmKeys.add(ExoPlayerPool.drmKey(C.WIDEVINE_UUID, "http://license;", new String[] { "b" }));
+    drmKeys.add(ExoPlayerPool.drmKey(C.WIDEVINE_UUID, "http://license", new String[] { ";b" }));
+    drmKeys.add(ExoPlayerPool.drmKey(C.WIDEVINE_UUID, null, null));
+    drmKeys.add(ExoPlayerPool.drmKey(C.WIDEVINE_UUID, "null", null));
+    drmKeys.add(ExoPlayerPool.drmKey(C.PLAYREADY_UUID, "http://license", null));
+
+    Set<String> keys = new HashSet<>();
+    for (List<Object> drmKey : drmKeys) {
+      keys.add(ExoPlayerPool.offlineLicenseKey(drmKey, uri));
+      keys.add(ExoPlayerPool.offlineLicenseKey(drmKey, Uri.parse("http://toro.test/b")));
+    }
+    assertEquals(drmKeys.size() * 2, keys.size());
+
+    // And always the same key for the same content.
+    assertEquals(ExoPlayerPool.offlineLicenseKey(drmKeys.get(0), uri),
+        ExoPlayerPool.offlineLicenseKey(
+            ExoPlayerPool.drmKey(C.WIDEVINE_UUID, "http://license", null), uri));
+    assertNotEquals(ExoPlayerPool.offlineLicenseKey(drmKeys.get(0), uri),
+        ExoPlayerPool.offlineLicenseKey(drmKeys.get(0), Uri.parse("http://toro.test/a/")));
+  }
+
+  @Test public void playerKey_leavesTheMeterOut() {
+    // A helper given a new meter each time shares its Pool with the others.
+    assertEquals(ExoPlayerPool.playerKey(EXTENSION_RENDERER_MODE_OFF, null),
+        ExoPlayerPool.playerKey(EXTENSION_RENDERER_MODE_OFF, null));
+
+    ExoPlayerPool.LeasedMeter meter = new ExoPlayerPool.LeasedMeter();
+    assertEquals(BandwidthMeter.NO_ESTIMATE, meter.getBitrateEstimate());
+    meter.delegate = new BandwidthMeter() {
+      @Override public long getBitrateEstimate() {
+        return 1000;
+      }
+    };
+    assertEquals(1000, meter.getBitrateEstimate());
+  }
+
+  @Test public void dataSourceFactory_notKeptForOtherMeters() {
+    assertSame(pool.getDataSourceFactory(null), pool.getDataSourceFactory(null));
+    assertSame(pool.getDataSourceFactory(ExoPlayerPool.DEFAULT_BANDWIDTH_METER),
+        pool.getDataSourceFactory(ExoPlayerPool.DEFAULT_BANDWIDTH_METER));
+    DefaultBandwidthMeter meter = new DefaultBandwidthMeter();
+    assertNotSame(pool.getDataSourceFactory(meter), pool.getDataSourceFactory(meter));
+  }
+
+  @Test public void drmCallback_postsToTheLicenseServer() throws Exception {
+    final byte[] challenge = { 9, 8, 7 };
+    byte[] license = ExoPlayerPool.newDrmCallback("toro-test", server.licenseUrl,
+        KEY_REQUEST_PROPERTIES).executeKeyRequest(C.WIDEVINE_UUID, new ExoMediaDrm.KeyRequest() {
+      @Override public byte[] getData() {
+        return challenge;
+      }
+
+      @Override public String getDefaultUrl() {
+        return null;
+      }
+    });
+    assertArrayEquals(LICENSE, license);
+
+    LicenseServer.Request request = server.requests.poll(5, TimeUnit.SECONDS);
+    assertNotNull(request);
+    assertEquals("POST /license HTTP/1.1", request.requestLine);
+    assertEquals("token", request.headers.get("x-token"));
+    assertArrayEquals(challenge, request.body);
+  }
+
+  private DrmSessionManager<FrameworkMediaCrypto> acquire(Uri contentUri) throws Exception {
+    int opened = mediaDrms.opened.size();
+    DrmSessionManager<FrameworkMediaCrypto> manager = pool.acquireDrmSessionManager(
+        C.WIDEVINE_UUID, server.licenseUrl, KEY_REQUEST_PROPERTIES, contentUri);
+    if (mediaDrms.opened.size() > opened) mediaDrms.owners.put(manager, mediaDrms.lastOpened());
+    return manager;
+  }
+
+  private static DrmMedia newDrmMedia(final String licenseUrl, final String[] properties) {
+    return new DrmMedia() {
+      @Override public String getType() {
+        return "widevine";
+      }
+
+      @Override public String getLicenseUrl() {
+        return licenseUrl;
+      }
+
+      @Override public String[] getKeyRequestPropertiesArray() {
+        return properties;
+      }
+    };
+  }
+
+  // MediaDrms doing nothing, but telling which DRM session manager released its own.
+  static class FakeMediaDrms implements ExoPlayerPool.MediaDrmFactory {
+
+    final List<Object> opened = new ArrayList<>();
+    final Set<Object> released = new HashSet<>();
+    // The MediaDrm opened for each manager, see #acquire(Uri).
+    final Map<DrmSessionManager, Object> owners = new HashMap<>();
+
+    @SuppressWarnings("unchecked") @NonNull @Override
+    public ExoMediaDrm<FrameworkMediaCrypto> newMediaDrm(@NonNull UUID uuid) {
+      Object mediaDrm = Proxy.newProxyInstance(getClass().getClassLoader(),
+          new Class[] { ExoMediaDrm.class }, new InvocationHandler() {
+            @Override public Object invoke(Object proxy, Method method, Object[] args) {
+              switch (method.getName()) {
+                case "release":
+                  released.add(proxy);
+                  return null;
+                case "equals":
+                  return proxy == args[0];
+                case "hashCode":
+                  return System.identityHashCode(proxy);
+                default:
+                  return null;
+              }
+            }
+          });
+      opened.add(mediaDrm);
+      return (ExoMediaDrm<FrameworkMediaCrypto>) mediaDrm;
+    }
+
+    Object lastOpened() {
+      return opened.get(opened.size() - 1);
+    }
+
+    boolean isReleased(DrmSessionManager manager) {
+      return released.contains(owners.get(manager));
+    }
+  }
+
+  // Answers each POST to /license with LICENSE, and records it.
+  static class LicenseServer implements Runnable {
+
+    static class Request {
+
+      String requestLine;
+      final Map<String, String> headers = new HashMap<>();
+      byte[] body;
+    }
+
+    final BlockingQueue<Request> requests = new LinkedBlockingQueue<>();
+    String licenseUrl;
+    private ServerSocket serverSocket;
+    private Thread thread;
+
+    void start() throws IOException {
+      serverSocket = new ServerSocket(0);
+      licenseUrl = "http://127.0.0.1:" + serverSocket.getLocalPort() + "/license";
+      thread = new Thread(this, "LicenseServer");
+      thread.start();
+    }
+
+    void stop() throws IOException {
+      serverSocket.close();
+      thread.interrupt();
+    }
+
+    @Override public void run() {
+      while (!serverSocket.isClosed()) {
+        try {
+          Socket socket = serverSocket.accept();
+          try {
+            serve(socket);
+          } finally {
+            socket.close();
+          }
+        } catch (IOException er) {
+          return;  // closed.
+        }
+      }
+    }
+
+    private void serve(Socket socket) throws IOException {
+      InputStream input = socket.getInputStream();
+      Request request = new Request();
+      request.requestLine = readLine(input);
+      String line;
+      while (!(line = readLine(input)).isEmpty()) {
+        int colon = line.indexOf(':');
+        request.headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US),
+            line.substring(colon + 1).trim());
+      }
+      String contentLength = request.headers.get("content-length");
+      request.body = new byte[contentLength != null ? Integer.parseInt(contentLength) : 0];
+      for (int read = 0; read < request.body.length; ) {
+        int count = input.read(request.body, read, request.body.length - read);
+        if (count == -1) throw new IOException("Unexpected end of request.");
+        read += count;
+      }
+      requests.add(request);
+
+      OutputStream output = socket.getOutputStream();
+      output.write(("HTTP/1.1 200 OK\r\n"
+          + "Content-Type: application/octet-stream\r\n"
+          + "Content-Length: " + LICENSE.length + "\r\n"
+          + "Connection: close\r\n\r\n").getBytes("US-ASCII"));
+      output.write(LICENSE);
+      output.flush();
+    }
+
+    private static String readLine(InputStream input) throws IOException {
+      ByteArrayOutputStream line = new ByteArrayOutputStream();
+      int b;
+      while ((b = input.read()) != -1 && b != '\n') {
+        if (b != '\r') line.write(b);
+      }
+      return line.toString("US-ASCII");
+    }
+  }
+}